@@ -0,0 +1,24 @@
+package com.sahil.trading.config;
+
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JpaConfig {
+
+    /**
+     * JDBC batching for bulk writes (coin snapshot upserts etc.).
+     * Ordering inserts/updates by entity and id lets Hibernate group them into batches
+     * and keeps row locks in a consistent order.
+     */
+    @Bean
+    HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        return props -> {
+            props.putIfAbsent("hibernate.jdbc.batch_size", 50);
+            props.putIfAbsent("hibernate.order_inserts", true);
+            props.putIfAbsent("hibernate.order_updates", true);
+            props.putIfAbsent("hibernate.jdbc.batch_versioned_data", true);
+        };
+    }
+}
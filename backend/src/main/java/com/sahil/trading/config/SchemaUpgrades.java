@@ -0,0 +1,49 @@
+package com.sahil.trading.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Column changes that ddl-auto=update does not make: it adds tables and columns but
+ * never changes the type of an existing one. Each step reads information_schema
+ * first, so it runs once per database and does nothing on a fresh schema.
+ *
+ * Runs after Hibernate's own schema update and before the server takes requests.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class SchemaUpgrades {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaUpgrades.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void upgrade() {
+        // was a whole-number bigint; decimal amounts would be truncated into it
+        modify("wallet_transactions", "amount", "bigint", "decimal(24,8) not null");
+    }
+
+    private void modify(String table, String column, String fromType, String definition) {
+        try {
+            List<String> types = jdbcTemplate.queryForList(
+                    "select data_type from information_schema.columns " +
+                            "where table_schema = database() and table_name = ? and column_name = ?",
+                    String.class, table, column);
+            if (types.isEmpty() || !fromType.equalsIgnoreCase(types.get(0))) return;
+
+            jdbcTemplate.execute("alter table " + table + " modify " + column + " " + definition);
+            log.info("[SchemaUpgrades] {}.{} changed from {} to {}", table, column, fromType, definition);
+        } catch (Exception e) {
+            log.error("[SchemaUpgrades] could not change {}.{} to {}", table, column, definition, e);
+        }
+    }
+}
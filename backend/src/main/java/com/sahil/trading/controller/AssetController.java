@@ -1,15 +1,27 @@
 package com.sahil.trading.controller;
 
 
+import com.sahil.trading.domain.UserRole;
 import com.sahil.trading.entity.Asset;
 import com.sahil.trading.entity.User;
+import com.sahil.trading.response.PortfolioHistoryPoint;
+import com.sahil.trading.response.PortfolioView;
+import com.sahil.trading.response.RealizedPnlSummary;
 import com.sahil.trading.service.AssetService;
+import com.sahil.trading.service.CostBasisService;
+import com.sahil.trading.service.PortfolioHistoryService;
+import com.sahil.trading.service.PortfolioValuation;
 import com.sahil.trading.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/assets")
@@ -21,6 +33,15 @@ public class AssetController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private PortfolioValuation portfolioValuation;
+
+    @Autowired
+    private PortfolioHistoryService portfolioHistoryService;
+
+    @Autowired
+    private CostBasisService costBasisService;
+
     @GetMapping("/{assetId}")
     public ResponseEntity<Asset> getAssetById(@PathVariable Long assetId) throws Exception {
         Asset asset = assetService.getAssetById(assetId);
@@ -42,4 +63,44 @@ public class AssetController {
         return ResponseEntity.ok().body(assets);
     }
 
+    // holdings valued at the latest market snapshot, with P&L and allocation
+    @GetMapping("/portfolio")
+    public ResponseEntity<PortfolioView> getPortfolio(
+            @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok().body(portfolioValuation.value(user.getId()));
+    }
+
+    // daily closing values, oldest first, with today's live value last
+    @GetMapping("/portfolio/history")
+    public ResponseEntity<List<PortfolioHistoryPoint>> getPortfolioHistory(
+            @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "days", required = false, defaultValue = "365") int days) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok().body(portfolioHistoryService.history(user.getId(), days));
+    }
+
+    // runs the nightly snapshot now; only days not stored yet are written
+    @PostMapping("/portfolio/snapshots")
+    public ResponseEntity<?> takePortfolioSnapshots(
+            @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        if (user.getUserRole() != UserRole.ROLE_ADMIN) {
+            return new ResponseEntity<>("Forbidden: requires admin", HttpStatus.FORBIDDEN);
+        }
+        return ResponseEntity.ok().body(Map.of("written", portfolioHistoryService.takeSnapshots()));
+    }
+
+    // realized gains per coin for sells between from and to (UTC days, inclusive)
+    @GetMapping("/pnl/realized")
+    public ResponseEntity<List<RealizedPnlSummary>> getRealizedPnl(
+            @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        LocalDate end = to == null ? LocalDate.now(ZoneOffset.UTC) : to;
+        LocalDate start = from == null ? end.withDayOfYear(1) : from;
+        return ResponseEntity.ok().body(costBasisService.realized(user.getId(), start, end));
+    }
+
 }
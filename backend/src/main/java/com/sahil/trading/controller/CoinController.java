@@ -3,16 +3,24 @@ package com.sahil.trading.controller;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.domain.MoverRanking;
 import com.sahil.trading.entity.Coin;
+import com.sahil.trading.response.CachedJsonResponse;
 import com.sahil.trading.service.CoinService;
+import com.sahil.trading.service.PriceFeed;
 import jakarta.persistence.GeneratedValue;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/coins")
@@ -23,16 +31,19 @@ public class CoinController {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private PriceFeed priceFeed;
+
     @GetMapping
     ResponseEntity<List<Coin>> getCoinList(@RequestParam(required = false, name = "page") int page ) throws Exception{
         List<Coin> coins = coinService.getCoinList(page);
         return  new ResponseEntity<>(coins, HttpStatus.ACCEPTED);
     }
     @GetMapping("/{coinId}/chart")
-    ResponseEntity<JsonNode> getMarketChart(@PathVariable String coinId, @RequestParam("days")int days) throws Exception{
-        String res = coinService.getMarketChart(coinId, days);
-        JsonNode jsonNode = objectMapper.readTree(res);
-        return  new ResponseEntity<>(jsonNode, HttpStatus.ACCEPTED);
+    ResponseEntity<byte[]> getMarketChart(@PathVariable String coinId, @RequestParam("days")int days,
+                                          @RequestParam(name = "points", defaultValue = "0") int points,
+                                          @RequestHeader HttpHeaders headers) throws Exception{
+        return cachedJson(coinService.getMarketChartResponse(coinId, days, points), headers);
     }
 
     @GetMapping("/search")
@@ -43,26 +54,18 @@ public class CoinController {
     }
 
     @GetMapping("/top50")
-    ResponseEntity<JsonNode> getTop50CoinByMarketCapRank() throws Exception {
-        String coin = coinService.getTop50CoinsByMarketCapRank();
-
-        JsonNode jsonNode = objectMapper.readTree(coin);
-        return  ResponseEntity.ok(jsonNode);
+    ResponseEntity<byte[]> getTop50CoinByMarketCapRank(@RequestHeader HttpHeaders headers) throws Exception {
+        return cachedJson(coinService.getTop50Response(), headers);
     }
 
     @GetMapping("/trading")
-    ResponseEntity<JsonNode> getTradingCoin() throws Exception {
-        String coin = coinService.getTradingCoins();
-
-        JsonNode jsonNode = objectMapper.readTree(coin);
-        return  ResponseEntity.ok(jsonNode);
+    ResponseEntity<byte[]> getTradingCoin(@RequestHeader HttpHeaders headers) throws Exception {
+        return cachedJson(coinService.getTradingCoinsResponse(), headers);
     }
     @GetMapping("/details/{coinId}")
-    ResponseEntity<JsonNode> getCoinDetails(@PathVariable String coinId) throws Exception {
-        String coin = coinService.getCoinDetails(coinId);
-
-        JsonNode jsonNode = objectMapper.readTree(coin);
-        return  ResponseEntity.ok(jsonNode);
+    ResponseEntity<byte[]> getCoinDetails(@PathVariable String coinId,
+                                          @RequestHeader HttpHeaders headers) throws Exception {
+        return cachedJson(coinService.getCoinDetailsResponse(coinId), headers);
     }
     @GetMapping("/gainers")
     public ResponseEntity<?> getTopGainers() throws Exception {
@@ -74,7 +77,80 @@ public class CoinController {
         return ResponseEntity.ok(coinService.getTopLosers());
     }
 
+    @GetMapping("/movers")
+    public ResponseEntity<List<Coin>> getMovers(
+            @RequestParam(name = "ranking", defaultValue = "PRICE_CHANGE_24H") MoverRanking ranking,
+            @RequestParam(name = "order", defaultValue = "desc") String order,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(coinService.getMovers(ranking, !order.equalsIgnoreCase("asc"), Math.min(limit, 250)));
+    }
 
+    // live prices for ?ids=bitcoin,ethereum as server-sent "prices" events (see PriceFeed)
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPrices(@RequestParam("ids") String ids) {
+        try {
+            return ResponseEntity.ok(priceFeed.subscribe(Arrays.asList(ids.split(","))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
 
+    // writes the cached bytes as is: 304 on a matching ETag, gzip copy when the client accepts it
+    private ResponseEntity<byte[]> cachedJson(CachedJsonResponse res, HttpHeaders requestHeaders) {
+        boolean gzip = acceptsGzip(requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING));
+        String etag = gzip ? res.getGzipEtag() : res.getEtag();
+        if (notModified(requestHeaders.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(res.getGzipBody());
+        }
+        return builder.body(res.getBody());
+    }
 
+    // If-None-Match uses the weak comparison: W/"x" matches "x", and * matches anything
+    static boolean notModified(List<String> ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch) {
+            String t = tag.trim();
+            if (t.equals("*")) return true;
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // gzip unless the header refuses it: an explicit gzip;q=0, or *;q=0 with no gzip entry
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        Double gzip = null, any = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String p = params[i].trim();
+                if (p.startsWith("q=") || p.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(p.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) gzip = q;
+            else if (coding.equals("*")) any = q;
+        }
+        if (gzip != null) return gzip > 0;
+        return any != null && any > 0;
+    }
 }
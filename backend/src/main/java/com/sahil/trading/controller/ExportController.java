@@ -0,0 +1,134 @@
+package com.sahil.trading.controller;
+
+import com.sahil.trading.domain.ExportFormat;
+import com.sahil.trading.domain.UserRole;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.service.ExportService;
+import com.sahil.trading.service.UserService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Streams exports into the response body as they are read. Written on the request
+ * thread rather than as a StreamingResponseBody so a long download is not cut off by
+ * the async request timeout. Once the first bytes are out the status cannot change,
+ * so a failure mid-way only ends the body early (and is logged). An export refused
+ * because too many are running is answered with 429.
+ */
+@RestController
+public class ExportController {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+    interface Export {
+        long write(ExportFormat format, OutputStream out) throws Exception;
+    }
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private UserService userService;
+
+    @GetMapping("/api/export/wallet/transactions")
+    public void exportMyTransactions(
+            @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "format", required = false, defaultValue = "csv") String format,
+            @RequestParam(name = "from", required = false) Instant from,
+            @RequestParam(name = "to", required = false) Instant to,
+            HttpServletResponse response) throws Exception {
+
+        User user = userService.findUserProfileByJwt(jwt);
+        stream(response, format, "wallet-transactions", (f, out) -> exportService.exportWalletTransactions(
+                user.getId(), from == null ? Instant.EPOCH : from, to == null ? Instant.now() : to, f, out));
+    }
+
+    @GetMapping("/api/export/orders")
+    public void exportMyOrders(
+            @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "format", required = false, defaultValue = "csv") String format,
+            @RequestParam(name = "from", required = false) Instant from,
+            @RequestParam(name = "to", required = false) Instant to,
+            HttpServletResponse response) throws Exception {
+
+        User user = userService.findUserProfileByJwt(jwt);
+        stream(response, format, "orders", (f, out) -> exportService.exportOrders(
+                user.getId(), from == null ? Instant.EPOCH : from, to == null ? Instant.now() : to, f, out));
+    }
+
+    @GetMapping("/api/admin/export/wallet/transactions")
+    public void exportAllTransactions(
+            @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "format", required = false, defaultValue = "csv") String format,
+            @RequestParam(name = "from") Instant from,
+            @RequestParam(name = "to") Instant to,
+            HttpServletResponse response) throws Exception {
+
+        if (!isAdmin(jwt, response)) return;
+        stream(response, format, "wallet-transactions",
+                (f, out) -> exportService.exportWalletTransactions(null, from, to, f, out));
+    }
+
+    @GetMapping("/api/admin/export/orders")
+    public void exportAllOrders(
+            @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "format", required = false, defaultValue = "csv") String format,
+            @RequestParam(name = "from") Instant from,
+            @RequestParam(name = "to") Instant to,
+            HttpServletResponse response) throws Exception {
+
+        if (!isAdmin(jwt, response)) return;
+        stream(response, format, "orders", (f, out) -> exportService.exportOrders(null, from, to, f, out));
+    }
+
+    private boolean isAdmin(String jwt, HttpServletResponse response) throws Exception {
+        User caller = userService.findUserProfileByJwt(jwt);
+        if (caller == null || caller.getUserRole() != UserRole.ROLE_ADMIN) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "Forbidden: requires admin");
+            return false;
+        }
+        return true;
+    }
+
+    private static ExportFormat parse(String format) {
+        return ExportFormat.valueOf(format.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private void stream(HttpServletResponse response, String format, String name, Export export) throws Exception {
+        ExportFormat parsed;
+        try {
+            parsed = parse(format);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "format must be csv or ndjson");
+            return;
+        }
+        response.setContentType(parsed.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + name + "." + parsed.extension() + "\"");
+
+        try {
+            export.write(parsed, response.getOutputStream());
+        } catch (ExportService.TooManyExports e) {
+            // nothing written yet: drop the attachment headers and refuse
+            response.reset();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+        } catch (Exception e) {
+            if (!response.isCommitted()) throw e;
+            log.warn("[ExportController] {} export ended early: {}", name, e.getMessage());
+        }
+    }
+}
@@ -1,24 +1,31 @@
 package com.sahil.trading.controller;
 
 
+import com.sahil.trading.domain.OrderExecution;
 import com.sahil.trading.domain.OrderType;
 import com.sahil.trading.entity.Coin;
 import com.sahil.trading.entity.Order;
 import com.sahil.trading.entity.User;
-import com.sahil.trading.entity.WalletTransaction;
 import com.sahil.trading.request.CreateOrderRequest;
+import com.sahil.trading.domain.OrderStatus;
 import com.sahil.trading.service.CoinService;
+import com.sahil.trading.service.IdempotencyService;
+import com.sahil.trading.service.OrderBook;
+import com.sahil.trading.service.OrderPipeline;
 import com.sahil.trading.service.OrderService;
 import com.sahil.trading.service.UserService;
-import com.sahil.trading.service.WalletService;
 import org.aspectj.weaver.ast.Or;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.json.WritableJson;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -34,17 +41,79 @@ public class OrderController {
 
 
     @Autowired
-    private WalletService walletService;
+    private OrderPipeline orderPipeline;
 
+    @Autowired
+    private OrderBook orderBook;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    // how long /pay waits for settlement before answering with the pending order
+    @Value("${order.pipeline.pay-timeout-ms:30000}")
+    private long payTimeoutMs;
+
+    // a retry with the same Idempotency-Key gets the first response back instead of a second order
     @PostMapping("/pay")
-    public ResponseEntity<Order> payOrderPayment(@RequestHeader("Authorization") String jwt,
-                                                 @RequestBody CreateOrderRequest req) throws Exception{
+    public ResponseEntity<?> payOrderPayment(@RequestHeader("Authorization") String jwt,
+                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                             @RequestBody CreateOrderRequest req) throws Exception{
         User user = userService.findUserProfileByJwt(jwt);
-        Coin coin = coinService.findById(req.getCoinId());
-        Order order = orderService.processOrder(coin, req.getQuantity(), req.getOrderType(), user);
+        return idempotencyService.execute(user.getId(), "orders.pay", idempotencyKey, req, () -> pay(req, user));
+    }
+
+    private ResponseEntity<Order> pay(CreateOrderRequest req, User user) throws Exception {
+        OrderPipeline.Ticket ticket = submit(req, user);
+        // a LIMIT/STOP order rests until the price reaches it: answer with the OPEN order
+        // now instead of holding the request (and its Idempotency-Key) for a fill
+        if (ticket.pending().getOrderStatus() == OrderStatus.OPEN) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ticket.pending());
+        }
+        Order order;
+        try {
+            order = ticket.settled().get(payTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(ticket.pending());
+        } catch (ExecutionException e) {
+            throw new Exception(e.getCause().getMessage(), e.getCause());
+        }
+        if (order.getOrderStatus() != OrderStatus.SUCCESS) {
+            throw new Exception(order.getFailureReason() != null
+                    ? order.getFailureReason() : "order " + order.getOrderStatus());
+        }
         return ResponseEntity.ok(order);
     }
 
+    // returns the PENDING (or OPEN) order at once; poll GET /api/orders/{orderId} for the outcome
+    @PostMapping("/submit")
+    public ResponseEntity<Order> submitOrder(@RequestHeader("Authorization") String jwt,
+                                             @RequestBody CreateOrderRequest req) throws Exception{
+        User user = userService.findUserProfileByJwt(jwt);
+        OrderPipeline.Ticket ticket = submit(req, user);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ticket.pending());
+    }
+
+    private OrderPipeline.Ticket submit(CreateOrderRequest req, User user) throws Exception {
+        Coin coin = coinService.findById(req.getCoinId());
+        if (req.getExecution() == null || req.getExecution() == OrderExecution.MARKET) {
+            return orderPipeline.submit(coin, req.getQuantity(), req.getOrderType(), user);
+        }
+        return orderBook.place(coin, req.getQuantity(), req.getOrderType(), user,
+                req.getExecution(), req.getTriggerPrice());
+    }
+
+    // cancel an OPEN limit/stop order
+    @DeleteMapping("/{orderId}")
+    public ResponseEntity<Order> cancelOrder(@RequestHeader("Authorization") String jwtToken,
+                                             @PathVariable Long orderId) throws Exception{
+        User user = userService.findUserProfileByJwt(jwtToken);
+        Order order = orderService.getOrderById(orderId);
+        if(!order.getUser().getId().equals(user.getId())){
+            throw  new Exception("you don't have access");
+        }
+        return ResponseEntity.ok(orderBook.cancel(orderId));
+    }
+
     @GetMapping("/{orderId}")
     public ResponseEntity<Order> getOrderById(@RequestHeader("Authorization") String jwtToken,
                                               @PathVariable Long orderId) throws Exception{
@@ -71,17 +140,5 @@ public class OrderController {
 
 
     }
-    @GetMapping("/api/wallet/transactions")
-    public ResponseEntity<List<WalletTransaction>> getWalletTransactions(
-            @RequestHeader("Authorization") String jwt,
-            @RequestParam(name = "page", required = false, defaultValue = "0") int page,
-            @RequestParam(name = "size", required = false, defaultValue = "50") int size
-    ) throws Exception {
-
-        User user = userService.findUserProfileByJwt(jwt);
-        List<WalletTransaction> transactions = walletService.getWalletTransactions(user, page, size);
-
-        return new ResponseEntity<>(transactions, HttpStatus.OK);
-    }
 
 }
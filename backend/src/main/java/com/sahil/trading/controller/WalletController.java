@@ -4,17 +4,23 @@ package com.sahil.trading.controller;
 import com.sahil.trading.domain.PaymentMethod;
 import com.sahil.trading.entity.*;
 import com.sahil.trading.response.PaymentResponse;
+import com.sahil.trading.response.WalletTransactionView;
+import com.sahil.trading.service.IdempotencyService;
+import com.sahil.trading.service.LedgerService;
 import com.sahil.trading.service.OrderService;
 import com.sahil.trading.service.PaymentService;
 import com.sahil.trading.service.UserService;
 import com.sahil.trading.service.WalletService;
+import com.sahil.trading.utils.TransactionCursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 
@@ -32,6 +38,12 @@ public class WalletController  {
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private LedgerService ledgerService;
+
     @GetMapping("/api/wallet")
     public ResponseEntity<Wallet> getUserWallet(@RequestHeader("Authorization") String jwt) throws Exception {
         User user = userService.findUserProfileByJwt(jwt);
@@ -39,14 +51,32 @@ public class WalletController  {
         return  new ResponseEntity<>(wallet, HttpStatus.ACCEPTED);
     }
 
+    // a retry with the same Idempotency-Key gets the first response back instead of a second transfer
     @PutMapping("/api/wallet/{walletId}/transfer")
-    public  ResponseEntity<Wallet> walletToWalletTransfer(@RequestHeader("Authorization") String jwt, @PathVariable Long walletId, @RequestBody WalletTransaction req) throws Exception{
+    public  ResponseEntity<?> walletToWalletTransfer(@RequestHeader("Authorization") String jwt,
+                                                     @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                     @PathVariable Long walletId, @RequestBody WalletTransaction req) throws Exception{
         User senderUser = userService.findUserProfileByJwt(jwt);
-        Wallet receiverWallet = walletService.findWalletById(walletId);
-        Wallet wallet = walletService.walletToWalletTransfer(senderUser, receiverWallet, req.getAmount());
-
-        return new ResponseEntity<>(wallet, HttpStatus.ACCEPTED);
+        return idempotencyService.execute(senderUser.getId(), "wallet.transfer", idempotencyKey,
+                new Object[]{walletId, req.getAmount()}, () -> {
+                    Wallet receiverWallet = walletService.findWalletById(walletId);
+                    Wallet wallet = walletService.walletToWalletTransfer(senderUser, receiverWallet, req.getAmount());
+                    return new ResponseEntity<>(wallet, HttpStatus.ACCEPTED);
+                });
     }
+    // balance replayed from the ledger, now or as of ?at=2024-01-31T00:00:00Z
+    @GetMapping("/api/wallet/balance")
+    public ResponseEntity<Map<String, Object>> getLedgerBalance(@RequestHeader("Authorization") String jwt,
+                                                                @RequestParam(required = false) Instant at) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Wallet wallet = walletService.getUserWallet(user);
+        Instant asOf = at != null ? at : Instant.now();
+        return ResponseEntity.ok(Map.of(
+                "walletId", wallet.getId(),
+                "at", asOf.toString(),
+                "balance", ledgerService.balanceAt(wallet.getId(), asOf)));
+    }
+
     @PutMapping("/api/wallet/order/{orderId}/pay")
     public  ResponseEntity<Wallet> payOrderPayment(@RequestHeader("Authorization") String jwt, @PathVariable Long orderId) throws Exception{
         User user = userService.findUserProfileByJwt(jwt);
@@ -54,17 +84,33 @@ public class WalletController  {
         Wallet wallet = walletService.payOrderPayment(order, user);
         return new ResponseEntity<>(wallet, HttpStatus.ACCEPTED);
     }
-    @GetMapping("/api/wallet/transactions")
-    public ResponseEntity<List<WalletTransaction>> getWalletTransactions(
+    // also under its old /api/orders path, which existing clients still call
+    @GetMapping({"/api/wallet/transactions", "/api/orders/api/wallet/transactions"})
+    public ResponseEntity<List<WalletTransactionView>> getWalletTransactions(
             @RequestHeader("Authorization") String jwt,
+            @RequestParam(name = "cursor", required = false) String cursor,
             @RequestParam(name = "page", required = false, defaultValue = "0") int page,
             @RequestParam(name = "size", required = false, defaultValue = "50") int size
     ) throws Exception {
 
         User user = userService.findUserProfileByJwt(jwt);
-        List<WalletTransaction> transactions = walletService.getWalletTransactions(user, page, size);
+        List<WalletTransactionView> transactions;
+        try {
+            // ?page= is still honoured for old clients; everything else goes by cursor
+            transactions = cursor == null && page > 0
+                    ? walletService.getWalletTransactions(user, page, size)
+                    : walletService.getWalletTransactionsAfter(user, cursor, size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        return new ResponseEntity<>(transactions, HttpStatus.OK);
+        // the client follows X-Next-Cursor until a page comes back empty
+        ResponseEntity.BodyBuilder res = ResponseEntity.ok();
+        if (!transactions.isEmpty()) {
+            WalletTransactionView last = transactions.get(transactions.size() - 1);
+            res.header("X-Next-Cursor", new TransactionCursor(last.getCreatedAt(), last.getId()).encode());
+        }
+        return res.body(transactions);
     }
     @PutMapping("/api/wallet/deposit")
     public ResponseEntity<?> deposit(
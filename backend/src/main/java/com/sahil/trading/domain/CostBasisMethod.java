@@ -0,0 +1,8 @@
+package com.sahil.trading.domain;
+
+public enum CostBasisMethod {
+    // a sale uses up the oldest lots first, at their own prices
+    FIFO,
+    // a sale costs the average price of everything held
+    AVERAGE
+}
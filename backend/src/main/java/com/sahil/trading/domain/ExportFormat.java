@@ -0,0 +1,20 @@
+package com.sahil.trading.domain;
+
+public enum ExportFormat {
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    ExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,12 @@
+package com.sahil.trading.domain;
+
+public enum LedgerAccount {
+    // a user's wallet; postings carry its walletId
+    WALLET,
+    // money entering or leaving the platform (deposits, withdrawals)
+    CASH,
+    // counterparty of order settlement
+    TRADING,
+    // counterparty of OPENING journals: balances carried over from before the ledger
+    OPENING
+}
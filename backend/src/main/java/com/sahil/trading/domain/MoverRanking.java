@@ -0,0 +1,7 @@
+package com.sahil.trading.domain;
+
+public enum MoverRanking {
+    PRICE_CHANGE_24H,
+    VOLUME,
+    MARKET_CAP_CHANGE_24H
+}
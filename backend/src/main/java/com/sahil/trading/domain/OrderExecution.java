@@ -0,0 +1,10 @@
+package com.sahil.trading.domain;
+
+public enum OrderExecution {
+    // fill now at the current price
+    MARKET,
+    // BUY fills at or below the trigger price, SELL at or above
+    LIMIT,
+    // BUY fills once the price rises to the trigger price, SELL once it falls to it
+    STOP
+}
@@ -1,5 +1,7 @@
 package com.sahil.trading.domain;
 
 public enum OrderStatus {
-    PENDING, FAILED, CANCELLED, PARTIALLY_FAILED, ERROR, SUCCESS
+    PENDING, FAILED, CANCELLED, PARTIALLY_FAILED, ERROR, SUCCESS,
+    // LIMIT/STOP order resting in the order book
+    OPEN
 }
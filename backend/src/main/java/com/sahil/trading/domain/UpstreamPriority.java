@@ -0,0 +1,11 @@
+package com.sahil.trading.domain;
+
+/**
+ * Order in which queued CoinGecko calls are sent, most urgent first.
+ */
+public enum UpstreamPriority {
+    TRADING,
+    MARKET,
+    SEARCH,
+    CHART
+}
@@ -5,5 +5,7 @@ public enum WalletTransactionType {
     WALLET_TRANSFER,
     ADD_MONEY,
     BUY_ASSET,
-    SELL_ASSET
+    SELL_ASSET,
+    // a wallet's balance from before the ledger, posted once per wallet
+    OPENING
 }
@@ -0,0 +1,35 @@
+package com.sahil.trading.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A wallet's ledger balance over every posting up to lastEntryId, so balance
+ * queries only add up the postings after it.
+ */
+@Entity
+@Data
+@Table(name = "balance_snapshots", indexes = {
+        @Index(name = "idx_snapshot_wallet_taken", columnList = "wallet_id, taken_at")
+})
+public class BalanceSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "wallet_id", nullable = false)
+    private Long walletId;
+
+    @Column(name = "balance", nullable = false, precision = 24, scale = 8)
+    private BigDecimal balance;
+
+    @Column(name = "last_entry_id", nullable = false)
+    private Long lastEntryId;
+
+    @Column(name = "taken_at", nullable = false)
+    private Instant takenAt;
+}
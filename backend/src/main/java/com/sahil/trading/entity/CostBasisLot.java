@@ -0,0 +1,47 @@
+package com.sahil.trading.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * The quantity one buy added to a holding, used up by later sells oldest first.
+ * A used-up lot is kept (closed) as history; the index starts at the open ones.
+ */
+@Entity
+@Data
+@Table(name = "cost_basis_lots", indexes = {
+        @Index(name = "idx_lot_user_coin_open", columnList = "user_id, coin_id, closed, id")
+})
+public class CostBasisLot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "coin_id", nullable = false)
+    private String coinId;
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "quantity", nullable = false)
+    private double quantity;
+
+    @Column(name = "remaining", nullable = false)
+    private double remaining;
+
+    // per unit
+    @Column(name = "price", nullable = false)
+    private double price;
+
+    @Column(name = "closed", nullable = false)
+    private boolean closed;
+
+    @Column(name = "acquired_at", nullable = false)
+    private Instant acquiredAt = Instant.now();
+}
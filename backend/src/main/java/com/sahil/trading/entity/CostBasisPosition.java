@@ -0,0 +1,32 @@
+package com.sahil.trading.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Running totals of a user's open lots in one coin, so an average-cost sale is O(1).
+ */
+@Entity
+@Data
+@Table(name = "cost_basis_positions", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_position_user_coin", columnNames = {"user_id", "coin_id"})
+})
+public class CostBasisPosition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "coin_id", nullable = false)
+    private String coinId;
+
+    @Column(name = "quantity", nullable = false)
+    private double quantity;
+
+    // total cost of quantity
+    @Column(name = "cost", nullable = false)
+    private double cost;
+}
@@ -0,0 +1,52 @@
+package com.sahil.trading.entity;
+
+import com.sahil.trading.domain.LedgerAccount;
+import com.sahil.trading.domain.WalletTransactionType;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * One posting of the double-entry ledger. Rows are only ever inserted; every
+ * movement is a journal of postings whose amounts sum to zero.
+ * A positive amount increases the account's balance.
+ */
+@Entity
+@Data
+@Table(name = "ledger_entries", indexes = {
+        @Index(name = "idx_ledger_wallet", columnList = "wallet_id, id"),
+        @Index(name = "idx_ledger_journal", columnList = "journal_id")
+})
+public class LedgerEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "journal_id", nullable = false, length = 36, updatable = false)
+    private String journalId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "account", nullable = false, length = 20, updatable = false)
+    private LedgerAccount account;
+
+    // set for WALLET postings
+    @Column(name = "wallet_id", updatable = false)
+    private Long walletId;
+
+    @Column(name = "amount", nullable = false, precision = 24, scale = 8, updatable = false)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 30, updatable = false)
+    private WalletTransactionType type;
+
+    // order id, withdrawal id etc.
+    @Column(name = "reference", length = 100, updatable = false)
+    private String reference;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt = Instant.now();
+}
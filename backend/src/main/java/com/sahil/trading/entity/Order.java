@@ -1,5 +1,6 @@
 package com.sahil.trading.entity;
 
+import com.sahil.trading.domain.OrderExecution;
 import com.sahil.trading.domain.OrderStatus;
 import com.sahil.trading.domain.OrderType;
 import jakarta.persistence.*;
@@ -11,7 +12,10 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // date-range exports, see OrderRepository.streamBetween
+        @Index(name = "idx_orders_timestamp", columnList = "timestamp, id")
+})
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -31,8 +35,16 @@ public class Order {
     @Column(nullable = false)
     private OrderStatus orderStatus;
 
+    private OrderExecution execution = OrderExecution.MARKET;
+
+    // price a LIMIT/STOP order waits for, null for MARKET
+    private BigDecimal triggerPrice;
+
     @OneToOne(mappedBy = "order", cascade = CascadeType.ALL)
     private OrderItem orderItem;
 
+    // why a PENDING order ended up FAILED
+    private String failureReason;
+
 
 }
@@ -26,6 +26,9 @@ public class OrderItem {
 
     private double sellPrice;
 
+    // gain of a filled sell against its cost basis; null for buys
+    private Double realizedPnl;
+
     @JsonIgnore
     @OneToOne
     private Order order;
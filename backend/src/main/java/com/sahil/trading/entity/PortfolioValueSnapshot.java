@@ -0,0 +1,36 @@
+package com.sahil.trading.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * A user's portfolio value at the close of one UTC day. The unique key is also the
+ * index a chart reads: one range scan over (user_id, day).
+ */
+@Entity
+@Data
+@Table(name = "portfolio_value_snapshots", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_portfolio_snapshot_user_day", columnNames = {"user_id", "day"})
+})
+public class PortfolioValueSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    // market value of the holdings at the day's closing prices
+    @Column(name = "value", nullable = false)
+    private double value;
+
+    // what the holdings cost (quantity x buy price)
+    @Column(name = "cost", nullable = false)
+    private double cost;
+}
@@ -0,0 +1,46 @@
+package com.sahil.trading.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Realized gains of one user in one coin on one UTC day, added to on every sell, so a
+ * report over any period sums days instead of rescanning orders.
+ */
+@Entity
+@Data
+@Table(name = "realized_pnl", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_realized_user_day_coin", columnNames = {"user_id", "day", "coin_id"})
+})
+public class RealizedPnl {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "coin_id", nullable = false)
+    private String coinId;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "quantity", nullable = false)
+    private double quantity;
+
+    @Column(name = "proceeds", nullable = false)
+    private double proceeds;
+
+    @Column(name = "cost", nullable = false)
+    private double cost;
+
+    @Column(name = "realized", nullable = false)
+    private double realized;
+
+    @Column(name = "sells", nullable = false)
+    private int sells;
+}
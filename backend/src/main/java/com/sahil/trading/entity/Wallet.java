@@ -1,9 +1,11 @@
 package com.sahil.trading.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -25,4 +27,11 @@ public class Wallet {
     private User user;
 
     private BigDecimal balance= BigDecimal.ZERO;
+
+    // optimistic lock: a write based on a stale balance fails instead of overwriting
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @JsonIgnore
+    private Long version = 0L;
 }
@@ -10,7 +10,12 @@ import java.time.Instant;
 
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Entity
-@Table(name = "wallet_transactions")
+@Table(name = "wallet_transactions", indexes = {
+        // history is read newest first per wallet, see WalletTransactionRepository
+        @Index(name = "idx_wallet_tx_wallet_created", columnList = "wallet_id, created_at, id"),
+        // date-range exports across all wallets
+        @Index(name = "idx_wallet_tx_created", columnList = "created_at, id")
+})
 public class WalletTransaction {
 
     @Id
@@ -30,8 +35,8 @@ public class WalletTransaction {
     private Wallet counterpartyWallet;
 
 
-    @Column(name = "amount", nullable = false, precision = 19, scale = 4)
-    private Long amount;
+    @Column(name = "amount", nullable = false, precision = 24, scale = 8)
+    private BigDecimal amount;
 
     @Column(name = "type", length = 30)
     private String type; // e.g., "DEPOSIT", "WITHDRAWAL", "TRANSFER", "ORDER_PAYMENT"
@@ -58,8 +63,8 @@ public class WalletTransaction {
     public Wallet getCounterpartyWallet() { return counterpartyWallet; }
     public void setCounterpartyWallet(Wallet counterpartyWallet) { this.counterpartyWallet = counterpartyWallet; }
 
-    public Long getAmount() { return amount; }
-    public void setAmount(Long amount) { this.amount = amount; }
+    public BigDecimal getAmount() { return amount; }
+    public void setAmount(BigDecimal amount) { this.amount = amount; }
 
     public String getType() { return type; }
     public void setType(String type) { this.type = type; }
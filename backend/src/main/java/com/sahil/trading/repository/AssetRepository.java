@@ -2,11 +2,30 @@ package com.sahil.trading.repository;
 
 import com.sahil.trading.entity.Asset;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface AssetRepository extends JpaRepository<Asset, Long> {
 
     List<Asset> findByUserId(Long userId);
+
+    List<Asset> findByUserIdIn(Collection<Long> userIds);
+
     Asset findByUserIdAndCoinId(Long userId, String coinId);
+
+    // writes for rows already held by PortfolioCache: no SELECT before the statement.
+    // Relative, so a stale read never overwrites another change with an absolute
+    // quantity; nothing is written (0 rows) if the row no longer holds what a sale takes
+    @Modifying(flushAutomatically = true)
+    @Query("update Asset a set a.quantity = a.quantity + :delta, a.buyPrice = :buyPrice "
+            + "where a.id = :id and a.quantity + :delta >= 0")
+    int updateHolding(@Param("id") Long id, @Param("delta") double delta, @Param("buyPrice") double buyPrice);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Asset a where a.id = :id and a.quantity <= :quantity")
+    int deleteHolding(@Param("id") Long id, @Param("quantity") double quantity);
 }
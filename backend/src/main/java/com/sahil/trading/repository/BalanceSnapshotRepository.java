@@ -0,0 +1,18 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.entity.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+
+    Optional<BalanceSnapshot> findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(Long walletId, Instant at);
+
+    Optional<BalanceSnapshot> findFirstByWalletIdOrderByLastEntryIdDesc(Long walletId);
+
+    @Query("select coalesce(max(s.lastEntryId), 0) from BalanceSnapshot s")
+    Long lastSnapshotEntryId();
+}
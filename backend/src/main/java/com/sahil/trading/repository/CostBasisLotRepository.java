@@ -0,0 +1,14 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.entity.CostBasisLot;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface CostBasisLotRepository extends JpaRepository<CostBasisLot, Long> {
+
+    // open lots oldest first, a page at a time (idx_lot_user_coin_open)
+    List<CostBasisLot> findByUserIdAndCoinIdAndClosedFalseAndIdGreaterThanOrderByIdAsc(
+            Long userId, String coinId, Long afterId, Limit limit);
+}
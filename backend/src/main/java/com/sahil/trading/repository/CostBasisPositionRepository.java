@@ -0,0 +1,11 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.entity.CostBasisPosition;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface CostBasisPositionRepository extends JpaRepository<CostBasisPosition, Long> {
+
+    Optional<CostBasisPosition> findByUserIdAndCoinId(Long userId, String coinId);
+}
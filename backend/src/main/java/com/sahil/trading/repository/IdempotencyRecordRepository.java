@@ -0,0 +1,26 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+    Optional<IdempotencyRecord> findByUserIdAndScopeAndIdempotencyKey(Long userId, String scope, String idempotencyKey);
+
+    // claims an abandoned pending record; 0 rows when another request got to it first
+    @Transactional
+    @Modifying
+    @Query("update IdempotencyRecord r set r.requestHash = :hash, r.createdAt = :now " +
+            "where r.id = :id and r.statusCode = 0 and r.createdAt < :cutoff")
+    int takeOver(@Param("id") Long id, @Param("hash") String hash, @Param("now") Instant now,
+                 @Param("cutoff") Instant cutoff);
+
+    @Transactional
+    long deleteByCreatedAtBefore(Instant before);
+}
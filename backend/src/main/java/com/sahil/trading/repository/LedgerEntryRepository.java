@@ -0,0 +1,33 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.domain.WalletTransactionType;
+import com.sahil.trading.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    List<LedgerEntry> findByJournalId(String journalId);
+
+    boolean existsByWalletIdAndType(Long walletId, WalletTransactionType type);
+
+    @Query("select coalesce(sum(e.amount), 0) from LedgerEntry e " +
+            "where e.walletId = :walletId and e.id > :afterId and e.createdAt <= :at")
+    BigDecimal sumForWallet(@Param("walletId") Long walletId, @Param("afterId") Long afterId, @Param("at") Instant at);
+
+    @Query("select coalesce(sum(e.amount), 0) from LedgerEntry e " +
+            "where e.walletId = :walletId and e.id > :afterId and e.id <= :upToId")
+    BigDecimal sumForWalletBetween(@Param("walletId") Long walletId, @Param("afterId") Long afterId, @Param("upToId") Long upToId);
+
+    @Query("select coalesce(max(e.id), 0) from LedgerEntry e where e.createdAt <= :before")
+    Long lastIdBefore(@Param("before") Instant before);
+
+    @Query("select distinct e.walletId from LedgerEntry e " +
+            "where e.walletId is not null and e.id > :afterId and e.id <= :upToId")
+    List<Long> walletsWithEntriesBetween(@Param("afterId") Long afterId, @Param("upToId") Long upToId);
+}
@@ -1,10 +1,38 @@
 package com.sahil.trading.repository;
 
+import com.sahil.trading.domain.OrderStatus;
 import com.sahil.trading.entity.Order;
+import com.sahil.trading.response.OrderExportRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface  OrderRepository extends JpaRepository<Order, Long> {
+
+    String EXPORT = "select new com.sahil.trading.response.OrderExportRow(" +
+            "o.id, o.user.id, o.ordertype, o.execution, o.orderStatus, o.price, o.triggerPrice, c.id, i.quantity, o.timestamp) " +
+            "from Order o left join o.orderItem i left join i.coin c ";
+
     List<Order> findByUserId(Long userId);
+
+    List<Order> findByOrderStatus(OrderStatus orderStatus);
+
+    // streamed like WalletTransactionRepository.streamForUser
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(EXPORT + "where o.user.id = :userId and o.timestamp >= :from and o.timestamp < :to order by o.timestamp, o.id")
+    Stream<OrderExportRow> streamForUser(@Param("userId") Long userId, @Param("from") LocalDateTime from,
+                                         @Param("to") LocalDateTime to);
+
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(EXPORT + "where o.timestamp >= :from and o.timestamp < :to order by o.timestamp, o.id")
+    Stream<OrderExportRow> streamBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 }
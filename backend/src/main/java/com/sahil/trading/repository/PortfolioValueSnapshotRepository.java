@@ -0,0 +1,24 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.entity.PortfolioValueSnapshot;
+import com.sahil.trading.response.PortfolioHistoryPoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface PortfolioValueSnapshotRepository extends JpaRepository<PortfolioValueSnapshot, Long> {
+
+    // a range scan of uk_portfolio_snapshot_user_day
+    @Query("select new com.sahil.trading.response.PortfolioHistoryPoint(s.day, s.value, s.cost) " +
+            "from PortfolioValueSnapshot s where s.userId = :userId and s.day >= :from and s.day <= :to order by s.day")
+    List<PortfolioHistoryPoint> findSeries(@Param("userId") Long userId, @Param("from") LocalDate from,
+                                           @Param("to") LocalDate to);
+
+    // [userId, newest day] for those of the users that have rows; one index probe each
+    @Query("select s.userId, max(s.day) from PortfolioValueSnapshot s where s.userId in :userIds group by s.userId")
+    List<Object[]> lastDays(@Param("userIds") Collection<Long> userIds);
+}
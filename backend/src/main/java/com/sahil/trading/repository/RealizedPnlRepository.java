@@ -0,0 +1,23 @@
+package com.sahil.trading.repository;
+
+import com.sahil.trading.entity.RealizedPnl;
+import com.sahil.trading.response.RealizedPnlSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface RealizedPnlRepository extends JpaRepository<RealizedPnl, Long> {
+
+    Optional<RealizedPnl> findByUserIdAndDayAndCoinId(Long userId, LocalDate day, String coinId);
+
+    // one range scan of uk_realized_user_day_coin, at most (days x coins) rows
+    @Query("select new com.sahil.trading.response.RealizedPnlSummary(r.coinId, sum(r.quantity), sum(r.proceeds), " +
+            "sum(r.cost), sum(r.realized), sum(r.sells)) from RealizedPnl r " +
+            "where r.userId = :userId and r.day >= :from and r.day <= :to group by r.coinId order by r.coinId")
+    List<RealizedPnlSummary> summarize(@Param("userId") Long userId, @Param("from") LocalDate from,
+                                       @Param("to") LocalDate to);
+}
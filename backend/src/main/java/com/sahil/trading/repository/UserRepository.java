@@ -1,8 +1,17 @@
 package com.sahil.trading.repository;
 
 import com.sahil.trading.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface UserRepository extends JpaRepository<User,Long> {
     User findByEmail(String email);
+
+    // user ids in order, for batch jobs paging by keyset
+    @Query("select u.id from User u where u.id > :after order by u.id")
+    List<Long> findIdsAfter(@Param("after") Long after, Limit limit);
 }
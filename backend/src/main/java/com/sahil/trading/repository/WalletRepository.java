@@ -1,8 +1,43 @@
 package com.sahil.trading.repository;
 
+import com.sahil.trading.domain.WalletTransactionType;
 import com.sahil.trading.entity.Wallet;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
 
 public interface WalletRepository extends JpaRepository<Wallet, Long> {
     Wallet findByUserId(Long userId);
+
+    // SELECT ... FOR UPDATE: waits for balance changes in flight and blocks new ones
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from Wallet w where w.id = :id")
+    Optional<Wallet> lockById(@Param("id") Long id);
+
+    // wallets without a ledger entry of the given type, in id order, for keyset paging
+    @Query("select w.id from Wallet w where w.id > :after and not exists " +
+            "(select e.id from LedgerEntry e where e.walletId = w.id and e.type = :type) order by w.id")
+    List<Long> findIdsWithoutEntryAfter(@Param("after") Long after, @Param("type") WalletTransactionType type, Limit limit);
+
+    // single-statement balance changes; they bump version so entity-based writers see them.
+    // Managed Wallet instances are not refreshed, re-read (and refresh) after calling these.
+
+    // 0 rows updated: not enough balance (or no such wallet)
+    @Modifying(flushAutomatically = true)
+    @Query("update Wallet w set w.balance = w.balance - :amount, w.version = w.version + 1 " +
+            "where w.id = :id and w.balance >= :amount")
+    int debit(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update Wallet w set w.balance = coalesce(w.balance, 0) + :amount, w.version = w.version + 1 " +
+            "where w.id = :id")
+    int credit(@Param("id") Long id, @Param("amount") BigDecimal amount);
 }
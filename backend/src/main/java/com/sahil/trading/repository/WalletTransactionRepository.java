@@ -1,16 +1,63 @@
 package com.sahil.trading.repository;
 
 import com.sahil.trading.entity.WalletTransaction;
+import com.sahil.trading.response.WalletTransactionExportRow;
+import com.sahil.trading.response.WalletTransactionView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface WalletTransactionRepository extends JpaRepository<WalletTransaction, Long> {
 
+    String VIEW = "select new com.sahil.trading.response.WalletTransactionView(" +
+            "t.id, t.amount, t.type, t.status, t.reference, t.notes, t.createdAt, t.counterpartyWallet.id) " +
+            "from WalletTransaction t ";
+
     Page<WalletTransaction> findByWalletId(Long walletId, Pageable pageable);
     void deleteByWalletId(Long walletId);
 
     List<WalletTransaction> findByWalletIdOrderByCreatedAtDesc(Long walletId);
+
+    // keyset pages, served by idx_wallet_tx_wallet_created; cost does not grow with depth
+    @Query(VIEW + "where t.wallet.id = :walletId order by t.createdAt desc, t.id desc")
+    List<WalletTransactionView> findLatestViews(@Param("walletId") Long walletId, Limit limit);
+
+    @Query(VIEW + "where t.wallet.id = :walletId " +
+            "and (t.createdAt < :createdAt or (t.createdAt = :createdAt and t.id < :id)) " +
+            "order by t.createdAt desc, t.id desc")
+    List<WalletTransactionView> findViewsBefore(@Param("walletId") Long walletId, @Param("createdAt") Instant createdAt,
+                                                @Param("id") Long id, Limit limit);
+
+    String EXPORT = "select new com.sahil.trading.response.WalletTransactionExportRow(" +
+            "t.id, t.wallet.id, t.counterpartyWallet.id, t.amount, t.type, t.status, t.reference, t.notes, t.createdAt) " +
+            "from WalletTransaction t ";
+
+    // exports: read-only rows streamed off the connection (Integer.MIN_VALUE makes
+    // MySQL Connector/J stream instead of buffering the whole result). The caller
+    // must consume the Stream inside a transaction and close it
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(EXPORT + "where t.wallet.user.id = :userId and t.createdAt >= :from and t.createdAt < :to " +
+            "order by t.createdAt, t.id")
+    Stream<WalletTransactionExportRow> streamForUser(@Param("userId") Long userId, @Param("from") Instant from,
+                                                     @Param("to") Instant to);
+
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query(EXPORT + "where t.createdAt >= :from and t.createdAt < :to order by t.createdAt, t.id")
+    Stream<WalletTransactionExportRow> streamBetween(@Param("from") Instant from, @Param("to") Instant to);
+
+    // OFFSET pages, kept for clients still sending ?page=
+    @Query(VIEW + "where t.wallet.id = :walletId order by t.createdAt desc, t.id desc")
+    List<WalletTransactionView> findViews(@Param("walletId") Long walletId, Pageable pageable);
 }
@@ -1,5 +1,6 @@
 package com.sahil.trading.request;
 
+import com.sahil.trading.domain.OrderExecution;
 import com.sahil.trading.domain.OrderType;
 import lombok.Data;
 
@@ -8,5 +9,7 @@ public class CreateOrderRequest {
     private String coinId;
     private double quantity;
     private OrderType orderType;
+    private OrderExecution execution = OrderExecution.MARKET;
+    private Double triggerPrice;
 
 }
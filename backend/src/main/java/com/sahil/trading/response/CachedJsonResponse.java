@@ -0,0 +1,82 @@
+package com.sahil.trading.response;
+
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A JSON body ready to be written to the client: UTF-8 bytes, a gzip copy and an ETag
+ * for each, all computed once when the response is cached so a cache hit is a plain
+ * byte copy.
+ * The gzip copy is built on first use (or when the entry is weighed for a cache).
+ */
+public final class CachedJsonResponse {
+
+    public static final CachedJsonResponse EMPTY_OBJECT = of("{}");
+
+    private final byte[] body;
+    private volatile byte[] gzipBody;
+    private final String etag;
+    // the gzip bytes are another representation, so they get their own strong tag
+    private final String gzipEtag;
+
+    private CachedJsonResponse(byte[] body) {
+        this.body = body;
+        String md5 = DigestUtils.md5DigestAsHex(body);
+        this.etag = "\"" + md5 + "\"";
+        this.gzipEtag = "\"" + md5 + "-gzip\"";
+    }
+
+    public static CachedJsonResponse of(String json) {
+        return new CachedJsonResponse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CachedJsonResponse of(byte[] json) {
+        return new CachedJsonResponse(json);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public byte[] getGzipBody() {
+        byte[] gz = gzipBody;
+        if (gz == null) {
+            // racing threads compute the same bytes, no need to lock
+            gz = gzip(body);
+            gzipBody = gz;
+        }
+        return gz;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getGzipEtag() {
+        return gzipEtag;
+    }
+
+    // bytes held in memory, used to weigh cache entries
+    public long size() {
+        return body.length + getGzipBody().length + etag.length() + gzipEtag.length();
+    }
+
+    public String asString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,30 @@
+package com.sahil.trading.response;
+
+import com.sahil.trading.domain.OrderExecution;
+import com.sahil.trading.domain.OrderStatus;
+import com.sahil.trading.domain.OrderType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One order as exported, selected straight into this class like WalletTransactionView.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderExportRow {
+    private Long id;
+    private Long userId;
+    private OrderType orderType;
+    private OrderExecution execution;
+    private OrderStatus status;
+    private BigDecimal price;
+    private BigDecimal triggerPrice;
+    private String coinId;
+    private Double quantity;
+    private LocalDateTime timestamp;
+}
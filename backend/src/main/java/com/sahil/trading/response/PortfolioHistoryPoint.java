@@ -0,0 +1,16 @@
+package com.sahil.trading.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PortfolioHistoryPoint {
+    private LocalDate day;
+    private double value;
+    private double cost;
+}
@@ -0,0 +1,42 @@
+package com.sahil.trading.response;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A user's holdings valued at the latest market snapshot. Percentages are 0-100; a
+ * coin with no known price is valued at its last stored price.
+ */
+@Data
+public class PortfolioView {
+
+    @Data
+    public static class Position {
+        private String coinId;
+        private String symbol;
+        private String name;
+        private String image;
+        private double quantity;
+        private double buyPrice;
+        private double price;
+        private double value;
+        private double cost;
+        private double unrealizedPnl;
+        private double unrealizedPnlPercent;
+        private double allocationPercent;
+        private double change24h;
+        private double change24hPercent;
+    }
+
+    private double totalValue;
+    private double totalCost;
+    private double unrealizedPnl;
+    private double unrealizedPnlPercent;
+    private double change24h;
+    private double change24hPercent;
+    // fetchedAt of the market snapshot the prices come from, 0 before the first poll
+    private long pricedAt;
+    private List<Position> positions = new ArrayList<>();
+}
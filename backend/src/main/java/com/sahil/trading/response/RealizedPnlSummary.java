@@ -0,0 +1,20 @@
+package com.sahil.trading.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Realized P&L of one coin over a period.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RealizedPnlSummary {
+    private String coinId;
+    private Double quantity;
+    private Double proceeds;
+    private Double cost;
+    private Double realized;
+    private Long sells;
+}
@@ -0,0 +1,27 @@
+package com.sahil.trading.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A wallet transaction as exported; unlike WalletTransactionView it names the wallet,
+ * since an admin export spans every user.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletTransactionExportRow {
+    private Long id;
+    private Long walletId;
+    private Long counterpartyWalletId;
+    private BigDecimal amount;
+    private String type;
+    private String status;
+    private String reference;
+    private String notes;
+    private Instant createdAt;
+}
@@ -0,0 +1,26 @@
+package com.sahil.trading.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A wallet history row as the API returns it, selected straight into this class so
+ * no Wallet or counterparty proxies are loaded.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletTransactionView {
+    private Long id;
+    private BigDecimal amount;
+    private String type;
+    private String status;
+    private String reference;
+    private String notes;
+    private Instant createdAt;
+    private Long counterpartyWalletId;
+}
@@ -29,10 +29,17 @@ public interface AssetService {
      */
     Asset updateAsset(Long assetId, double deltaQuantity, double buyPrice) throws Exception;
 
+    /**
+     * Apply deltaQuantity to an asset already looked up (e.g. by findAssetByUserIdAndCoinId),
+     * without reading it again. Buys average buyPrice into the asset's buy price; a sell
+     * down to zero removes the asset and returns null. The argument is not modified.
+     */
+    Asset changeQuantity(Asset asset, double deltaQuantity, double buyPrice) throws Exception;
+
     // Backwards-compatible: old signature that replaces quantity (kept but delegates to updateAsset)
     Asset updateAsset(Long assetId, double quantity) throws Exception;
 
     Asset findAssetByUserIdAndCoinId(Long userId, String coinId);
 
-    void deleteAsset(Long assetId);
+    void deleteAsset(Long assetId) throws Exception;
 }
@@ -15,6 +15,9 @@ public class AssetServiceImpl implements AssetService {
     @Autowired
     private AssetRepository assetRepository;
 
+    @Autowired
+    private PortfolioCache portfolioCache;
+
     @Override
     public Asset createAsset(User user, Coin coin, double quantity) {
         Asset asset = new Asset();
@@ -22,7 +25,7 @@ public class AssetServiceImpl implements AssetService {
         asset.setCoin(coin);
         asset.setQuantity(quantity);
         asset.setBuyPrice(coin.getCurrentPrice());  // double
-        return assetRepository.save(asset);
+        return saved(asset);
     }
 
     @Override
@@ -32,7 +35,7 @@ public class AssetServiceImpl implements AssetService {
         asset.setCoin(coin);
         asset.setQuantity(quantity);
         asset.setBuyPrice(buyPrice);   // double
-        return assetRepository.save(asset);
+        return saved(asset);
     }
 
     @Override
@@ -48,66 +51,92 @@ public class AssetServiceImpl implements AssetService {
 
     @Override
     public List<Asset> getUserAssets(Long userId) {
-        return assetRepository.findByUserId(userId);
+        return List.copyOf(portfolioCache.assets(userId).values());
     }
 
     /**
      * Update asset with deltaQuantity.
-     * BUY -> delta > 0  -> weighted average buy price
+     * BUY -> delta > 0  -> weighted average buy price (at the coin's current price)
      * SELL -> delta < 0 -> reduce quantity
      */
     @Override
     public Asset updateAsset(Long assetId, double deltaQuantity) throws Exception {
-
         Asset oldAsset = getAssetById(assetId);
+        return changeQuantity(oldAsset, deltaQuantity, oldAsset.getCoin().getCurrentPrice());
+    }
 
-        double oldQty = oldAsset.getQuantity();
-        double oldBuyPrice = oldAsset.getBuyPrice(); // primitive double, safe
+    @Override
+    public Asset changeQuantity(Asset asset, double deltaQuantity, double buyPrice) throws Exception {
+        if (asset == null || asset.getId() == null) throw new Exception("Asset not found");
 
+        double oldQty = asset.getQuantity();
         double newQty = oldQty + deltaQuantity;
 
         // SELL CASE
         if (deltaQuantity < 0) {
             if (newQty <= 0) {
-                assetRepository.deleteById(assetId);
+                deleteAsset(asset);
                 return null;
             }
-            oldAsset.setQuantity(newQty);
-            return assetRepository.save(oldAsset);
+            return written(asset, deltaQuantity, asset.getBuyPrice());
         }
 
         // BUY CASE (weighted avg)
-        double currentPrice = oldAsset.getCoin().getCurrentPrice();
+        double totalCostOld = asset.getBuyPrice() * oldQty;
+        double totalCostNew = buyPrice * deltaQuantity;
 
-        double totalCostOld = oldBuyPrice * oldQty;
-        double totalCostNew = currentPrice * deltaQuantity;
-        double totalQty = oldQty + deltaQuantity;
+        double newBuyPrice = newQty > 0
+                ? (totalCostOld + totalCostNew) / newQty
+                : buyPrice;
 
-        double newBuyPrice = totalQty > 0
-                ? (totalCostOld + totalCostNew) / totalQty
-                : currentPrice;
-
-        oldAsset.setBuyPrice(newBuyPrice);
-        oldAsset.setQuantity(totalQty);
-
-        return assetRepository.save(oldAsset);
+        return written(asset, deltaQuantity, newBuyPrice);
     }
 
     @Override
     public Asset updateAsset(Long assetId, double quantity, double buyPrice) throws Exception {
         Asset asset = getAssetById(assetId);
-        asset.setQuantity(quantity);
-        asset.setBuyPrice(buyPrice);
-        return assetRepository.save(asset);
+        return written(asset, quantity - asset.getQuantity(), buyPrice);
     }
 
     @Override
     public Asset findAssetByUserIdAndCoinId(Long userId, String coinId) {
-        return assetRepository.findByUserIdAndCoinId(userId, coinId);
+        return portfolioCache.find(userId, coinId);
     }
 
     @Override
-    public void deleteAsset(Long assetId) {
-        assetRepository.deleteById(assetId);
+    public void deleteAsset(Long assetId) throws Exception {
+        Asset asset = assetRepository.findById(assetId).orElse(null);
+        if (asset != null) deleteAsset(asset);
+    }
+
+    // every write goes through saved/written/deleteAsset so PortfolioCache follows it
+
+    private Asset saved(Asset asset) {
+        Asset saved = assetRepository.save(asset);
+        portfolioCache.saved(saved);
+        return saved;
+    }
+
+    // a single relative UPDATE by id; asset itself may be a cached copy and is not modified
+    private Asset written(Asset asset, double delta, double buyPrice) throws Exception {
+        if (assetRepository.updateHolding(asset.getId(), delta, buyPrice) == 0) {
+            // the row is gone or holds less than we read: what we cached is out of date
+            portfolioCache.invalidate(asset.getUser().getId());
+            throw new Exception(delta < 0 ? "Insufficient quantity to sell" : "Asset not found");
+        }
+        Asset updated = PortfolioCache.copy(asset);
+        updated.setQuantity(asset.getQuantity() + delta);
+        updated.setBuyPrice(buyPrice);
+        portfolioCache.saved(updated);
+        return updated;
+    }
+
+    private void deleteAsset(Asset asset) throws Exception {
+        // only while the row holds no more than we read; a concurrent buy keeps it
+        if (assetRepository.deleteHolding(asset.getId(), asset.getQuantity()) == 0) {
+            portfolioCache.invalidate(asset.getUser().getId());
+            throw new Exception("Asset changed, retry the sale");
+        }
+        portfolioCache.deleted(asset);
     }
 }
@@ -0,0 +1,186 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.response.CachedJsonResponse;
+import com.sahil.trading.utils.BoundedCache;
+import com.sahil.trading.utils.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache for upstream CoinGecko responses, keyed like "chart_bitcoin_7". Values are
+ * kept pre-serialized (bytes, gzip and ETag) so controllers can write them as is.
+ *
+ * Bounded by the total size of the stored responses (coin.cache.max-bytes), with a TTL per
+ * key family (the part before the first '_': chart, details, search, trending).
+ * Metrics are published as coin.cache.* through the actuator.
+ *
+ * Reads go through getOrLoad, which serves stale-while-revalidate:
+ * - fresh entry: returned as is
+ * - past the TTL but within coin.cache.stale-ms: returned immediately while one
+ *   background refresh runs
+ * - older, but within coin.cache.stale-if-error-ms: only returned if the reload fails
+ * Concurrent loads of the same key share one upstream call.
+ */
+@Component
+public class CoinCache implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(CoinCache.class);
+
+    // per-entry bookkeeping on top of the JSON itself (entry, key, map node)
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final BoundedCache<String, CachedJsonResponse> cache;
+
+    private final long chartTtl;
+    private final long detailsTtl;
+    private final long searchTtl;
+    private final long defaultTtl;
+    private final long staleMs;
+    private final long staleIfErrorMs;
+
+    private final SingleFlight<String, CachedJsonResponse> inFlight = new SingleFlight<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "coin-cache-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public CoinCache(@Value("${coin.cache.max-bytes:67108864}") long maxBytes,
+                     @Value("${coin.cache.ttl.chart-ms:300000}") long chartTtl,
+                     @Value("${coin.cache.ttl.details-ms:60000}") long detailsTtl,
+                     @Value("${coin.cache.ttl.search-ms:600000}") long searchTtl,
+                     @Value("${coin.cache.ttl.default-ms:60000}") long defaultTtl,
+                     @Value("${coin.cache.stale-ms:300000}") long staleMs,
+                     @Value("${coin.cache.stale-if-error-ms:1800000}") long staleIfErrorMs) {
+        this.cache = new BoundedCache<>(maxBytes, (k, v) -> ENTRY_OVERHEAD + k.length() + v.size());
+        this.chartTtl = chartTtl;
+        this.detailsTtl = detailsTtl;
+        this.searchTtl = searchTtl;
+        this.defaultTtl = defaultTtl;
+        this.staleMs = staleMs;
+        this.staleIfErrorMs = staleIfErrorMs;
+    }
+
+    /**
+     * Fresh value for key, or null.
+     */
+    public CachedJsonResponse get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, CachedJsonResponse response) {
+        long ttl = ttlFor(key);
+        cache.put(key, response, ttl, ttl + staleMs, ttl + staleIfErrorMs);
+    }
+
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Cached value for key, loading it with loader when missing (see class comment).
+     * Throws the loader's exception only when there is nothing cached to fall back on.
+     */
+    public CachedJsonResponse getOrLoad(String key, SingleFlight.Loader<String> loader) throws Exception {
+        BoundedCache.Hit<CachedJsonResponse> hit = cache.getEntry(key);
+        if (hit != null && hit.freshness() == BoundedCache.Freshness.FRESH) {
+            return hit.value();
+        }
+        if (hit != null && hit.freshness() == BoundedCache.Freshness.STALE) {
+            refreshAsync(key, loader);
+            return hit.value();
+        }
+        try {
+            return inFlight.execute(key, () -> load(key, loader));
+        } catch (Exception e) {
+            if (hit == null) throw e;
+            log.warn("[CoinCache] reload of {} failed, serving stale value: {}", key, e.getMessage());
+            return hit.value();
+        }
+    }
+
+    private void refreshAsync(String key, SingleFlight.Loader<String> loader) {
+        if (!refreshing.add(key)) return;
+        refreshExecutor.execute(() -> {
+            try {
+                inFlight.execute(key, () -> load(key, loader));
+            } catch (Exception e) {
+                log.warn("[CoinCache] background refresh of {} failed: {}", key, e.getMessage());
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private CachedJsonResponse load(String key, SingleFlight.Loader<String> loader) throws Exception {
+        // a caller that missed just after the previous load finished
+        CachedJsonResponse fresh = cache.peek(key);
+        if (fresh != null) return fresh;
+
+        CachedJsonResponse value = CachedJsonResponse.of(loader.load());
+        put(key, value);
+        return value;
+    }
+
+    private long ttlFor(String key) {
+        int sep = key.indexOf('_');
+        String family = sep < 0 ? key : key.substring(0, sep);
+        return switch (family) {
+            case "chart" -> chartTtl;
+            case "details" -> detailsTtl;
+            case "search" -> searchTtl;
+            default -> defaultTtl;
+        };
+    }
+
+    // user-controlled keys (search terms, chart ranges) may never be read again
+    @Scheduled(fixedDelayString = "${coin.cache.sweep-interval-ms:30000}")
+    public void sweep() {
+        cache.evictExpired();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("coin.cache.size", cache, BoundedCache::size)
+                .description("Entries in the coin response cache")
+                .register(registry);
+        Gauge.builder("coin.cache.weight", cache, BoundedCache::weight)
+                .baseUnit("bytes")
+                .description("Approximate bytes held by the coin response cache")
+                .register(registry);
+        FunctionCounter.builder("coin.cache.requests", cache, BoundedCache::hitCount)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("coin.cache.requests", cache, BoundedCache::staleHitCount)
+                .tag("result", "stale")
+                .register(registry);
+        FunctionCounter.builder("coin.cache.requests", cache, BoundedCache::missCount)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("coin.cache.evictions", cache, BoundedCache::evictionCount)
+                .tag("cause", "size")
+                .register(registry);
+        FunctionCounter.builder("coin.cache.evictions", cache, BoundedCache::expirationCount)
+                .tag("cause", "expired")
+                .register(registry);
+    }
+}
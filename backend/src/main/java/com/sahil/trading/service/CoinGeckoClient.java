@@ -0,0 +1,34 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.UpstreamPriority;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public interface CoinGeckoClient {
+
+    interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    /**
+     * GET a CoinGecko API path (e.g. "/coins/markets?vs_currency=usd") and return the raw body.
+     * Calls are queued behind the shared rate limit and sent in priority order.
+     */
+    String get(String path, UpstreamPriority priority) throws Exception;
+
+    default String get(String path) throws Exception {
+        return get(path, UpstreamPriority.MARKET);
+    }
+
+    /**
+     * Like get, but hands the body to reader as a stream so large responses can be
+     * parsed as they arrive instead of being buffered into a String first.
+     */
+    default <T> T get(String path, UpstreamPriority priority, BodyReader<T> reader) throws Exception {
+        byte[] body = get(path, priority).getBytes(StandardCharsets.UTF_8);
+        return reader.read(new ByteArrayInputStream(body));
+    }
+}
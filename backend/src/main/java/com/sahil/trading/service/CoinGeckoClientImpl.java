@@ -0,0 +1,306 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.UpstreamPriority;
+import com.sahil.trading.utils.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gateway for every CoinGecko call.
+ *
+ * Requests wait in a priority queue (see UpstreamPriority) and a single dispatcher
+ * sends them as a token bucket allows, coingecko.rate-limit.per-minute on average
+ * with bursts of coingecko.rate-limit.burst. A 429 pauses the whole queue for the
+ * Retry-After the server sent; 429s, 5xx and I/O errors are retried with jittered
+ * exponential backoff up to coingecko.retry.max-attempts. Sends go through
+ * OutboundHttpClient, so no thread waits on CoinGecko while a call is in flight.
+ *
+ * Metrics: coingecko.queue.depth, coingecko.queue.wait (per priority),
+ * coingecko.retries and coingecko.throttled.
+ */
+@Service
+public class CoinGeckoClientImpl implements CoinGeckoClient, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(CoinGeckoClientImpl.class);
+
+    private static final class Request implements Comparable<Request> {
+        final String path;
+        final UpstreamPriority priority;
+        final long seq;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<InputStream> result = new CompletableFuture<>();
+        int attempt;
+
+        Request(String path, UpstreamPriority priority, long seq) {
+            this.path = path;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Request o) {
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final String baseUrl;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final long timeoutMs;
+
+    private final OutboundHttpClient http;
+    private final TokenBucket bucket;
+    private final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong seq = new AtomicLong();
+    // System.nanoTime() before which nothing is sent, set from Retry-After
+    private final AtomicLong pausedUntil = new AtomicLong(System.nanoTime());
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "coingecko-retry");
+        t.setDaemon(true);
+        return t;
+    });
+    private Thread dispatcher;
+
+    private volatile Map<UpstreamPriority, Timer> waitTimers = Map.of();
+    private volatile Counter retries;
+    private volatile Counter throttled;
+
+    public CoinGeckoClientImpl(
+            OutboundHttpClient http,
+            // point this at a local stub server to run without network access
+            @Value("${coingecko.base-url:https://api.coingecko.com/api/v3}") String baseUrl,
+            // the public API allows roughly 30 calls a minute
+            @Value("${coingecko.rate-limit.per-minute:30}") int perMinute,
+            @Value("${coingecko.rate-limit.burst:5}") int burst,
+            @Value("${coingecko.retry.max-attempts:3}") int maxAttempts,
+            @Value("${coingecko.retry.backoff-ms:1000}") long backoffMs,
+            @Value("${coingecko.retry.max-backoff-ms:60000}") long maxBackoffMs,
+            @Value("${coingecko.timeout-ms:30000}") long timeoutMs) {
+        this.http = http;
+        this.baseUrl = baseUrl;
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.timeoutMs = timeoutMs;
+        this.bucket = new TokenBucket(burst, perMinute / 60d);
+    }
+
+    @PostConstruct
+    public void start() {
+        dispatcher = new Thread(this::dispatch, "coingecko-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher != null) dispatcher.interrupt();
+        retryScheduler.shutdownNow();
+    }
+
+    @Override
+    public String get(String path, UpstreamPriority priority) throws Exception {
+        return get(path, priority, in -> new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public <T> T get(String path, UpstreamPriority priority, BodyReader<T> reader) throws Exception {
+        try (InputStream body = await(path, submit(path, priority))) {
+            return reader.read(body);
+        }
+    }
+
+    private InputStream await(String path, CompletableFuture<InputStream> result) throws Exception {
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            throw new TimeoutException("[CoinGeckoClient] no response for " + path + " within " + timeoutMs + "ms");
+        } catch (ExecutionException e) {
+            // rethrow the original error so callers can still catch e.g. TooManyRequests
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    CompletableFuture<InputStream> submit(String path, UpstreamPriority priority) {
+        Request request = new Request(path, priority, seq.incrementAndGet());
+        queue.offer(request);
+        return request.result;
+    }
+
+    void pauseFor(long ms) {
+        pausedUntil.accumulateAndGet(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms), Math::max);
+    }
+
+    // ================= DISPATCH =================
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Request next = queue.take();
+                long pause = pausedUntil.get() - System.nanoTime();
+                if (pause > 0) TimeUnit.NANOSECONDS.sleep(pause);
+                bucket.acquire();
+
+                // something more urgent may have arrived while we waited for a token
+                queue.offer(next);
+                Request request = queue.take();
+                if (request.result.isDone()) continue;
+
+                Timer timer = waitTimers.get(request.priority);
+                if (timer != null) timer.record(System.nanoTime() - request.enqueuedAt, TimeUnit.NANOSECONDS);
+                send(request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("[CoinGeckoClient] dispatcher error", e);
+            }
+        }
+    }
+
+    private void send(Request request) {
+        http.stream(http.get(baseUrl + request.path).build())
+                .whenComplete((response, error) -> {
+                    try {
+                        if (error != null) throw unwrap(error);
+                        InputStream body = bodyOf(response);
+                        // the caller gave up waiting, nobody will read it
+                        if (!request.result.complete(body)) body.close();
+                    } catch (Exception e) {
+                        handleFailure(request, e);
+                    }
+                });
+    }
+
+    private void handleFailure(Request request, Exception error) {
+        if (error instanceof HttpClientErrorException.TooManyRequests e) {
+            if (throttled != null) throttled.increment();
+            long retryAfter = retryAfterMs(e.getResponseHeaders());
+            long delay = retryAfter > 0 ? retryAfter : backoff(request.attempt);
+            // everyone shares the limit, so hold the whole queue, not just this request
+            pauseFor(delay);
+            bucket.drain();
+            retryOrFail(request, e, delay);
+        } else if (error instanceof HttpServerErrorException || error instanceof ResourceAccessException) {
+            retryOrFail(request, error, backoff(request.attempt));
+        } else {
+            request.result.completeExceptionally(error);
+        }
+    }
+
+    // same exceptions RestTemplate would throw, which callers already handle
+    private static InputStream bodyOf(HttpResponse<InputStream> response) throws IOException {
+        int status = response.statusCode();
+        if (status < 400) return response.body();
+
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        byte[] body;
+        try (InputStream in = response.body()) {
+            body = in.readAllBytes();
+        }
+        String message = status + " on GET " + response.uri();
+        if (status < 500) {
+            throw HttpClientErrorException.create(message, HttpStatusCode.valueOf(status), "", headers, body, StandardCharsets.UTF_8);
+        }
+        throw HttpServerErrorException.create(message, HttpStatusCode.valueOf(status), "", headers, body, StandardCharsets.UTF_8);
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IOException io) return new ResourceAccessException(io.getMessage(), io);
+        if (cause instanceof Exception e) return e;
+        return new IllegalStateException(cause);
+    }
+
+    private void retryOrFail(Request request, Exception error, long delayMs) {
+        request.attempt++;
+        if (request.attempt >= maxAttempts || request.result.isDone()) {
+            request.result.completeExceptionally(error);
+            return;
+        }
+        if (retries != null) retries.increment();
+        log.warn("[CoinGeckoClient] {} failed ({}), retry {} in {}ms",
+                request.path, error.getMessage(), request.attempt, delayMs);
+        retryScheduler.schedule(() -> queue.offer(request), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // exponential with equal jitter: half fixed, half random
+    private long backoff(int attempt) {
+        long cap = Math.min(maxBackoffMs, backoffMs << Math.min(attempt, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private static long retryAfterMs(HttpHeaders headers) {
+        String value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return 0;
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException ignored) {
+            // not seconds, try an HTTP date
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("coingecko.queue.depth", queue, PriorityBlockingQueue::size)
+                .description("CoinGecko calls waiting for the rate limit")
+                .register(registry);
+        Map<UpstreamPriority, Timer> timers = new EnumMap<>(UpstreamPriority.class);
+        for (UpstreamPriority priority : UpstreamPriority.values()) {
+            timers.put(priority, Timer.builder("coingecko.queue.wait")
+                    .tag("priority", priority.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        waitTimers = timers;
+        retries = Counter.builder("coingecko.retries").register(registry);
+        throttled = Counter.builder("coingecko.throttled")
+                .description("429 responses from CoinGecko")
+                .register(registry);
+    }
+}
@@ -0,0 +1,31 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.UpstreamPriority;
+import com.sahil.trading.entity.Coin;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "market.source", havingValue = "coingecko", matchIfMissing = true)
+public class CoinGeckoMarketDataSource implements MarketDataSource {
+
+    @Autowired
+    private CoinGeckoClient coinGeckoClient;
+
+    // 250 is the CoinGecko max page size, one call covers every page the UI shows
+    @Value("${market.snapshot-size:250}")
+    private int snapshotSize;
+
+    @Override
+    public List<Coin> fetchMarkets() throws Exception {
+        return coinGeckoClient.get(
+                "/coins/markets?vs_currency=usd&order=market_cap_desc&per_page=" + snapshotSize + "&page=1",
+                // prices the trading endpoints and order checks rely on
+                UpstreamPriority.TRADING,
+                CoinMarketsReader::read);
+    }
+}
@@ -0,0 +1,81 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sahil.trading.entity.Coin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for CoinGecko's /coins/markets array.
+ *
+ * Walks the tokens straight into Coin setters instead of binding through a tree or
+ * reflection, and skips what the app never reads (roi, ath_date, atl_date, unknown
+ * fields) without materializing it. Same result as ObjectMapper.readValue for the
+ * fields it keeps.
+ */
+public final class CoinMarketsReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private CoinMarketsReader() {
+    }
+
+    public static List<Coin> read(InputStream in) throws IOException {
+        try (JsonParser p = JSON.createParser(in)) {
+            return read(p);
+        }
+    }
+
+    public static List<Coin> read(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("expected a JSON array of coins, got " + p.currentToken());
+        }
+        List<Coin> coins = new ArrayList<>(256);
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            coins.add(readCoin(p));
+        }
+        return coins;
+    }
+
+    private static Coin readCoin(JsonParser p) throws IOException {
+        Coin c = new Coin();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value == JsonToken.VALUE_NULL) continue;
+            switch (field) {
+                case "id" -> c.setId(p.getText());
+                case "symbol" -> c.setSymbol(p.getText());
+                case "name" -> c.setName(p.getText());
+                case "image" -> c.setImage(p.getText());
+                case "current_price" -> c.setCurrentPrice(p.getValueAsDouble());
+                case "market_cap" -> c.setMarketCap(p.getValueAsLong());
+                case "market_cap_rank" -> c.setMarketCapRank(p.getValueAsInt());
+                case "fully_diluted_valuation" -> c.setFullyDilutedValuation(p.getValueAsLong());
+                case "total_volume" -> c.setTotalVolume(p.getValueAsLong());
+                case "high_24h" -> c.setHigh24h(p.getValueAsDouble());
+                case "low_24h" -> c.setLow24h(p.getValueAsDouble());
+                case "price_change_24h" -> c.setPriceChange24h(p.getValueAsDouble());
+                case "price_change_percentage_24h" -> c.setPriceChangePercentage24h(p.getValueAsDouble());
+                case "market_cap_change_24h" -> c.setMarketCapChange24h(p.getValueAsLong());
+                case "market_cap_change_percentage_24h" -> c.setMarketCapChangePercentage24h(p.getValueAsDouble());
+                case "circulating_supply" -> c.setCirculatingSupply(p.getValueAsDouble());
+                case "total_supply" -> c.setTotalSupply(p.getValueAsDouble());
+                case "max_supply" -> c.setMaxSupply(p.getValueAsDouble());
+                case "ath" -> c.setAth(p.getValueAsDouble());
+                case "ath_change_percentage" -> c.setAthChangePercentage(p.getValueAsDouble());
+                case "atl" -> c.setAtl(p.getValueAsDouble());
+                case "atl_change_percentage" -> c.setAtlChangePercentage(p.getValueAsDouble());
+                case "last_updated" -> c.setLastUpdated(p.getText());
+                // roi, ath_date, atl_date and anything new
+                default -> p.skipChildren();
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,195 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.repository.CoinRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process search over the coin catalog (id, symbol and name).
+ *
+ * - prefix matches come from a sorted term map (exact matches rank first)
+ * - when that finds too little, trigram overlap catches typos like "etherum"
+ * - results are ordered by match quality, then market cap rank
+ *
+ * Loaded from the cryptocurrencies table at startup and updated with every market
+ * snapshot; only coins whose id, symbol or name changed are re-indexed.
+ */
+@Component
+public class CoinSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CoinSearchIndex.class);
+
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int FUZZY = 2;
+
+    // share of the query's trigrams a coin must contain to count as a fuzzy match
+    private static final double MIN_TRIGRAM_OVERLAP = 0.5;
+
+    @Autowired
+    private CoinRepository coinRepository;
+
+    private final Map<String, Coin> coins = new HashMap<>();
+    private final Map<String, Set<String>> termsById = new HashMap<>();
+    private final TreeMap<String, Set<String>> terms = new TreeMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCatalog() {
+        try {
+            indexAll(coinRepository.findAll());
+            log.info("[CoinSearchIndex] indexed {} coins", size());
+        } catch (Exception e) {
+            log.warn("[CoinSearchIndex] could not load coin catalog: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        indexAll(event.getSnapshot().getCoins());
+    }
+
+    public void indexAll(Collection<Coin> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Coin c : batch) put(c);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a coin unless it is already indexed (keeps richer market data from snapshots).
+     */
+    public void indexIfAbsent(Coin coin) {
+        lock.writeLock().lock();
+        try {
+            if (!coins.containsKey(coin.getId())) put(coin);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return coins.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Coin> search(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty()) return List.of();
+
+        Map<String, Integer> matches = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Set<String>> e : terms.subMap(q, true, q + Character.MAX_VALUE, true).entrySet()) {
+                int score = e.getKey().equals(q) ? EXACT : PREFIX;
+                for (String id : e.getValue()) matches.merge(id, score, Math::min);
+            }
+
+            if (matches.size() < limit && q.length() >= 3) {
+                Set<String> queryGrams = trigramsOf(q);
+                Map<String, Integer> shared = new HashMap<>();
+                for (String gram : queryGrams) {
+                    Set<String> ids = trigrams.get(gram);
+                    if (ids == null) continue;
+                    for (String id : ids) shared.merge(id, 1, Integer::sum);
+                }
+                int needed = (int) Math.ceil(queryGrams.size() * MIN_TRIGRAM_OVERLAP);
+                for (Map.Entry<String, Integer> e : shared.entrySet()) {
+                    if (e.getValue() >= needed) matches.putIfAbsent(e.getKey(), FUZZY);
+                }
+            }
+
+            List<Coin> result = new ArrayList<>(matches.size());
+            for (String id : matches.keySet()) result.add(coins.get(id));
+            result.sort(Comparator
+                    .comparingInt((Coin c) -> matches.get(c.getId()))
+                    .thenComparingInt(c -> c.getMarketCapRank() == null ? Integer.MAX_VALUE : c.getMarketCapRank())
+                    .thenComparing(c -> c.getName() == null ? "" : c.getName()));
+            return result.subList(0, Math.min(limit, result.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void put(Coin coin) {
+        if (coin.getId() == null) return;
+        Set<String> newTerms = termsOf(coin);
+        Set<String> oldTerms = termsById.get(coin.getId());
+        coins.put(coin.getId(), coin);
+        if (newTerms.equals(oldTerms)) return;
+
+        if (oldTerms != null) {
+            for (String term : oldTerms) {
+                removeId(terms, term, coin.getId());
+                for (String gram : trigramsOf(term)) removeId(trigrams, gram, coin.getId());
+            }
+        }
+        for (String term : newTerms) {
+            terms.computeIfAbsent(term, t -> new HashSet<>()).add(coin.getId());
+            for (String gram : trigramsOf(term)) {
+                trigrams.computeIfAbsent(gram, g -> new HashSet<>()).add(coin.getId());
+            }
+        }
+        termsById.put(coin.getId(), newTerms);
+    }
+
+    private static void removeId(Map<String, Set<String>> index, String key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids == null) return;
+        ids.remove(id);
+        if (ids.isEmpty()) index.remove(key);
+    }
+
+    private static Set<String> termsOf(Coin coin) {
+        Set<String> out = new HashSet<>();
+        addTerm(out, coin.getId());
+        addTerm(out, coin.getSymbol());
+        addTerm(out, coin.getName());
+        // single words of multi-word names, so "cash" finds "Bitcoin Cash"
+        if (coin.getName() != null) {
+            for (String word : coin.getName().split("[^\\p{Alnum}]+")) addTerm(out, word);
+        }
+        return out;
+    }
+
+    private static void addTerm(Set<String> out, String value) {
+        String term = normalize(value);
+        if (!term.isEmpty()) out.add(term);
+    }
+
+    private static Set<String> trigramsOf(String term) {
+        String padded = " " + term + " ";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,7 +1,9 @@
 package com.sahil.trading.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.sahil.trading.domain.MoverRanking;
 import com.sahil.trading.entity.Coin;
+import com.sahil.trading.response.CachedJsonResponse;
 
 import java.util.List;
 
@@ -16,5 +18,13 @@ public interface CoinService {
     String getTradingCoins() throws Exception;
     String getTopGainers() throws Exception;
     List<JsonNode> getTopLosers() throws Exception;
+    List<Coin> getMovers(MoverRanking ranking, boolean highest, int limit);
+
+    // pre-serialized variants, written to the client without re-parsing
+    // points > 0 downsamples the chart to at most that many points
+    CachedJsonResponse getMarketChartResponse(String coinId, int days, int points) throws Exception;
+    CachedJsonResponse getCoinDetailsResponse(String coinId) throws Exception;
+    CachedJsonResponse getTop50Response() throws Exception;
+    CachedJsonResponse getTradingCoinsResponse() throws Exception;
 
 }
@@ -1,19 +1,20 @@
 package com.sahil.trading.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.domain.MoverRanking;
+import com.sahil.trading.domain.UpstreamPriority;
 import com.sahil.trading.entity.Coin;
 import com.sahil.trading.repository.CoinRepository;
+import com.sahil.trading.response.CachedJsonResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.RestTemplate;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class CoinServiceImpl implements CoinService {
@@ -24,203 +25,159 @@ public class CoinServiceImpl implements CoinService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    private CoinGeckoClient coinGeckoClient;
 
-    // ================= CACHE =================
-    private static final long CACHE_TTL = 60_000; // 60 seconds
-    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    @Autowired
+    private MarketDataPoller marketDataPoller;
 
-    static class CacheEntry {
-        String data;
-        long time;
+    @Autowired
+    private MoversIndex moversIndex;
 
-        CacheEntry(String data) {
-            this.data = data;
-            this.time = System.currentTimeMillis();
-        }
+    @Value("${market.movers.size:10}")
+    private int moversSize;
 
-        boolean expired() {
-            return System.currentTimeMillis() - time > CACHE_TTL;
-        }
-    }
+    @Autowired
+    private CoinSearchIndex coinSearchIndex;
 
-    private String getCached(String key) {
-        CacheEntry e = cache.get(key);
-        return (e != null && !e.expired()) ? e.data : null;
-    }
+    @Autowired
+    private CoinWriteBehindBuffer coinWriteBehindBuffer;
 
-    private void putCache(String key, String data) {
-        cache.put(key, new CacheEntry(data));
-    }
+    @Autowired
+    private MarketChartStore marketChartStore;
+
+    @Value("${coin.search.limit:25}")
+    private int searchLimit;
+
+    // ================= CACHE =================
+    // stale-while-revalidate, see CoinCache
+    @Autowired
+    private CoinCache cache;
 
     // ================= API =================
 
     @Override
     public List<Coin> getCoinList(int page) throws Exception {
-
-        String cacheKey = "coinList_" + page;
-        String cached = getCached(cacheKey);
-        if (cached != null) {
-            return objectMapper.readValue(cached, new TypeReference<>() {});
-        }
-
-        String url =
-                "https://api.coingecko.com/api/v3/coins/markets?vs_currency=usd&per_page=10&page=" + page;
-
-        try {
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            putCache(cacheKey, response.getBody());
-
-            return objectMapper.readValue(response.getBody(), new TypeReference<>() {});
-        } catch (HttpClientErrorException.TooManyRequests e) {
-            return Collections.emptyList();
-        }
+        return marketDataPoller.getSnapshot().page(page, 10);
     }
 
     @Override
     public String getMarketChart(String coinId, int days) throws Exception {
+        return getMarketChartResponse(coinId, days, 0).asString();
+    }
 
-        String cacheKey = "chart_" + coinId + "_" + days;
-        String cached = getCached(cacheKey);
-        if (cached != null) return cached;
-
-        String url =
-                "https://api.coingecko.com/api/v3/coins/" + coinId +
-                        "/market_chart?vs_currency=usd&days=" + days;
-
+    @Override
+    public CachedJsonResponse getMarketChartResponse(String coinId, int days, int points) throws Exception {
         try {
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            putCache(cacheKey, response.getBody());
-            return response.getBody();
+            if (MarketChartStore.covers(days)) {
+                return marketChartStore.chart(coinId, days, points);
+            }
+            return cache.getOrLoad("chart_" + coinId + "_" + days,
+                    () -> coinGeckoClient.get("/coins/" + coinId + "/market_chart?vs_currency=usd&days=" + days,
+                            UpstreamPriority.CHART));
         } catch (HttpClientErrorException.TooManyRequests e) {
-            return cached != null ? cached : "{}";
+            return CachedJsonResponse.EMPTY_OBJECT;
         }
     }
 
     @Override
     public String getCoinDetails(String coinId) throws Exception {
+        return getCoinDetailsResponse(coinId).asString();
+    }
 
-        String cacheKey = "details_" + coinId;
-        String cached = getCached(cacheKey);
-        if (cached != null) return cached;
-
-        String url = "https://api.coingecko.com/api/v3/coins/" + coinId;
-
+    @Override
+    public CachedJsonResponse getCoinDetailsResponse(String coinId) throws Exception {
         try {
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            putCache(cacheKey, response.getBody());
+            return cache.getOrLoad("details_" + coinId, () -> fetchCoinDetails(coinId));
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            return CachedJsonResponse.EMPTY_OBJECT;
+        }
+    }
 
-            JsonNode node = objectMapper.readTree(response.getBody());
-            Coin coin = new Coin();
+    private String fetchCoinDetails(String coinId) throws Exception {
+        String body = coinGeckoClient.get("/coins/" + coinId, UpstreamPriority.MARKET);
 
-            coin.setId(node.path("id").asText());
-            coin.setName(node.path("name").asText());
-            coin.setSymbol(node.path("symbol").asText());
-            coin.setImage(node.path("image").path("large").asText());
+        JsonNode node = objectMapper.readTree(body);
+        Coin coin = new Coin();
 
-            JsonNode m = node.path("market_data");
-            coin.setCurrentPrice(m.path("current_price").path("usd").asDouble());
-            coin.setPriceChangePercentage24h(m.path("price_change_percentage_24h").asDouble());
+        coin.setId(node.path("id").asText());
+        coin.setName(node.path("name").asText());
+        coin.setSymbol(node.path("symbol").asText());
+        coin.setImage(node.path("image").path("large").asText());
 
-            coinRepository.save(coin);
-            return response.getBody();
+        JsonNode m = node.path("market_data");
+        coin.setCurrentPrice(m.path("current_price").path("usd").asDouble());
+        coin.setPriceChangePercentage24h(m.path("price_change_percentage_24h").asDouble());
 
-        } catch (HttpClientErrorException.TooManyRequests e) {
-            return cached != null ? cached : "{}";
+        // written in the next batch instead of a SELECT + UPDATE on this request
+        coinWriteBehindBuffer.enqueue(coin);
+        coinSearchIndex.indexIfAbsent(coin);
+
+        Coin tick = new Coin();
+        tick.setId(coin.getId());
+        tick.setCurrentPrice(coin.getCurrentPrice());
+        tick.setPriceChangePercentage24h(coin.getPriceChangePercentage24h());
+        if (m.path("total_volume").hasNonNull("usd")) tick.setTotalVolume(m.path("total_volume").path("usd").asLong());
+        if (m.hasNonNull("market_cap_change_percentage_24h")) {
+            tick.setMarketCapChangePercentage24h(m.path("market_cap_change_percentage_24h").asDouble());
         }
+        moversIndex.applyTick(tick);
+        return body;
     }
 
     @Override
     public String searchCoin(String keyword) throws Exception {
+        List<Coin> local = coinSearchIndex.search(keyword, searchLimit);
+        if (!local.isEmpty()) {
+            // same top-level shape as the CoinGecko search response
+            return objectMapper.writeValueAsString(Map.of("coins", local));
+        }
 
-        String cacheKey = "search_" + keyword;
-        String cached = getCached(cacheKey);
-        if (cached != null) return cached;
-
-        String url =
-                "https://api.coingecko.com/api/v3/search?query=" + keyword;
-
-        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-        putCache(cacheKey, response.getBody());
-        return response.getBody();
+        // unknown term, ask CoinGecko
+        String term = keyword.trim().toLowerCase(Locale.ROOT);
+        return cache.getOrLoad("search_" + term,
+                () -> coinGeckoClient.get("/search?query=" + URLEncoder.encode(term, StandardCharsets.UTF_8),
+                        UpstreamPriority.SEARCH)).asString();
     }
 
     @Override
     public String getTop50CoinsByMarketCapRank() throws Exception {
+        return getTop50Response().asString();
+    }
 
-        String cacheKey = "top50";
-        String cached = getCached(cacheKey);
-        if (cached != null) return cached;
-
-        String url =
-                "https://api.coingecko.com/api/v3/coins/markets?vs_currency=usd&per_page=50&page=1";
-
-        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-        putCache(cacheKey, response.getBody());
-        return response.getBody();
+    @Override
+    public CachedJsonResponse getTop50Response() throws Exception {
+        return marketDataPoller.getSnapshot().getTop50();
     }
 
     @Override
     public String getTradingCoins() throws Exception {
+        return getTradingCoinsResponse().asString();
+    }
 
-        String cacheKey = "trending";
-        String cached = getCached(cacheKey);
-        if (cached != null) return cached;
-
-        String url = "https://api.coingecko.com/api/v3/search/trending";
-        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-        putCache(cacheKey, response.getBody());
-        return response.getBody();
+    @Override
+    public CachedJsonResponse getTradingCoinsResponse() throws Exception {
+        return cache.getOrLoad("trending", () -> coinGeckoClient.get("/search/trending", UpstreamPriority.SEARCH));
     }
+
     @Override
     public String getTopGainers() throws Exception {
-        String url =
-                "https://api.coingecko.com/api/v3/coins/markets" +
-                        "?vs_currency=usd&order=market_cap_desc&per_page=50&page=1";
-
-        ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-        JsonNode node = objectMapper.readTree(response.getBody());
-
-        List<JsonNode> coins = new ArrayList<>();
-        node.forEach(coins::add);
-
-        coins.sort((a, b) ->
-                Double.compare(
-                        b.path("price_change_percentage_24h").asDouble(),
-                        a.path("price_change_percentage_24h").asDouble()
-                )
-        );
-
-        return objectMapper.writeValueAsString(coins.subList(0, 10));
+        return objectMapper.writeValueAsString(moversIndex.top(MoverRanking.PRICE_CHANGE_24H, moversSize));
     }
+
     @Override
     public List<JsonNode> getTopLosers() throws Exception {
-
-        String url =
-                "https://api.coingecko.com/api/v3/coins/markets" +
-                        "?vs_currency=usd&order=market_cap_desc&per_page=50&page=1";
-
-        ResponseEntity<String> response =
-                restTemplate.getForEntity(url, String.class);
-
-        JsonNode node = objectMapper.readTree(response.getBody());
-
-        List<JsonNode> coins = new ArrayList<>();
-
-        for (JsonNode c : node) {
-            if (c.hasNonNull("price_change_percentage_24h")) {
-                coins.add(c);
-            }
+        List<JsonNode> losers = new ArrayList<>();
+        for (Coin c : moversIndex.bottom(MoverRanking.PRICE_CHANGE_24H, moversSize)) {
+            losers.add(objectMapper.valueToTree(c));
         }
-
-        coins.sort(Comparator.comparingDouble(
-                c -> c.get("price_change_percentage_24h").asDouble()
-        ));
-
-        return coins.subList(0, Math.min(10, coins.size()));
+        return losers;
     }
 
-
+    @Override
+    public List<Coin> getMovers(MoverRanking ranking, boolean highest, int limit) {
+        return highest ? moversIndex.top(ranking, limit) : moversIndex.bottom(ranking, limit);
+    }
 
     @Override
     public Coin findById(String coinId) throws Exception {
@@ -0,0 +1,190 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.repository.CoinRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind buffer for coin rows.
+ *
+ * Updates are coalesced by coin id (the latest one wins) and written on a timer
+ * (coin.write-behind.flush-interval-ms) or once coin.write-behind.max-pending coins are
+ * waiting. A flush loads the existing rows with one SELECT ... IN, copies the non-null
+ * fields across and lets Hibernate send the updates as JDBC batches, ordered by id.
+ *
+ * When a batch fails its coins are written one per transaction, so one bad row (say a
+ * name longer than the column) cannot hold back the rest. A coin whose own write fails
+ * is queued again, and dropped after coin.write-behind.max-attempts failures in a row.
+ */
+@Component
+public class CoinWriteBehindBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(CoinWriteBehindBuffer.class);
+
+    @Autowired
+    private CoinRepository coinRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${coin.write-behind.max-pending:200}")
+    private int maxPending;
+
+    @Value("${coin.write-behind.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    private final Map<String, Coin> pending = new ConcurrentHashMap<>();
+    // coin id -> failed single-row writes in a row
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "coin-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public void enqueue(Coin coin) {
+        if (coin.getId() == null) return;
+        pending.put(coin.getId(), coin);
+        flushIfFull();
+    }
+
+    public void enqueueAll(Collection<Coin> coins) {
+        for (Coin c : coins) {
+            if (c.getId() != null) pending.put(c.getId(), c);
+        }
+        flushIfFull();
+    }
+
+    // the whole markets snapshot is upserted in one flush
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        enqueueAll(event.getSnapshot().getCoins());
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void flushIfFull() {
+        if (pending.size() >= maxPending && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${coin.write-behind.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        List<String> ids = new ArrayList<>(pending.keySet());
+        ids.sort(null);
+        Map<String, Coin> batch = new HashMap<>();
+        for (String id : ids) {
+            Coin c = pending.remove(id);
+            if (c != null) batch.put(id, c);
+        }
+        if (batch.isEmpty()) return;
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        try {
+            tx.executeWithoutResult(status -> write(batch));
+            if (!failures.isEmpty()) failures.keySet().removeAll(batch.keySet());
+            log.debug("[CoinWriteBehindBuffer] flushed {} coins", batch.size());
+        } catch (Exception e) {
+            log.warn("[CoinWriteBehindBuffer] flush of {} coins failed, writing them one by one: {}",
+                    batch.size(), e.getMessage());
+            writeEach(tx, batch);
+        }
+    }
+
+    private void writeEach(TransactionTemplate tx, Map<String, Coin> batch) {
+        List<String> ids = new ArrayList<>(batch.keySet());
+        ids.sort(null);
+        for (String id : ids) {
+            Coin coin = batch.get(id);
+            try {
+                tx.executeWithoutResult(status -> write(Map.of(id, coin)));
+                failures.remove(id);
+            } catch (Exception e) {
+                int attempts = failures.merge(id, 1, Integer::sum);
+                if (attempts >= maxAttempts) {
+                    failures.remove(id);
+                    log.error("[CoinWriteBehindBuffer] dropping coin {} after {} failed writes: {}", id, attempts, e.getMessage());
+                } else {
+                    // put it back unless a newer update arrived meanwhile
+                    pending.putIfAbsent(id, coin);
+                }
+            }
+        }
+    }
+
+    private void write(Map<String, Coin> batch) {
+        Map<String, Coin> existing = new HashMap<>();
+        for (Coin c : coinRepository.findAllById(batch.keySet())) existing.put(c.getId(), c);
+
+        List<String> ids = new ArrayList<>(batch.keySet());
+        ids.sort(null);
+        for (String id : ids) {
+            Coin update = batch.get(id);
+            Coin row = existing.get(id);
+            if (row != null) {
+                // managed entity, dirty checking turns this into a batched UPDATE
+                BeanUtils.copyProperties(update, row, nullProperties(update));
+            } else {
+                // queued coins may be shared snapshot objects, persist a copy
+                Coin copy = new Coin();
+                BeanUtils.copyProperties(update, copy);
+                entityManager.persist(copy);
+            }
+        }
+    }
+
+    // details fetches only fill the price fields, keep what the row already has
+    private static String[] nullProperties(Coin coin) {
+        BeanWrapper wrapper = new BeanWrapperImpl(coin);
+        List<String> names = new ArrayList<>();
+        for (PropertyDescriptor pd : wrapper.getPropertyDescriptors()) {
+            if (pd.getReadMethod() != null && wrapper.getPropertyValue(pd.getName()) == null) {
+                names.add(pd.getName());
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flush();
+    }
+}
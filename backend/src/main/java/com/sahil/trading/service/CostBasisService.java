@@ -0,0 +1,28 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.response.RealizedPnlSummary;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CostBasisService {
+
+    /**
+     * Opens a lot; call in the transaction that fills the buy. heldBefore is the asset
+     * as it was before the fill (null if none): on the user's first trade of the coin
+     * it becomes the oldest lot.
+     */
+    void recordBuy(Long userId, String coinId, Long orderId, double quantity, double price, Asset heldBefore);
+
+    /**
+     * Uses up lots for a filled sell and returns the realized gain. quantity is what
+     * was sold, removed what left the holding (more when a dust remainder went with it).
+     * Held quantity that no lot covers is the oldest and costs heldBefore's buy price.
+     */
+    double recordSell(Long userId, String coinId, Long orderId, double quantity, double price, double removed,
+                      Asset heldBefore);
+
+    // realized P&L per coin for sells on days from..to (UTC), inclusive
+    List<RealizedPnlSummary> realized(Long userId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,178 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.CostBasisMethod;
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.CostBasisLot;
+import com.sahil.trading.entity.CostBasisPosition;
+import com.sahil.trading.entity.RealizedPnl;
+import com.sahil.trading.repository.CostBasisLotRepository;
+import com.sahil.trading.repository.CostBasisPositionRepository;
+import com.sahil.trading.repository.RealizedPnlRepository;
+import com.sahil.trading.response.RealizedPnlSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost basis by lot. Every buy opens a lot; every sell uses up open lots oldest first
+ * and adds its gain to the day's RealizedPnl row, so nothing ever rescans orders.
+ *
+ * - FIFO: the sale costs what the used-up lots cost
+ * - AVERAGE: the sale costs quantity x the position's average price (one row read);
+ *   lots are still used up oldest first so their remaining quantities stay true
+ *
+ * A sell touches only the lots it uses up (read a page at a time from the open end of
+ * the index) plus one position and one daily row, however many fills came before.
+ * Callers run inside the order's transaction, so a failed order leaves no trace.
+ *
+ * Coins held from before lots were tracked become an opening lot (the holding's
+ * quantity at its average buy price) on the user's first buy or sell of the coin, so
+ * FIFO uses them first.
+ */
+@Service
+public class CostBasisServiceImpl implements CostBasisService {
+
+    private static final Logger log = LoggerFactory.getLogger(CostBasisServiceImpl.class);
+
+    // quantities are doubles; anything below this is rounding left over
+    private static final double DUST = 1e-9;
+
+    @Autowired
+    private CostBasisLotRepository lotRepository;
+
+    @Autowired
+    private CostBasisPositionRepository positionRepository;
+
+    @Autowired
+    private RealizedPnlRepository realizedPnlRepository;
+
+    @Value("${portfolio.cost-basis.method:FIFO}")
+    private CostBasisMethod method = CostBasisMethod.FIFO;
+
+    @Value("${portfolio.cost-basis.lot-page-size:200}")
+    private int lotPageSize = 200;
+
+    @Override
+    public void recordBuy(Long userId, String coinId, Long orderId, double quantity, double price, Asset heldBefore) {
+        // before the new lot, so a seeded opening lot comes first
+        CostBasisPosition position = position(userId, coinId, heldBefore);
+        openLot(userId, coinId, orderId, quantity, price);
+
+        position.setQuantity(position.getQuantity() + quantity);
+        position.setCost(position.getCost() + quantity * price);
+        positionRepository.save(position);
+    }
+
+    @Override
+    public double recordSell(Long userId, String coinId, Long orderId, double quantity, double price, double removed,
+                             Asset heldBefore) {
+        CostBasisPosition position = position(userId, coinId, heldBefore);
+        double heldPrice = heldBefore == null ? 0 : heldBefore.getBuyPrice();
+        double average = position.getQuantity() > DUST ? position.getCost() / position.getQuantity() : heldPrice;
+
+        // held but in no lot: only when the position predates opening lots. It is the
+        // oldest quantity, so it goes first
+        double untracked = heldBefore == null ? 0 : Math.max(0, heldBefore.getQuantity() - position.getQuantity());
+        double fromUntracked = Math.min(untracked, removed);
+
+        // then open lots, oldest first
+        double left = removed - fromUntracked;
+        double lotCost = 0;
+        long after = 0;
+        // most sells need one or two lots: start with a small page, double as needed
+        int pageSize = 4;
+        while (left > DUST) {
+            List<CostBasisLot> page = lotRepository.findByUserIdAndCoinIdAndClosedFalseAndIdGreaterThanOrderByIdAsc(
+                    userId, coinId, after, Limit.of(pageSize));
+            if (page.isEmpty()) break;
+            pageSize = Math.min(pageSize * 2, Math.max(4, lotPageSize));
+
+            List<CostBasisLot> used = new ArrayList<>();
+            for (CostBasisLot lot : page) {
+                double take = Math.min(lot.getRemaining(), left);
+                lotCost += take * lot.getPrice();
+                left -= take;
+                lot.setRemaining(lot.getRemaining() - take);
+                if (lot.getRemaining() <= DUST) {
+                    lot.setRemaining(0);
+                    lot.setClosed(true);
+                }
+                used.add(lot);
+                after = lot.getId();
+                if (left <= DUST) break;
+            }
+            lotRepository.saveAll(used);
+        }
+
+        double covered = removed - fromUntracked - Math.max(0, left);
+        double uncovered = removed - covered;
+        if (uncovered > DUST) {
+            log.debug("[CostBasis] user {} sold {} {} not covered by lots, at its buy price", userId, uncovered, coinId);
+        }
+        double coveredCost = method == CostBasisMethod.FIFO ? lotCost : covered * average;
+        double cost = coveredCost + uncovered * heldPrice;
+        double proceeds = quantity * price;
+        double realized = proceeds - cost;
+
+        position.setQuantity(Math.max(0, position.getQuantity() - covered));
+        position.setCost(position.getQuantity() <= DUST ? 0 : Math.max(0, position.getCost() - coveredCost));
+        positionRepository.save(position);
+
+        LocalDate day = LocalDate.now(ZoneOffset.UTC);
+        RealizedPnl row = realizedPnlRepository.findByUserIdAndDayAndCoinId(userId, day, coinId).orElseGet(() -> {
+            RealizedPnl r = new RealizedPnl();
+            r.setUserId(userId);
+            r.setDay(day);
+            r.setCoinId(coinId);
+            return r;
+        });
+        row.setQuantity(row.getQuantity() + quantity);
+        row.setProceeds(row.getProceeds() + proceeds);
+        row.setCost(row.getCost() + cost);
+        row.setRealized(row.getRealized() + realized);
+        row.setSells(row.getSells() + 1);
+        realizedPnlRepository.save(row);
+
+        log.info("[CostBasis] order {} realized {} on {} {} ({})", orderId, realized, quantity, coinId, method);
+        return realized;
+    }
+
+    @Override
+    public List<RealizedPnlSummary> realized(Long userId, LocalDate from, LocalDate to) {
+        return realizedPnlRepository.summarize(userId, from, to);
+    }
+
+    // a new position starts from what the user already held, as an opening lot
+    private CostBasisPosition position(Long userId, String coinId, Asset heldBefore) {
+        return positionRepository.findByUserIdAndCoinId(userId, coinId).orElseGet(() -> {
+            CostBasisPosition p = new CostBasisPosition();
+            p.setUserId(userId);
+            p.setCoinId(coinId);
+            if (heldBefore != null && heldBefore.getQuantity() > DUST) {
+                openLot(userId, coinId, null, heldBefore.getQuantity(), heldBefore.getBuyPrice());
+                p.setQuantity(heldBefore.getQuantity());
+                p.setCost(heldBefore.getQuantity() * heldBefore.getBuyPrice());
+            }
+            return p;
+        });
+    }
+
+    private void openLot(Long userId, String coinId, Long orderId, double quantity, double price) {
+        CostBasisLot lot = new CostBasisLot();
+        lot.setUserId(userId);
+        lot.setCoinId(coinId);
+        lot.setOrderId(orderId);
+        lot.setQuantity(quantity);
+        lot.setRemaining(quantity);
+        lot.setPrice(price);
+        lotRepository.save(lot);
+    }
+}
@@ -0,0 +1,21 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.ExportFormat;
+
+import java.io.OutputStream;
+import java.time.Instant;
+
+public interface ExportService {
+
+    // thrown before anything is written when export.max-concurrent exports are already running
+    class TooManyExports extends Exception {
+        public TooManyExports(String message) {
+            super(message);
+        }
+    }
+
+    // userId null exports every user; rows with from <= createdAt < to, oldest first
+    long exportWalletTransactions(Long userId, Instant from, Instant to, ExportFormat format, OutputStream out) throws Exception;
+
+    long exportOrders(Long userId, Instant from, Instant to, ExportFormat format, OutputStream out) throws Exception;
+}
@@ -0,0 +1,167 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.domain.ExportFormat;
+import com.sahil.trading.repository.OrderRepository;
+import com.sahil.trading.repository.WalletTransactionRepository;
+import com.sahil.trading.response.OrderExportRow;
+import com.sahil.trading.response.WalletTransactionExportRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes exports row by row straight from a streamed query to the response: rows are
+ * DTO projections (nothing enters the persistence context) and each is written and
+ * dropped before the next is read, so memory stays flat whatever the row count.
+ *
+ * The whole export runs in one read-only transaction, which keeps the database
+ * connection for as long as the client takes to download. At most
+ * export.max-concurrent exports run at once so slow downloads cannot take the whole
+ * connection pool from the rest of the API; the next one is refused, not queued.
+ */
+@Service
+public class ExportServiceImpl implements ExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportServiceImpl.class);
+
+    private static final String[] TRANSACTION_COLUMNS = {
+            "id", "walletId", "counterpartyWalletId", "amount", "type", "status", "reference", "notes", "createdAt"};
+
+    private static final String[] ORDER_COLUMNS = {
+            "id", "userId", "orderType", "execution", "status", "price", "triggerPrice", "coinId", "quantity", "timestamp"};
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WalletTransactionRepository walletTransactionRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // rows between flushes, so the client sees progress and the buffer stays small
+    @Value("${export.flush-every-rows:1000}")
+    private int flushEvery = 1000;
+
+    private final Semaphore running;
+
+    public ExportServiceImpl(@Value("${export.max-concurrent:4}") int maxConcurrent) {
+        this.running = new Semaphore(maxConcurrent);
+    }
+
+    @Override
+    public long exportWalletTransactions(Long userId, Instant from, Instant to, ExportFormat format, OutputStream out) throws Exception {
+        return export("wallet transactions", format, out, TRANSACTION_COLUMNS,
+                () -> userId == null
+                        ? walletTransactionRepository.streamBetween(from, to)
+                        : walletTransactionRepository.streamForUser(userId, from, to),
+                r -> new Object[]{r.getId(), r.getWalletId(), r.getCounterpartyWalletId(), r.getAmount(), r.getType(),
+                        r.getStatus(), r.getReference(), r.getNotes(), r.getCreatedAt()});
+    }
+
+    @Override
+    public long exportOrders(Long userId, Instant from, Instant to, ExportFormat format, OutputStream out) throws Exception {
+        // Order.timestamp is a LocalDateTime in the server's zone
+        LocalDateTime start = LocalDateTime.ofInstant(from, ZoneId.systemDefault());
+        LocalDateTime end = LocalDateTime.ofInstant(to, ZoneId.systemDefault());
+        return export("orders", format, out, ORDER_COLUMNS,
+                () -> userId == null
+                        ? orderRepository.streamBetween(start, end)
+                        : orderRepository.streamForUser(userId, start, end),
+                r -> new Object[]{r.getId(), r.getUserId(), r.getOrderType(), r.getExecution(), r.getStatus(),
+                        r.getPrice(), r.getTriggerPrice(), r.getCoinId(), r.getQuantity(), r.getTimestamp()});
+    }
+
+    interface Rows<T> {
+        Stream<T> open();
+    }
+
+    private <T> long export(String what, ExportFormat format, OutputStream out, String[] columns,
+                            Rows<T> rows, Function<T, Object[]> values) throws Exception {
+        if (!running.tryAcquire()) {
+            throw new TooManyExports("Too many exports running, try again shortly");
+        }
+        try {
+            return exportHolding(what, format, out, columns, rows, values);
+        } finally {
+            running.release();
+        }
+    }
+
+    private <T> long exportHolding(String what, ExportFormat format, OutputStream out, String[] columns,
+                                   Rows<T> rows, Function<T, Object[]> values) throws Exception {
+        long started = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(csvLine(columns));
+        }
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        Long count;
+        try {
+            count = tx.execute(status -> {
+                long n = 0;
+                try (Stream<T> stream = rows.open()) {
+                    Iterator<T> it = stream.iterator();
+                    while (it.hasNext()) {
+                        T row = it.next();
+                        writer.write(format == ExportFormat.CSV ? csvLine(values.apply(row)) : objectMapper.writeValueAsString(row) + "\n");
+                        if (++n % flushEvery == 0) writer.flush();
+                    }
+                } catch (IOException e) {
+                    // usually the client went away; stop reading rows
+                    throw new UncheckedIOException(e);
+                }
+                return n;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("[ExportService] exported {} {} as {} in {} ms", count, what, format,
+                (System.nanoTime() - started) / 1_000_000);
+        return count;
+    }
+
+    // RFC 4180: quote fields containing a separator, quote or line break; double the quotes
+    static String csvLine(Object[] fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) line.append(',');
+            Object field = fields[i];
+            if (field == null) continue;
+            String value = field instanceof BigDecimal d ? d.toPlainString() : field.toString();
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        return line.append("\r\n").toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Coin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Offline source: reads a saved /coins/markets response from disk on every poll,
+ * so the file can be edited while the app runs to simulate price moves.
+ */
+@Component
+@ConditionalOnProperty(name = "market.source", havingValue = "file")
+public class FileMarketDataSource implements MarketDataSource {
+
+    @Value("${market.source.file:markets.json}")
+    private String file;
+
+    @Override
+    public List<Coin> fetchMarkets() throws Exception {
+        try (InputStream in = Files.newInputStream(Path.of(file))) {
+            return CoinMarketsReader.read(in);
+        }
+    }
+}
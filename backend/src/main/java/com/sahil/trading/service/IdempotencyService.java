@@ -0,0 +1,17 @@
+package com.sahil.trading.service;
+
+import org.springframework.http.ResponseEntity;
+
+public interface IdempotencyService {
+
+    interface Action {
+        ResponseEntity<?> run() throws Exception;
+    }
+
+    /**
+     * Run action once per (user, scope, key) and replay its response on retries.
+     * Without a key the action just runs. A key reused with a different request
+     * answers 422, and a retry while the first request is still running answers 409.
+     */
+    ResponseEntity<?> execute(Long userId, String scope, String key, Object request, Action action) throws Exception;
+}
@@ -0,0 +1,224 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.entity.IdempotencyRecord;
+import com.sahil.trading.repository.IdempotencyRecordRepository;
+import com.sahil.trading.utils.BoundedCache;
+import com.sahil.trading.utils.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Idempotency-Key support for endpoints that move money.
+ *
+ * The first request with a key inserts a pending record (status 0) before it runs,
+ * so a retry reaching another instance sees it; once the action returns 2xx the
+ * record keeps the status and JSON body and every retry replays them. Failed
+ * attempts delete their record, so the client can retry them for real.
+ *
+ * Completed records are also kept in a bounded in-memory cache, so most replays
+ * never reach the database, and concurrent retries of the same request on one
+ * instance are coalesced (the ones that waited get the response as a replay).
+ * Records are purged after idempotency.ttl-ms.
+ */
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyServiceImpl.class);
+
+    private static final int PENDING = 0;
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.ttl-ms:86400000}")
+    private long ttlMs = 86_400_000;
+
+    // a pending record older than this belongs to a request that died; it may be retried
+    @Value("${idempotency.pending-timeout-ms:300000}")
+    private long pendingTimeoutMs = 300_000;
+
+    private final BoundedCache<String, IdempotencyRecord> cache;
+    private final SingleFlight<String, ResponseEntity<?>> inFlight = new SingleFlight<>();
+
+    private volatile Counter cacheReplays;
+    private volatile Counter dbReplays;
+
+    public IdempotencyServiceImpl(@Value("${idempotency.cache.max-bytes:16777216}") long maxBytes) {
+        this.cache = new BoundedCache<>(maxBytes,
+                (key, record) -> key.length() + (record.getResponseBody() == null ? 0 : record.getResponseBody().length()));
+    }
+
+    @Override
+    public ResponseEntity<?> execute(Long userId, String scope, String key, Object request, Action action) throws Exception {
+        if (key == null) {
+            return action.run();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        String hash = hash(scope, request);
+        String cacheKey = userId + ":" + scope + ":" + key;
+
+        IdempotencyRecord cached = cache.get(cacheKey);
+        if (cached != null) {
+            if (cacheReplays != null) cacheReplays.increment();
+            return replay(cached, hash);
+        }
+        // keyed by the request too: the same key with another body must not share the result
+        boolean[] led = new boolean[1];
+        ResponseEntity<?> response = inFlight.execute(cacheKey + ":" + hash, () -> {
+            led[0] = true;
+            IdempotencyRecord record = reserve(userId, scope, key, hash);
+            if (record.getId() != null && record.getStatusCode() == PENDING) {
+                return runAndStore(cacheKey, record, action);
+            }
+            return replayStored(cacheKey, record, hash);
+        });
+        if (led[0] || !response.getStatusCode().is2xxSuccessful()) return response;
+        // waited for an identical request: to this caller it is a replay
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header("Idempotent-Replayed", "true")
+                .body(response.getBody());
+    }
+
+    /**
+     * The stored record for the key, or a new pending one that this request now owns.
+     * A record without id means someone else's request is still running.
+     */
+    private IdempotencyRecord reserve(Long userId, String scope, String key, String hash) {
+        IdempotencyRecord existing = idempotencyRecordRepository
+                .findByUserIdAndScopeAndIdempotencyKey(userId, scope, key).orElse(null);
+        if (existing != null) {
+            if (existing.getStatusCode() != PENDING) return existing;
+            Instant now = Instant.now();
+            Instant cutoff = now.minusMillis(pendingTimeoutMs);
+            if (existing.getCreatedAt().isAfter(cutoff)) return inProgress(existing);
+            // abandoned: take it over, unless another instance just did
+            if (idempotencyRecordRepository.takeOver(existing.getId(), hash, now, cutoff) == 0) {
+                return idempotencyRecordRepository.findByUserIdAndScopeAndIdempotencyKey(userId, scope, key)
+                        .map(r -> r.getStatusCode() == PENDING ? inProgress(r) : r)
+                        .orElseGet(() -> inProgress(existing));
+            }
+            existing.setRequestHash(hash);
+            existing.setCreatedAt(now);
+            return existing;
+        }
+
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setUserId(userId);
+        record.setScope(scope);
+        record.setIdempotencyKey(key);
+        record.setRequestHash(hash);
+        record.setStatusCode(PENDING);
+        try {
+            return idempotencyRecordRepository.saveAndFlush(record);
+        } catch (DataIntegrityViolationException e) {
+            // another instance inserted it first
+            return idempotencyRecordRepository.findByUserIdAndScopeAndIdempotencyKey(userId, scope, key)
+                    .map(r -> r.getStatusCode() == PENDING ? inProgress(r) : r)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    private static IdempotencyRecord inProgress(IdempotencyRecord record) {
+        IdempotencyRecord copy = new IdempotencyRecord();
+        copy.setRequestHash(record.getRequestHash());
+        copy.setStatusCode(PENDING);
+        return copy;
+    }
+
+    private ResponseEntity<?> runAndStore(String cacheKey, IdempotencyRecord record, Action action) throws Exception {
+        ResponseEntity<?> response;
+        try {
+            response = action.run();
+        } catch (Exception e) {
+            idempotencyRecordRepository.delete(record);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            idempotencyRecordRepository.delete(record);
+            return response;
+        }
+        try {
+            record.setStatusCode(response.getStatusCode().value());
+            record.setResponseBody(response.getBody() == null ? null : objectMapper.writeValueAsString(response.getBody()));
+            idempotencyRecordRepository.save(record);
+            cache.put(cacheKey, record, ttlMs);
+        } catch (Exception e) {
+            // the action went through; a retry will see the pending record and get 409
+            log.error("[IdempotencyService] could not store response for {}", cacheKey, e);
+        }
+        return response;
+    }
+
+    private ResponseEntity<?> replayStored(String cacheKey, IdempotencyRecord record, String hash) {
+        if (record.getStatusCode() == PENDING) {
+            // another request holds the key
+            return record.getRequestHash().equals(hash)
+                    ? ResponseEntity.status(HttpStatus.CONFLICT).build()
+                    : ResponseEntity.unprocessableEntity().build();
+        }
+        cache.put(cacheKey, record, ttlMs);
+        if (dbReplays != null) dbReplays.increment();
+        return replay(record, hash);
+    }
+
+    private static ResponseEntity<?> replay(IdempotencyRecord record, String hash) {
+        if (!record.getRequestHash().equals(hash)) {
+            return ResponseEntity.unprocessableEntity().build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(record.getStatusCode())
+                .header("Idempotent-Replayed", "true");
+        if (record.getResponseBody() == null) return builder.build();
+        return builder.contentType(MediaType.APPLICATION_JSON).body(record.getResponseBody());
+    }
+
+    private String hash(String scope, Object request) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(scope.getBytes(StandardCharsets.UTF_8));
+        digest.update(objectMapper.writeValueAsBytes(request));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        cache.evictExpired();
+        try {
+            long removed = idempotencyRecordRepository.deleteByCreatedAtBefore(Instant.now().minus(Duration.ofMillis(ttlMs)));
+            if (removed > 0) log.info("[IdempotencyService] purged {} expired records", removed);
+        } catch (Exception e) {
+            log.warn("[IdempotencyService] purge failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("idempotency.cache.size", cache, BoundedCache::size).register(registry);
+        cacheReplays = Counter.builder("idempotency.replays").tag("source", "cache").register(registry);
+        dbReplays = Counter.builder("idempotency.replays").tag("source", "db").register(registry);
+    }
+}
@@ -0,0 +1,35 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.LedgerAccount;
+import com.sahil.trading.domain.WalletTransactionType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public interface LedgerService {
+
+    /**
+     * One side of a movement; a positive amount increases the account's balance.
+     */
+    record Posting(LedgerAccount account, Long walletId, BigDecimal amount) {
+
+        public static Posting wallet(Long walletId, BigDecimal amount) {
+            return new Posting(LedgerAccount.WALLET, walletId, amount);
+        }
+
+        public static Posting of(LedgerAccount account, BigDecimal amount) {
+            return new Posting(account, null, amount);
+        }
+    }
+
+    /**
+     * Append a journal. Throws when the postings do not sum to zero.
+     * Returns the journal id.
+     */
+    String post(WalletTransactionType type, String reference, Posting... postings);
+
+    // ledger balance of a wallet as of the given instant
+    BigDecimal balanceAt(Long walletId, Instant at);
+
+    BigDecimal balance(Long walletId);
+}
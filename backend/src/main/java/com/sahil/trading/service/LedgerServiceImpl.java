@@ -0,0 +1,181 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.LedgerAccount;
+import com.sahil.trading.domain.WalletTransactionType;
+import com.sahil.trading.entity.BalanceSnapshot;
+import com.sahil.trading.entity.LedgerEntry;
+import com.sahil.trading.entity.Wallet;
+import com.sahil.trading.repository.BalanceSnapshotRepository;
+import com.sahil.trading.repository.LedgerEntryRepository;
+import com.sahil.trading.repository.WalletRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Append-only double-entry ledger.
+ *
+ * Every money movement is one journal: postings against WALLET, CASH or TRADING
+ * accounts that sum to zero, e.g. a deposit is +amount on the wallet and -amount on
+ * CASH. Amounts are exact decimals. Postings join the caller's transaction, so they
+ * commit or roll back with the balance change they describe.
+ *
+ * Every ledger.snapshot.interval-ms the balance of each wallet with new postings is
+ * written to a BalanceSnapshot, and balanceAt adds only the postings after the last
+ * snapshot before that time. Snapshots stop ledger.snapshot.lag-ms short of now, so
+ * postings of transactions still running when the snapshot is taken are not skipped.
+ *
+ * Wallets older than the ledger hold money no journal explains. On startup every
+ * wallet without one gets an OPENING journal for Wallet.balance minus its postings so
+ * far (zero for wallets opened since), so the two reconcile from then on.
+ */
+@Service
+public class LedgerServiceImpl implements LedgerService {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerServiceImpl.class);
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ledger.snapshot.lag-ms:60000}")
+    private long snapshotLagMs = 60_000;
+
+    @Value("${ledger.opening.batch-size:500}")
+    private int openingBatchSize = 500;
+
+    @Override
+    public String post(WalletTransactionType type, String reference, Posting... postings) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Posting p : postings) {
+            // an opening journal is posted even with nothing to carry over, to mark the wallet done
+            if (p.amount() == null || (p.amount().signum() == 0 && type != WalletTransactionType.OPENING)) {
+                throw new IllegalArgumentException("posting amount must be non-zero");
+            }
+            if ((p.account() == LedgerAccount.WALLET) != (p.walletId() != null)) {
+                throw new IllegalArgumentException("wallet postings, and only they, need a walletId");
+            }
+            sum = sum.add(p.amount());
+        }
+        if (postings.length < 2 || sum.signum() != 0) {
+            throw new IllegalArgumentException("unbalanced journal for " + type + ": postings sum to " + sum);
+        }
+
+        String journalId = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        List<LedgerEntry> entries = new ArrayList<>(postings.length);
+        for (Posting p : postings) {
+            LedgerEntry e = new LedgerEntry();
+            e.setJournalId(journalId);
+            e.setAccount(p.account());
+            e.setWalletId(p.walletId());
+            e.setAmount(p.amount());
+            e.setType(type);
+            e.setReference(reference);
+            e.setCreatedAt(now);
+            entries.add(e);
+        }
+        ledgerEntryRepository.saveAll(entries);
+        return journalId;
+    }
+
+    @Override
+    public BigDecimal balanceAt(Long walletId, Instant at) {
+        BalanceSnapshot snapshot = balanceSnapshotRepository
+                .findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(walletId, at).orElse(null);
+        BigDecimal base = snapshot == null ? BigDecimal.ZERO : snapshot.getBalance();
+        long after = snapshot == null ? 0 : snapshot.getLastEntryId();
+        return base.add(ledgerEntryRepository.sumForWallet(walletId, after, at));
+    }
+
+    @Override
+    public BigDecimal balance(Long walletId) {
+        return balanceAt(walletId, Instant.now());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void openWallets() {
+        try {
+            int opened = 0;
+            long after = 0;
+            while (true) {
+                List<Long> ids = walletRepository.findIdsWithoutEntryAfter(after, WalletTransactionType.OPENING,
+                        Limit.of(openingBatchSize));
+                if (ids.isEmpty()) break;
+                for (Long walletId : ids) {
+                    if (open(walletId)) opened++;
+                }
+                after = ids.get(ids.size() - 1);
+            }
+            if (opened > 0) log.info("[LedgerService] posted opening balances for {} wallets", opened);
+        } catch (Exception e) {
+            log.warn("[LedgerService] opening balances failed: {}", e.getMessage());
+        }
+    }
+
+    // one transaction per wallet; the row lock keeps balance changes out until it commits
+    private boolean open(Long walletId) {
+        Boolean opened = new TransactionTemplate(transactionManager).execute(status -> {
+            Wallet wallet = walletRepository.lockById(walletId).orElse(null);
+            if (wallet == null || ledgerEntryRepository.existsByWalletIdAndType(walletId, WalletTransactionType.OPENING)) {
+                return false;
+            }
+            BigDecimal balance = wallet.getBalance() == null ? BigDecimal.ZERO : wallet.getBalance();
+            BigDecimal opening = balance.subtract(ledgerEntryRepository.sumForWalletBetween(walletId, 0L, Long.MAX_VALUE));
+            post(WalletTransactionType.OPENING, null,
+                    Posting.wallet(walletId, opening),
+                    Posting.of(LedgerAccount.OPENING, opening.negate()));
+            return true;
+        });
+        return Boolean.TRUE.equals(opened);
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.snapshot.interval-ms:3600000}")
+    public void takeSnapshots() {
+        try {
+            Instant cutoff = Instant.now().minusMillis(snapshotLagMs);
+            long from = balanceSnapshotRepository.lastSnapshotEntryId();
+            long upTo = ledgerEntryRepository.lastIdBefore(cutoff);
+            if (upTo <= from) return;
+
+            List<Long> wallets = ledgerEntryRepository.walletsWithEntriesBetween(from, upTo);
+            for (Long walletId : wallets) {
+                BalanceSnapshot previous = balanceSnapshotRepository.findFirstByWalletIdOrderByLastEntryIdDesc(walletId).orElse(null);
+                BigDecimal base = previous == null ? BigDecimal.ZERO : previous.getBalance();
+                long after = previous == null ? 0 : previous.getLastEntryId();
+
+                BalanceSnapshot snapshot = new BalanceSnapshot();
+                snapshot.setWalletId(walletId);
+                snapshot.setBalance(base.add(ledgerEntryRepository.sumForWalletBetween(walletId, after, upTo)));
+                snapshot.setLastEntryId(upTo);
+                snapshot.setTakenAt(cutoff);
+                balanceSnapshotRepository.save(snapshot);
+            }
+            log.info("[LedgerService] snapshotted {} wallets up to entry {}", wallets.size(), upTo);
+        } catch (Exception e) {
+            log.warn("[LedgerService] snapshot failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sahil.trading.domain.UpstreamPriority;
+import com.sahil.trading.response.CachedJsonResponse;
+import com.sahil.trading.utils.BoundedCache;
+import com.sahil.trading.utils.SingleFlight;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Columnar in-memory store for market charts.
+ *
+ * CoinGecko's chart granularity depends only on the range asked for (5 minutes up to
+ * 1 day, hourly up to 90 days, daily beyond), so each coin is fetched at most once per
+ * resolution tier and kept as primitive arrays. Any "days" window is then served by
+ * slicing the tier that covers it, optionally downsampled to a point count with LTTB.
+ * The rendered JSON of each (coin, days, points) is kept until its series is reloaded.
+ * Windows longer than the largest tier are fetched and cached as is by CoinServiceImpl.
+ */
+@Component
+public class MarketChartStore implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketChartStore.class);
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    enum Tier {
+        INTRADAY(1),
+        HOURLY(90),
+        DAILY(365);
+
+        final int days;
+
+        Tier(int days) {
+            this.days = days;
+        }
+
+        static Tier covering(int days) {
+            for (Tier t : values()) {
+                if (days <= t.days) return t;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One chart as parallel arrays sorted by timestamp. Missing values are NaN.
+     */
+    static final class Series {
+        final long[] timestamps;
+        final double[] prices;
+        final double[] marketCaps;
+        final double[] volumes;
+
+        Series(long[] timestamps, double[] prices, double[] marketCaps, double[] volumes) {
+            this.timestamps = timestamps;
+            this.prices = prices;
+            this.marketCaps = marketCaps;
+            this.volumes = volumes;
+        }
+
+        int size() {
+            return timestamps.length;
+        }
+
+        long bytes() {
+            return 64 + 32L * timestamps.length;
+        }
+    }
+
+    // a rendered window and the series it was cut from; stale once the series is replaced
+    private record Rendered(Series from, CachedJsonResponse response) {
+    }
+
+    @Autowired
+    private CoinGeckoClient coinGeckoClient;
+
+    @Value("${coin.chart.ttl.intraday-ms:300000}")
+    private long intradayTtl = 300_000;
+
+    @Value("${coin.chart.ttl.hourly-ms:1800000}")
+    private long hourlyTtl = 1_800_000;
+
+    @Value("${coin.chart.ttl.daily-ms:21600000}")
+    private long dailyTtl = 21_600_000;
+
+    // how long an expired series may still be served when CoinGecko fails
+    @Value("${coin.chart.stale-if-error-ms:86400000}")
+    private long staleIfErrorMs = 86_400_000;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final BoundedCache<String, Series> series;
+    private final BoundedCache<String, Rendered> rendered;
+    private final SingleFlight<String, Series> inFlight = new SingleFlight<>();
+
+    public MarketChartStore(@Value("${coin.chart.max-bytes:33554432}") long maxBytes) {
+        this.series = new BoundedCache<>(maxBytes, (k, s) -> k.length() + s.bytes());
+        // twice the body leaves room for the gzip copy, which is built on first use
+        this.rendered = new BoundedCache<>(maxBytes / 2, (k, r) -> k.length() + 2L * r.response().getBody().length);
+    }
+
+    public static boolean covers(int days) {
+        return days > 0 && Tier.covering(days) != null;
+    }
+
+    /**
+     * Chart for the last `days` days in CoinGecko's market_chart shape.
+     * points > 0 downsamples the window to at most that many points.
+     */
+    public CachedJsonResponse chart(String coinId, int days, int points) throws Exception {
+        Tier tier = Tier.covering(days);
+        Series s = load(coinId, tier);
+        if (s == null || s.size() == 0) return CachedJsonResponse.EMPTY_OBJECT;
+
+        String key = coinId + "|" + days + "|" + Math.max(points, 0);
+        Rendered cached = rendered.get(key);
+        if (cached != null && cached.from() == s) return cached.response();
+
+        long end = s.timestamps[s.size() - 1];
+        int from = lowerBound(s.timestamps, end - days * DAY_MS);
+        int[] idx = points > 0 && s.size() - from > points
+                ? lttb(s.timestamps, s.prices, from, s.size(), points)
+                : range(from, s.size());
+        CachedJsonResponse response = CachedJsonResponse.of(render(s, idx));
+        long ttl = ttlFor(tier);
+        rendered.put(key, new Rendered(s, response), ttl, ttl, ttl + staleIfErrorMs);
+        return response;
+    }
+
+    /**
+     * The coin's daily price at or before atMs, from the 365-day tier; NaN when the
+     * series does not reach back that far.
+     */
+    public double priceAt(String coinId, long atMs) throws Exception {
+        Series s = load(coinId, Tier.DAILY);
+        if (s == null) return Double.NaN;
+        int i = lowerBound(s.timestamps, atMs + 1) - 1;
+        return i < 0 ? Double.NaN : s.prices[i];
+    }
+
+    private Series load(String coinId, Tier tier) throws Exception {
+        String key = coinId + "|" + tier;
+        BoundedCache.Hit<Series> hit = series.getEntry(key);
+        if (hit != null && hit.freshness() == BoundedCache.Freshness.FRESH) return hit.value();
+        try {
+            return inFlight.execute(key, () -> {
+                Series fresh = series.peek(key);
+                if (fresh != null) return fresh;
+
+                String body = coinGeckoClient.get(
+                        "/coins/" + coinId + "/market_chart?vs_currency=usd&days=" + tier.days,
+                        UpstreamPriority.CHART);
+                Series parsed = parse(body);
+                if (parsed.size() == 0) {
+                    // an error body ({"error": ...} or a rate-limit status) is not a chart
+                    log.warn("[MarketChartStore] no prices in the response for {}, not caching it", key);
+                    return hit != null ? hit.value() : parsed;
+                }
+                long ttl = ttlFor(tier);
+                series.put(key, parsed, ttl, ttl, ttl + staleIfErrorMs);
+                return parsed;
+            });
+        } catch (Exception e) {
+            if (hit == null) throw e;
+            log.warn("[MarketChartStore] reload of {} failed, serving stale series: {}", key, e.getMessage());
+            return hit.value();
+        }
+    }
+
+    private long ttlFor(Tier tier) {
+        return switch (tier) {
+            case INTRADAY -> intradayTtl;
+            case HOURLY -> hourlyTtl;
+            case DAILY -> dailyTtl;
+        };
+    }
+
+    // ================= PARSE =================
+
+    Series parse(String body) throws IOException {
+        Column prices = new Column();
+        Column caps = new Column();
+        Column volumes = new Column();
+
+        try (JsonParser p = jsonFactory.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return new Series(new long[0], new double[0], new double[0], new double[0]);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                Column target = switch (field) {
+                    case "prices" -> prices;
+                    case "market_caps" -> caps;
+                    case "total_volumes" -> volumes;
+                    default -> null;
+                };
+                if (target == null || p.currentToken() != JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                while (p.nextToken() == JsonToken.START_ARRAY) {
+                    p.nextToken();
+                    long ts = p.getLongValue();
+                    p.nextToken();
+                    double v = p.currentToken() == JsonToken.VALUE_NULL ? Double.NaN : p.getDoubleValue();
+                    target.add(ts, v);
+                    p.nextToken(); // END_ARRAY of the pair
+                }
+            }
+        }
+
+        int n = prices.size;
+        return new Series(
+                Arrays.copyOf(prices.ts, n),
+                Arrays.copyOf(prices.values, n),
+                caps.alignedTo(n),
+                volumes.alignedTo(n));
+    }
+
+    private static final class Column {
+        long[] ts = new long[256];
+        double[] values = new double[256];
+        int size;
+
+        void add(long t, double v) {
+            if (size == ts.length) {
+                ts = Arrays.copyOf(ts, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            ts[size] = t;
+            values[size] = v;
+            size++;
+        }
+
+        double[] alignedTo(int n) {
+            double[] out = Arrays.copyOf(values, n);
+            if (size < n) Arrays.fill(out, size, n, Double.NaN);
+            return out;
+        }
+    }
+
+    // ================= RENDER =================
+
+    private byte[] render(Series s, int[] idx) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(idx.length * 96 + 64);
+        try (JsonGenerator g = jsonFactory.createGenerator(out)) {
+            g.writeStartObject();
+            writePairs(g, "prices", s.timestamps, s.prices, idx);
+            writePairs(g, "market_caps", s.timestamps, s.marketCaps, idx);
+            writePairs(g, "total_volumes", s.timestamps, s.volumes, idx);
+            g.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writePairs(JsonGenerator g, String name, long[] ts, double[] values, int[] idx) throws IOException {
+        g.writeArrayFieldStart(name);
+        for (int i : idx) {
+            g.writeStartArray();
+            g.writeNumber(ts[i]);
+            if (Double.isNaN(values[i])) g.writeNull();
+            else g.writeNumber(values[i]);
+            g.writeEndArray();
+        }
+        g.writeEndArray();
+    }
+
+    // ================= WINDOW / DOWNSAMPLE =================
+
+    private static int lowerBound(long[] ts, long t) {
+        int lo = 0, hi = ts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ts[mid] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] idx = new int[to - from];
+        for (int i = 0; i < idx.length; i++) idx[i] = from + i;
+        return idx;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets over [from, to): keeps the first and last point
+     * and, per bucket, the point that forms the largest triangle with its neighbours,
+     * which preserves the visual peaks and dips of the price line.
+     */
+    static int[] lttb(long[] x, double[] y, int from, int to, int threshold) {
+        int n = to - from;
+        if (threshold >= n || threshold < 3) return range(from, to);
+
+        int[] out = new int[threshold];
+        int count = 0;
+        out[count++] = from;
+
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int a = from;
+        for (int i = 0; i < threshold - 2; i++) {
+            // average of the next bucket is the third triangle point
+            int nextStart = from + (int) Math.floor((i + 1) * bucketSize) + 1;
+            int nextEnd = Math.min(from + (int) Math.floor((i + 2) * bucketSize) + 1, to);
+            double avgX = 0, avgY = 0;
+            int avgCount = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                if (Double.isNaN(y[j])) continue;
+                avgX += x[j];
+                avgY += y[j];
+                avgCount++;
+            }
+            if (avgCount > 0) {
+                avgX /= avgCount;
+                avgY /= avgCount;
+            } else {
+                avgX = x[to - 1];
+                avgY = y[to - 1];
+            }
+
+            int start = from + (int) Math.floor(i * bucketSize) + 1;
+            int end = from + (int) Math.floor((i + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            out[count++] = chosen;
+            a = chosen;
+        }
+        out[count++] = to - 1;
+        return Arrays.copyOf(out, count);
+    }
+
+    @Scheduled(fixedDelayString = "${coin.cache.sweep-interval-ms:30000}")
+    public void sweep() {
+        series.evictExpired();
+        rendered.evictExpired();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("coin.chart.series", series, BoundedCache::size)
+                .description("Chart series held in memory")
+                .register(registry);
+        Gauge.builder("coin.chart.weight", series, BoundedCache::weight)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("coin.chart.rendered", rendered, BoundedCache::size)
+                .description("Rendered chart windows held in memory")
+                .register(registry);
+    }
+}
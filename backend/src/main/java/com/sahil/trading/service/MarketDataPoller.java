@@ -0,0 +1,59 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.response.CachedJsonResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pulls the markets list once per interval and publishes it as a MarketSnapshot.
+ * The /coins list, top50, gainers and losers endpoints read only from the snapshot.
+ */
+@Component
+public class MarketDataPoller {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketDataPoller.class);
+
+    @Autowired
+    private MarketDataSource marketDataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final AtomicReference<MarketSnapshot> snapshot = new AtomicReference<>(MarketSnapshot.EMPTY);
+
+    public MarketSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    @Scheduled(fixedDelayString = "${market.poll-interval-ms:60000}")
+    public void poll() {
+        try {
+            List<Coin> coins = marketDataSource.fetchMarkets();
+            if (coins == null || coins.isEmpty()) {
+                log.warn("[MarketDataPoller] empty markets response, keeping previous snapshot");
+                return;
+            }
+            CachedJsonResponse top50 = CachedJsonResponse.of(
+                    objectMapper.writeValueAsBytes(coins.subList(0, Math.min(50, coins.size()))));
+            MarketSnapshot next = new MarketSnapshot(coins, top50, System.currentTimeMillis());
+            snapshot.set(next);
+            eventPublisher.publishEvent(new MarketSnapshotEvent(next));
+            log.debug("[MarketDataPoller] published snapshot with {} coins", coins.size());
+        } catch (Exception e) {
+            // keep serving the last good snapshot
+            log.warn("[MarketDataPoller] poll failed: {}", e.getMessage());
+        }
+    }
+}
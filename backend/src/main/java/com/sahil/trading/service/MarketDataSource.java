@@ -0,0 +1,17 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Coin;
+
+import java.util.List;
+
+/**
+ * Where the market poller gets its snapshot from.
+ * Selected with the "market.source" property: coingecko (default) or file.
+ */
+public interface MarketDataSource {
+
+    /**
+     * Fetch the current markets list ordered by market cap rank.
+     */
+    List<Coin> fetchMarkets() throws Exception;
+}
@@ -0,0 +1,49 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.response.CachedJsonResponse;
+
+import java.util.List;
+
+/**
+ * Immutable view of one markets poll. Coins are parsed once by the poller and
+ * shared by every reader, so callers must not modify the Coin objects.
+ */
+public final class MarketSnapshot {
+
+    public static final MarketSnapshot EMPTY = new MarketSnapshot(List.of(), CachedJsonResponse.of("[]"), 0);
+
+    private final List<Coin> coins;
+    private final CachedJsonResponse top50;
+    private final long fetchedAt;
+
+    public MarketSnapshot(List<Coin> coins, CachedJsonResponse top50, long fetchedAt) {
+        this.coins = List.copyOf(coins);
+        this.top50 = top50;
+        this.fetchedAt = fetchedAt;
+    }
+
+    // coins ordered by market cap rank
+    public List<Coin> getCoins() {
+        return coins;
+    }
+
+    // pre-serialized first 50 coins for /coins/top50
+    public CachedJsonResponse getTop50() {
+        return top50;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public boolean isEmpty() {
+        return coins.isEmpty();
+    }
+
+    public List<Coin> page(int page, int perPage) {
+        int from = Math.max(0, (page - 1) * perPage);
+        if (from >= coins.size()) return List.of();
+        return coins.subList(from, Math.min(coins.size(), from + perPage));
+    }
+}
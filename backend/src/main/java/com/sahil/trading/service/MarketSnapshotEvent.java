@@ -0,0 +1,17 @@
+package com.sahil.trading.service;
+
+/**
+ * Published by MarketDataPoller every time a new snapshot replaces the previous one.
+ */
+public class MarketSnapshotEvent {
+
+    private final MarketSnapshot snapshot;
+
+    public MarketSnapshotEvent(MarketSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public MarketSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
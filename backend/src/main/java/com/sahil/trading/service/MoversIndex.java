@@ -0,0 +1,173 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.MoverRanking;
+import com.sahil.trading.entity.Coin;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranking index behind /coins/gainers, /coins/losers and /coins/movers.
+ *
+ * Each ranking keeps the universe (top market.movers.universe coins by market cap)
+ * as parallel arrays sorted by the ranked value, highest first. It is rebuilt off the
+ * request path on every market snapshot and patched per coin by applyTick, so a
+ * top-K or bottom-K query is an O(K) array slice with no JSON parsing.
+ *
+ * Rankings are replaced copy-on-write: readers never lock.
+ */
+@Component
+public class MoversIndex {
+
+    private static final class Ranking {
+        static final Ranking EMPTY = new Ranking(new Coin[0], new double[0]);
+
+        // sorted by values, descending
+        final Coin[] coins;
+        final double[] values;
+
+        Ranking(Coin[] coins, double[] values) {
+            this.coins = coins;
+            this.values = values;
+        }
+    }
+
+    @Value("${market.movers.universe:50}")
+    private int universe = 50;
+
+    private volatile Map<MoverRanking, Ranking> rankings = emptyRankings();
+
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        List<Coin> coins = event.getSnapshot().getCoins();
+        rebuild(coins.subList(0, Math.min(universe, coins.size())));
+    }
+
+    public synchronized void rebuild(List<Coin> coins) {
+        Map<MoverRanking, Ranking> next = new EnumMap<>(MoverRanking.class);
+        for (MoverRanking ranking : MoverRanking.values()) {
+            List<Coin> ranked = new ArrayList<>(coins.size());
+            for (Coin c : coins) {
+                if (value(ranking, c) != null) ranked.add(c);
+            }
+            ranked.sort((a, b) -> Double.compare(value(ranking, b), value(ranking, a)));
+
+            Coin[] arr = ranked.toArray(new Coin[0]);
+            double[] values = new double[arr.length];
+            for (int i = 0; i < arr.length; i++) values[i] = value(ranking, arr[i]);
+            next.put(ranking, new Ranking(arr, values));
+        }
+        rankings = next;
+    }
+
+    /**
+     * Apply fresher price fields for a coin already in the universe (e.g. from a
+     * details fetch) and move it to its new position in every ranking.
+     * Null fields on tick are left unchanged. Coins outside the universe are ignored.
+     */
+    public synchronized void applyTick(Coin tick) {
+        Map<MoverRanking, Ranking> current = rankings;
+        Coin existing = find(current.get(MoverRanking.PRICE_CHANGE_24H), tick.getId());
+        if (existing == null) existing = find(current.get(MoverRanking.VOLUME), tick.getId());
+        if (existing == null) return;
+
+        // snapshot coins are shared, so patch a copy
+        Coin updated = new Coin();
+        BeanUtils.copyProperties(existing, updated);
+        if (tick.getCurrentPrice() != null) updated.setCurrentPrice(tick.getCurrentPrice());
+        if (tick.getPriceChangePercentage24h() != null) updated.setPriceChangePercentage24h(tick.getPriceChangePercentage24h());
+        if (tick.getTotalVolume() != null) updated.setTotalVolume(tick.getTotalVolume());
+        if (tick.getMarketCapChangePercentage24h() != null) updated.setMarketCapChangePercentage24h(tick.getMarketCapChangePercentage24h());
+
+        Map<MoverRanking, Ranking> next = new EnumMap<>(MoverRanking.class);
+        for (MoverRanking ranking : MoverRanking.values()) {
+            next.put(ranking, reposition(current.get(ranking), ranking, updated));
+        }
+        rankings = next;
+    }
+
+    /**
+     * Highest k coins for the ranking, highest first.
+     */
+    public List<Coin> top(MoverRanking ranking, int k) {
+        Ranking r = rankings.get(ranking);
+        int n = Math.min(Math.max(0, k), r.coins.length);
+        return Arrays.asList(Arrays.copyOfRange(r.coins, 0, n));
+    }
+
+    /**
+     * Lowest k coins for the ranking, lowest first.
+     */
+    public List<Coin> bottom(MoverRanking ranking, int k) {
+        Ranking r = rankings.get(ranking);
+        int n = Math.min(Math.max(0, k), r.coins.length);
+        List<Coin> out = new ArrayList<>(n);
+        for (int i = r.coins.length - 1; i >= r.coins.length - n; i--) out.add(r.coins[i]);
+        return out;
+    }
+
+    private static Ranking reposition(Ranking r, MoverRanking ranking, Coin coin) {
+        int n = r.coins.length;
+        Coin[] coins = new Coin[n + 1];
+        double[] values = new double[n + 1];
+
+        // copy without the old entry
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (r.coins[i].getId().equals(coin.getId())) continue;
+            coins[size] = r.coins[i];
+            values[size] = r.values[i];
+            size++;
+        }
+
+        Double v = value(ranking, coin);
+        if (v != null) {
+            int pos = insertionPoint(values, size, v);
+            System.arraycopy(coins, pos, coins, pos + 1, size - pos);
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            coins[pos] = coin;
+            values[pos] = v;
+            size++;
+        }
+        return new Ranking(Arrays.copyOf(coins, size), Arrays.copyOf(values, size));
+    }
+
+    // first index whose value is lower than v, in a descending array
+    private static int insertionPoint(double[] values, int size, double v) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] >= v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static Coin find(Ranking r, String coinId) {
+        for (Coin c : r.coins) {
+            if (c.getId().equals(coinId)) return c;
+        }
+        return null;
+    }
+
+    private static Double value(MoverRanking ranking, Coin c) {
+        return switch (ranking) {
+            case PRICE_CHANGE_24H -> c.getPriceChangePercentage24h();
+            case VOLUME -> c.getTotalVolume() == null ? null : c.getTotalVolume().doubleValue();
+            case MARKET_CAP_CHANGE_24H -> c.getMarketCapChangePercentage24h();
+        };
+    }
+
+    private static Map<MoverRanking, Ranking> emptyRankings() {
+        Map<MoverRanking, Ranking> empty = new EnumMap<>(MoverRanking.class);
+        for (MoverRanking ranking : MoverRanking.values()) empty.put(ranking, Ranking.EMPTY);
+        return empty;
+    }
+}
@@ -0,0 +1,200 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.OrderExecution;
+import com.sahil.trading.domain.OrderType;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.Order;
+import com.sahil.trading.entity.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resting LIMIT and STOP orders, triggered by market snapshot ticks.
+ *
+ * Each coin has two price-sorted sides:
+ * - fireAtOrBelow: BUY LIMIT and SELL STOP, triggered once the price falls to the key
+ * - fireAtOrAbove: SELL LIMIT and BUY STOP, triggered once the price rises to the key
+ * so a tick only looks at the best key of each side, O(log n), plus O(log n) per order
+ * it triggers. Orders at the same price trigger in the order they were placed.
+ *
+ * The book itself is not persisted: orders are stored as OPEN through OrderService and
+ * the book is rebuilt from them on startup. A triggered order fills at the tick's
+ * price through OrderPipeline; only coins in the market snapshot are watched.
+ */
+@Component
+public class OrderBook implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderBook.class);
+
+    private static final class Resting {
+        final Order order;
+        final double trigger;
+        final boolean fireBelow;
+        final CompletableFuture<Order> settled = new CompletableFuture<>();
+
+        Resting(Order order) {
+            this.order = order;
+            this.trigger = order.getTriggerPrice().doubleValue();
+            boolean buy = order.getOrdertype() == OrderType.BUY;
+            this.fireBelow = (order.getExecution() == OrderExecution.LIMIT) == buy;
+        }
+    }
+
+    private static final class Book {
+        final TreeMap<Double, ArrayDeque<Resting>> fireAtOrBelow = new TreeMap<>();
+        final TreeMap<Double, ArrayDeque<Resting>> fireAtOrAbove = new TreeMap<>();
+
+        TreeMap<Double, ArrayDeque<Resting>> side(Resting r) {
+            return r.fireBelow ? fireAtOrBelow : fireAtOrAbove;
+        }
+    }
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderPipeline orderPipeline;
+
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+    private final Map<Long, Resting> byId = new ConcurrentHashMap<>();
+
+    /**
+     * Store a LIMIT/STOP order as OPEN and rest it in the book. The ticket's future
+     * completes once the order is triggered and settled, or cancelled.
+     */
+    public OrderPipeline.Ticket place(Coin coin, double quantity, OrderType orderType, User user,
+                                      OrderExecution execution, Double triggerPrice) throws Exception {
+        if (execution == null || execution == OrderExecution.MARKET) {
+            throw new Exception("only LIMIT and STOP orders rest in the order book");
+        }
+        Order order = orderService.acceptOrder(coin, quantity, orderType, user, execution, triggerPrice);
+        Resting resting = add(order);
+        return new OrderPipeline.Ticket(order, resting.settled);
+    }
+
+    /**
+     * Take an OPEN order out of the book and mark it CANCELLED.
+     */
+    public Order cancel(Long orderId) throws Exception {
+        Resting resting = byId.get(orderId);
+        if (resting == null || !remove(resting)) {
+            throw new Exception("order " + orderId + " is not open");
+        }
+        Order cancelled;
+        try {
+            cancelled = orderService.cancelOrder(orderId);
+        } catch (Exception e) {
+            add(resting);
+            throw e;
+        }
+        resting.settled.complete(cancelled);
+        return cancelled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        try {
+            List<Order> open = orderService.getOpenOrders();
+            for (Order order : open) add(order);
+            log.info("[OrderBook] restored {} open orders", open.size());
+        } catch (Exception e) {
+            log.warn("[OrderBook] could not restore open orders: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        for (Coin c : event.getSnapshot().getCoins()) {
+            if (c.getCurrentPrice() == null) continue;
+            Book book = books.get(c.getId());
+            if (book == null) continue;
+            onPrice(book, c.getCurrentPrice());
+        }
+    }
+
+    // package-private for tests; returns the orders it triggered
+    List<Order> onPrice(String coinId, double price) {
+        Book book = books.get(coinId);
+        return book == null ? List.of() : onPrice(book, price);
+    }
+
+    private List<Order> onPrice(Book book, double price) {
+        List<Resting> fired = new ArrayList<>();
+        synchronized (book) {
+            while (!book.fireAtOrBelow.isEmpty() && book.fireAtOrBelow.lastKey() >= price) {
+                fired.addAll(book.fireAtOrBelow.pollLastEntry().getValue());
+            }
+            while (!book.fireAtOrAbove.isEmpty() && book.fireAtOrAbove.firstKey() <= price) {
+                fired.addAll(book.fireAtOrAbove.pollFirstEntry().getValue());
+            }
+            for (Resting r : fired) byId.remove(r.order.getId());
+        }
+
+        List<Order> orders = new ArrayList<>(fired.size());
+        for (Resting r : fired) {
+            log.debug("[OrderBook] order {} triggered at {}", r.order.getId(), price);
+            orderPipeline.submitTriggered(r.order, price).whenComplete((order, error) -> {
+                if (error != null) r.settled.completeExceptionally(error);
+                else r.settled.complete(order);
+            });
+            orders.add(r.order);
+        }
+        return orders;
+    }
+
+    private Resting add(Order order) {
+        return add(new Resting(order));
+    }
+
+    private Resting add(Resting resting) {
+        Order order = resting.order;
+        Book book = books.computeIfAbsent(order.getOrderItem().getCoin().getId(), id -> new Book());
+        synchronized (book) {
+            book.side(resting).computeIfAbsent(resting.trigger, p -> new ArrayDeque<>()).add(resting);
+            byId.put(order.getId(), resting);
+        }
+        return resting;
+    }
+
+    // false when the order was triggered in the meantime
+    private boolean remove(Resting resting) {
+        Book book = books.get(resting.order.getOrderItem().getCoin().getId());
+        if (book == null) return false;
+        synchronized (book) {
+            if (byId.remove(resting.order.getId()) == null) return false;
+            TreeMap<Double, ArrayDeque<Resting>> side = book.side(resting);
+            ArrayDeque<Resting> level = side.get(resting.trigger);
+            if (level != null) {
+                level.remove(resting);
+                if (level.isEmpty()) side.remove(resting.trigger);
+            }
+            return true;
+        }
+    }
+
+    public int restingCount() {
+        return byId.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("order.book.resting", this, OrderBook::restingCount)
+                .description("OPEN limit/stop orders waiting for their price")
+                .register(registry);
+    }
+}
@@ -0,0 +1,382 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.OrderStatus;
+import com.sahil.trading.domain.OrderType;
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.Order;
+import com.sahil.trading.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Order entry: accept now, settle in the background.
+ *
+ * submit validates the order against the user's projected cash and holdings, stores
+ * it as PENDING and returns it right away. Each user has a lane (FIFO queue) drained by
+ * at most one worker at a time, so one user's orders settle in the order they were
+ * placed while different users settle in parallel on order.pipeline.workers threads.
+ *
+ * A worker settles up to order.pipeline.batch-size queued orders of a lane in one
+ * transaction. If that batch fails, each order is retried in its own transaction so
+ * only the offending one is marked FAILED.
+ *
+ * The projection starts from the wallet and assets when a lane is created and is
+ * reserved against on every submit, so a burst of orders cannot overspend before
+ * settlement catches up. Idle lanes are dropped, so it is re-read from the DB.
+ *
+ * LIMIT/STOP orders reserve nothing while they rest in the OrderBook; they enter their
+ * lane through submitTriggered when the price reaches them.
+ *
+ * Lanes live in memory only: on startup, market orders still PENDING from before a
+ * restart are put back into their lanes, oldest first (like OrderBook, this assumes
+ * one instance settles orders).
+ */
+@Component
+public class OrderPipeline implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderPipeline.class);
+
+    private static final class Job {
+        final long orderId;
+        final OrderType type;
+        final String coinId;
+        final double quantity;
+        final BigDecimal price;
+        // set for a triggered LIMIT/STOP order: the price it fills at
+        final Double fillPrice;
+        final long submittedAt = System.nanoTime();
+        final CompletableFuture<Order> result = new CompletableFuture<>();
+
+        Job(Order order, Double fillPrice, BigDecimal price) {
+            this.orderId = order.getId();
+            this.type = order.getOrdertype();
+            this.coinId = order.getOrderItem().getCoin().getId();
+            this.quantity = order.getOrderItem().getQuantity();
+            this.fillPrice = fillPrice;
+            this.price = price;
+        }
+    }
+
+    /**
+     * What submit hands back: the order as stored (PENDING) and its settlement.
+     */
+    public record Ticket(Order pending, CompletableFuture<Order> settled) {
+    }
+
+    private static final class Lane {
+        final ArrayDeque<Job> queue = new ArrayDeque<>();
+        boolean running;
+        // submits between their reservation and their enqueue; the lane is kept while > 0
+        int accepting;
+        // only ever set once, so a read without the lock that sees null is just early
+        volatile BigDecimal cash;
+        final Map<String, Double> holdings = new ConcurrentHashMap<>();
+    }
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private AssetService assetService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${order.pipeline.batch-size:20}")
+    private int batchSize = 20;
+
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ExecutorService workers;
+
+    private volatile Timer latency;
+    private volatile Counter succeeded;
+    private volatile Counter failed;
+
+    public OrderPipeline(@Value("${order.pipeline.workers:4}") int workers) {
+        this.workers = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "order-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Accept an order for settlement. The ticket's future completes with the settled
+     * order (SUCCESS or FAILED).
+     * Throws when the order cannot possibly settle (bad quantity, not enough cash or coins).
+     */
+    public Ticket submit(Coin coin, double quantity, OrderType orderType, User user) throws Exception {
+        BigDecimal cost = BigDecimal.valueOf(coin.getCurrentPrice() * quantity);
+        Lane lane;
+        while (true) {
+            lane = lanes.computeIfAbsent(user.getId(), id -> new Lane());
+            prime(lane, user, coin.getId(), orderType);
+            synchronized (lane) {
+                // the lane went idle and was dropped after we looked it up
+                if (lanes.get(user.getId()) != lane) continue;
+                reserve(lane, coin.getId(), quantity, orderType, cost);
+                lane.accepting++;
+                break;
+            }
+        }
+
+        // stored without the lane lock, so the user's other submits do not wait on it
+        Order order;
+        try {
+            order = orderService.acceptOrder(coin, quantity, orderType, user);
+        } catch (Exception e) {
+            synchronized (lane) {
+                release(lane, orderType, coin.getId(), quantity, cost);
+                lane.accepting--;
+                if (lane.accepting == 0 && !lane.running) lanes.remove(user.getId(), lane);
+            }
+            throw e;
+        }
+        Job job = new Job(order, null, order.getPrice());
+        synchronized (lane) {
+            lane.accepting--;
+            enqueue(user.getId(), lane, job);
+        }
+        return new Ticket(order, job.result);
+    }
+
+    /**
+     * Settle an OPEN LIMIT/STOP order that the order book triggered at the given price.
+     * It goes through the owner's lane like any other order; if the cash or coins are no
+     * longer there, it is marked FAILED. The future completes with the settled order.
+     */
+    public CompletableFuture<Order> submitTriggered(Order order, double price) {
+        return enter(order, price, BigDecimal.valueOf(price * order.getOrderItem().getQuantity()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<Order> pending;
+        try {
+            pending = orderService.getPendingOrders();
+        } catch (Exception e) {
+            log.warn("[OrderPipeline] could not re-queue pending orders: {}", e.getMessage());
+            return;
+        }
+        pending.stream()
+                .sorted(Comparator.comparing(Order::getId))
+                .forEach(order -> enter(order, null, order.getPrice()));
+        log.info("[OrderPipeline] re-queued {} pending orders", pending.size());
+    }
+
+    // an order already stored; one that cannot be reserved any more is marked FAILED
+    private CompletableFuture<Order> enter(Order order, Double fillPrice, BigDecimal cost) {
+        User user = order.getUser();
+        String coinId = order.getOrderItem().getCoin().getId();
+        double quantity = order.getOrderItem().getQuantity();
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(user.getId(), id -> new Lane());
+            try {
+                prime(lane, user, coinId, order.getOrdertype());
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(fail(order.getId(), e.getMessage()));
+            }
+            synchronized (lane) {
+                if (lanes.get(user.getId()) != lane) continue;
+                try {
+                    reserve(lane, coinId, quantity, order.getOrdertype(), cost);
+                } catch (Exception e) {
+                    return CompletableFuture.completedFuture(fail(order.getId(), e.getMessage()));
+                }
+                Job job = new Job(order, fillPrice, cost);
+                enqueue(user.getId(), lane, job);
+                return job.result;
+            }
+        }
+    }
+
+    // reads what the lane's projection still lacks before its lock is taken, so no
+    // database call runs while the user's other submits wait
+    private void prime(Lane lane, User user, String coinId, OrderType orderType) throws Exception {
+        if (lane.cash == null) {
+            BigDecimal balance = walletService.getUserWallet(user).getBalance();
+            synchronized (lane) {
+                if (lane.cash == null) lane.cash = balance;
+            }
+        }
+        if (orderType == OrderType.SELL && !lane.holdings.containsKey(coinId)) {
+            Asset asset = assetService.findAssetByUserIdAndCoinId(user.getId(), coinId);
+            lane.holdings.putIfAbsent(coinId, asset == null ? 0 : asset.getQuantity());
+        }
+    }
+
+    // caller holds the lane lock
+    private void enqueue(Long userId, Lane lane, Job job) {
+        lane.queue.add(job);
+        queued.incrementAndGet();
+        if (!lane.running) {
+            lane.running = true;
+            workers.execute(() -> drain(userId, lane));
+        }
+    }
+
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    // caller holds the lane lock
+    private static void reserve(Lane lane, String coinId, double quantity, OrderType orderType, BigDecimal cost) throws Exception {
+        if (quantity <= 0) throw new Exception("quantity should be > 0");
+        if (orderType == null) throw new Exception("invalid order type");
+        if (orderType == OrderType.BUY) {
+            if (lane.cash == null || lane.cash.compareTo(cost) < 0) {
+                throw new Exception("Insufficient funds for this transaction");
+            }
+            lane.cash = lane.cash.subtract(cost);
+        } else {
+            double held = lane.holdings.getOrDefault(coinId, 0.0);
+            if (held < quantity) throw new Exception("Insufficient quantity to sell");
+            lane.holdings.put(coinId, held - quantity);
+        }
+    }
+
+    // caller holds the lane lock
+    private static void release(Lane lane, OrderType orderType, String coinId, double quantity, BigDecimal price) {
+        if (orderType == OrderType.BUY) {
+            lane.cash = lane.cash.add(price);
+        } else {
+            lane.holdings.merge(coinId, quantity, Double::sum);
+        }
+    }
+
+    private void drain(Long userId, Lane lane) {
+        while (true) {
+            List<Job> batch = new ArrayList<>(batchSize);
+            synchronized (lane) {
+                while (batch.size() < batchSize && !lane.queue.isEmpty()) batch.add(lane.queue.poll());
+                if (batch.isEmpty()) {
+                    lane.running = false;
+                    // a submit about to enqueue restarts the lane instead
+                    if (lane.accepting == 0) lanes.remove(userId, lane);
+                    return;
+                }
+            }
+            queued.addAndGet(-batch.size());
+            settle(lane, batch);
+        }
+    }
+
+    private void settle(Lane lane, List<Job> batch) {
+        List<Order> settled = null;
+        if (batch.size() > 1) {
+            try {
+                settled = new TransactionTemplate(transactionManager).execute(status -> {
+                    List<Order> out = new ArrayList<>(batch.size());
+                    for (Job job : batch) out.add(executeUnchecked(job));
+                    return out;
+                });
+            } catch (RuntimeException e) {
+                log.debug("[OrderPipeline] batch of {} failed, settling one by one: {}", batch.size(), e.getMessage());
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Job job = batch.get(i);
+            Order order = settled != null ? settled.get(i) : settleOne(job);
+            synchronized (lane) {
+                if (order.getOrderStatus() == OrderStatus.SUCCESS) {
+                    // the sale's proceeds can be spent from now on
+                    if (job.type == OrderType.SELL) lane.cash = lane.cash.add(job.price);
+                } else {
+                    release(lane, job.type, job.coinId, job.quantity, job.price);
+                }
+            }
+            record(job, order);
+            job.result.complete(order);
+        }
+    }
+
+    private Order settleOne(Job job) {
+        try {
+            return new TransactionTemplate(transactionManager).execute(status -> executeUnchecked(job));
+        } catch (RuntimeException e) {
+            log.info("[OrderPipeline] order {} failed: {}", job.orderId, e.getMessage());
+            return fail(job.orderId, e.getMessage());
+        }
+    }
+
+    private Order fail(long orderId, String reason) {
+        try {
+            return orderService.failOrder(orderId, reason);
+        } catch (Exception fail) {
+            log.error("[OrderPipeline] could not mark order {} as failed", orderId, fail);
+            Order order = new Order();
+            order.setId(orderId);
+            order.setOrderStatus(OrderStatus.ERROR);
+            order.setFailureReason(reason);
+            return order;
+        }
+    }
+
+    private Order executeUnchecked(Job job) {
+        try {
+            // a triggered order is still OPEN (or CANCELLED, then both calls leave it alone)
+            if (job.fillPrice != null) orderService.triggerOrder(job.orderId, job.fillPrice);
+            return orderService.executeOrder(job.orderId);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // checked exceptions would not roll the transaction back
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private void record(Job job, Order order) {
+        if (latency != null) latency.record(System.nanoTime() - job.submittedAt, TimeUnit.NANOSECONDS);
+        Counter c = order.getOrderStatus() == OrderStatus.SUCCESS ? succeeded : failed;
+        if (c != null) c.increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("order.pipeline.queued", this, OrderPipeline::queuedCount)
+                .description("Accepted orders waiting to settle")
+                .register(registry);
+        latency = Timer.builder("order.pipeline.latency")
+                .description("Time from submit to settled order")
+                .publishPercentileHistogram()
+                .register(registry);
+        succeeded = Counter.builder("order.pipeline.settled").tag("status", "success").register(registry);
+        failed = Counter.builder("order.pipeline.settled").tag("status", "failed").register(registry);
+    }
+}
@@ -1,5 +1,6 @@
 package com.sahil.trading.service;
 
+import com.sahil.trading.domain.OrderExecution;
 import com.sahil.trading.domain.OrderType;
 import com.sahil.trading.entity.Coin;
 import com.sahil.trading.entity.Order;
@@ -13,6 +14,30 @@ public interface OrderService {
     Order getOrderById(Long orderId) throws Exception;
     List<Order> getAllOrdersOfUser(Long userId, OrderType OrderType, String assetSymbol);
 
+    // validate and store the order as PENDING, without touching wallet or assets
+    Order acceptOrder(Coin coin, double quantity, OrderType orderType, User user) throws Exception;
+
+    // same for any execution type; LIMIT/STOP orders are stored as OPEN
+    Order acceptOrder(Coin coin, double quantity, OrderType orderType, User user,
+                      OrderExecution execution, Double triggerPrice) throws Exception;
+
+    // move an OPEN order to PENDING at the price that triggered it; no-op for any other status
+    Order triggerOrder(Long orderId, double price) throws Exception;
+
+    // cancel an OPEN order
+    Order cancelOrder(Long orderId) throws Exception;
+
+    List<Order> getOpenOrders();
+
+    // accepted market orders not settled yet
+    List<Order> getPendingOrders();
+
+    // settle a PENDING order against the wallet and assets; no-op for any other status
+    Order executeOrder(Long orderId) throws Exception;
+
+    Order failOrder(Long orderId, String reason) throws Exception;
+
+    // accept and execute in one go
     Order processOrder(Coin coin , double quantity, OrderType orderType, User user) throws Exception;
 
 }
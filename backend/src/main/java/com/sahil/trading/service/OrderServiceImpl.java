@@ -1,5 +1,6 @@
 package com.sahil.trading.service;
 
+import com.sahil.trading.domain.OrderExecution;
 import com.sahil.trading.domain.OrderStatus;
 import com.sahil.trading.domain.OrderType;
 import com.sahil.trading.entity.*;
@@ -28,6 +29,9 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AssetService assetService;
 
+    @Autowired
+    private CostBasisService costBasisService;
+
     @Override
     public Order createOrder(User user, OrderItem orderItem, OrderType orderType) {
 
@@ -61,80 +65,171 @@ public class OrderServiceImpl implements OrderService {
         return orderItemRepository.save(orderItem);
     }
 
+    @Override
+    @Transactional
+    public Order acceptOrder(Coin coin, double quantity, OrderType orderType, User user) throws Exception {
+        return acceptOrder(coin, quantity, orderType, user, OrderExecution.MARKET, null);
+    }
+
+    @Override
     @Transactional
-    public Order buyAsset(Coin coin, double quantity, User user) throws Exception {
+    public Order acceptOrder(Coin coin, double quantity, OrderType orderType, User user,
+                             OrderExecution execution, Double triggerPrice) throws Exception {
         if (quantity <= 0) {
             throw new Exception("quantity should be > 0");
         }
+        if (orderType == null) {
+            throw new Exception("invalid order type");
+        }
+        if (execution == null) {
+            execution = OrderExecution.MARKET;
+        }
+        boolean resting = execution != OrderExecution.MARKET;
+        if (resting && (triggerPrice == null || triggerPrice <= 0)) {
+            throw new Exception("triggerPrice should be > 0 for " + execution + " orders");
+        }
 
-        double buyPrice = coin.getCurrentPrice();
-        OrderItem orderItem = createOrderItem(coin, quantity, buyPrice, 0);
-        Order order = createOrder(user, orderItem, OrderType.BUY);
+        // resting orders are priced at their trigger until they fill
+        double price = resting ? triggerPrice : coin.getCurrentPrice();
+        // a sell's buy price is the asset's average, filled in when it executes
+        OrderItem orderItem = orderType == OrderType.BUY
+                ? createOrderItem(coin, quantity, price, 0)
+                : createOrderItem(coin, quantity, 0, price);
+
+        Order order = new Order();
+        order.setUser(user);
+        order.setOrderItem(orderItem);
+        order.setOrdertype(orderType);
+        order.setPrice(BigDecimal.valueOf(price * quantity));
+        order.setTimestamp(LocalDateTime.now());
+        order.setExecution(execution);
+        order.setTriggerPrice(resting ? BigDecimal.valueOf(triggerPrice) : null);
+        order.setOrderStatus(resting ? OrderStatus.OPEN : OrderStatus.PENDING);
+        order = orderRepository.save(order);
         orderItem.setOrder(order);
+        return order;
+    }
+
+    @Override
+    @Transactional
+    public Order triggerOrder(Long orderId, double price) throws Exception {
+        Order order = getOrderById(orderId);
+        if (order.getOrderStatus() != OrderStatus.OPEN) {
+            return order;
+        }
+        OrderItem orderItem = order.getOrderItem();
+        if (order.getOrdertype() == OrderType.BUY) {
+            orderItem.setBuyPrice(price);
+        } else {
+            orderItem.setSellPrice(price);
+        }
+        order.setPrice(BigDecimal.valueOf(price * orderItem.getQuantity()));
+        order.setOrderStatus(OrderStatus.PENDING);
+        return orderRepository.save(order);
+    }
+
+    @Override
+    @Transactional
+    public Order cancelOrder(Long orderId) throws Exception {
+        Order order = getOrderById(orderId);
+        if (order.getOrderStatus() != OrderStatus.OPEN) {
+            throw new Exception("only open orders can be cancelled");
+        }
+        order.setOrderStatus(OrderStatus.CANCELLED);
+        return orderRepository.save(order);
+    }
+
+    @Override
+    public List<Order> getOpenOrders() {
+        return orderRepository.findByOrderStatus(OrderStatus.OPEN);
+    }
+
+    @Override
+    public List<Order> getPendingOrders() {
+        return orderRepository.findByOrderStatus(OrderStatus.PENDING);
+    }
+
+    @Override
+    @Transactional
+    public Order executeOrder(Long orderId) throws Exception {
+        Order order = getOrderById(orderId);
+        if (order.getOrderStatus() != OrderStatus.PENDING) {
+            return order;
+        }
+        if (order.getOrdertype() == OrderType.BUY) {
+            return buyAsset(order);
+        }
+        return sellAsset(order);
+    }
+
+    @Override
+    @Transactional
+    public Order failOrder(Long orderId, String reason) throws Exception {
+        Order order = getOrderById(orderId);
+        order.setOrderStatus(OrderStatus.FAILED);
+        order.setFailureReason(reason);
+        return orderRepository.save(order);
+    }
+
+    private Order buyAsset(Order order) throws Exception {
+        OrderItem orderItem = order.getOrderItem();
+        User user = order.getUser();
 
         // charge wallet for order
         walletService.payOrderPayment(order, user);
 
         order.setOrderStatus(OrderStatus.SUCCESS);
-        order.setOrdertype(OrderType.BUY);
         Order savedOrder = orderRepository.save(order);
 
         // create or update asset using delta semantics:
-        Asset oldAsset = assetService.findAssetByUserIdAndCoinId(order.getUser().getId(), order.getOrderItem().getCoin().getId());
+        Asset oldAsset = assetService.findAssetByUserIdAndCoinId(user.getId(), orderItem.getCoin().getId());
         if (oldAsset == null) {
             // create with explicit buy price
-            assetService.createAsset(user, orderItem.getCoin(), orderItem.getQuantity(), buyPrice);
+            assetService.createAsset(user, orderItem.getCoin(), orderItem.getQuantity(), orderItem.getBuyPrice());
         } else {
-            // add quantity (delta) — updateAsset expects deltaQuantity
-            assetService.updateAsset(oldAsset.getId(), quantity);
+            // add quantity (delta) at this order's price; the cached asset is not read again
+            assetService.changeQuantity(oldAsset, orderItem.getQuantity(), orderItem.getBuyPrice());
         }
+        costBasisService.recordBuy(user.getId(), orderItem.getCoin().getId(), savedOrder.getId(),
+                orderItem.getQuantity(), orderItem.getBuyPrice(), oldAsset);
 
         return savedOrder;
     }
 
-    @Transactional
-    public Order sellAsset(Coin coin, double quantity, User user) throws Exception {
-        if (quantity <= 0) {
-            throw new Exception("quantity should be > 0");
-        }
-        double sellPrice = coin.getCurrentPrice();
+    private Order sellAsset(Order order) throws Exception {
+        OrderItem orderItem = order.getOrderItem();
+        User user = order.getUser();
+        Coin coin = orderItem.getCoin();
+        double quantity = orderItem.getQuantity();
 
         Asset assetToSell = assetService.findAssetByUserIdAndCoinId(user.getId(), coin.getId());
         if (assetToSell == null) {
             throw new Exception("Insufficient quantity to sell");
         }
 
-        double buyPrice = assetToSell.getBuyPrice();
-
         // ensure enough quantity
         if (assetToSell.getQuantity() < quantity) {
             throw new Exception("Insufficient quantity to sell");
         }
-
-        OrderItem orderItem = createOrderItem(coin, quantity, buyPrice, sellPrice);
-        Order order = createOrder(user, orderItem, OrderType.SELL);
-        orderItem.setOrder(order);
+        orderItem.setBuyPrice(assetToSell.getBuyPrice());
 
         // mark success & save order before payment
         order.setOrderStatus(OrderStatus.SUCCESS);
-        order.setOrdertype(OrderType.SELL);
         Order savedOrder = orderRepository.save(order);
 
         // credit wallet for sale
         walletService.payOrderPayment(order, user);
 
-        // subtract quantity using delta (negative value)
-        Asset updatedAsset = assetService.updateAsset(assetToSell.getId(), -quantity);
+        // subtract quantity using delta (negative value); a very small remainder is
+        // sold off with it, so the asset is deleted in the same write
+        double remaining = assetToSell.getQuantity() - quantity;
+        double delta = remaining * coin.getCurrentPrice() <= 1 ? -assetToSell.getQuantity() : -quantity;
+        assetService.changeQuantity(assetToSell, delta, assetToSell.getBuyPrice());
 
-        // assetService.updateAsset may return null if it deleted the asset (quantity <= 0)
-        if (updatedAsset == null) {
-            // asset removed already
-        } else {
-            // if very small remaining value, delete (optional)
-            if (updatedAsset.getQuantity() * coin.getCurrentPrice() <= 1) {
-                assetService.deleteAsset(updatedAsset.getId());
-            }
-        }
+        // gain against the lots this sale uses up; orderItem is managed, so it is saved on commit
+        // costed on everything that left the holding, dust included, so no stale lot remains
+        orderItem.setRealizedPnl(costBasisService.recordSell(user.getId(), coin.getId(), savedOrder.getId(),
+                quantity, orderItem.getSellPrice(), -delta, assetToSell));
 
         return savedOrder;
     }
@@ -142,12 +237,7 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public Order processOrder(Coin coin, double quantity, OrderType orderType, User user) throws Exception {
-
-        if (orderType.equals(OrderType.BUY)) {
-            return buyAsset(coin, quantity, user);
-        } else if (orderType.equals(OrderType.SELL)) {
-            return sellAsset(coin, quantity, user);
-        }
-        throw new Exception("invalid order type");
+        Order order = acceptOrder(coin, quantity, orderType, user);
+        return executeOrder(order.getId());
     }
 }
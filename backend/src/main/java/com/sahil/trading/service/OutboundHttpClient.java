@@ -0,0 +1,264 @@
+package com.sahil.trading.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared client for calls leaving the backend.
+ *
+ * Built on java.net.http.HttpClient: HTTP/2 where the server supports it, pooled
+ * keep-alive connections, and non-blocking sends, so no thread is parked while an
+ * upstream is slow. Every request gets http.client.request-timeout-ms unless it sets
+ * its own, and at most http.client.max-per-host requests run against one host at a
+ * time; the rest wait in a per-host FIFO.
+ *
+ * The request timeout only covers the wait for the response headers, so the body gets
+ * http.client.body-timeout-ms on top: a send is cancelled if the whole body has not
+ * arrived by then, and a body from stream() is closed, failing the blocked read with
+ * an HttpTimeoutException, once that long has passed since the headers.
+ *
+ * Latency is recorded in the http.client.outbound timer (host and status tags).
+ */
+@Component
+public class OutboundHttpClient implements MeterBinder {
+
+    private final class Host {
+        final String name;
+        final Queue<Runnable> waiting = new ArrayDeque<>();
+        int active;
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        void submit(Runnable send) {
+            synchronized (this) {
+                if (active >= maxPerHost) {
+                    waiting.add(send);
+                    return;
+                }
+                active++;
+            }
+            send.run();
+        }
+
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) active--;
+            }
+            // the permit passes straight to the next waiting request
+            if (next != null) next.run();
+        }
+
+        synchronized int queued() {
+            return waiting.size();
+        }
+    }
+
+    private final HttpClient client;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "http-client-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Duration requestTimeout;
+    private final long bodyTimeoutMs;
+    private final int maxPerHost;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry registry;
+
+    public OutboundHttpClient(@Value("${http.client.connect-timeout-ms:3000}") long connectTimeoutMs,
+                              @Value("${http.client.request-timeout-ms:10000}") long requestTimeoutMs,
+                              @Value("${http.client.body-timeout-ms:30000}") long bodyTimeoutMs,
+                              @Value("${http.client.max-per-host:16}") int maxPerHost) {
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.bodyTimeoutMs = bodyTimeoutMs;
+        this.maxPerHost = maxPerHost;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * GET request builder with the default timeout, to pass to send.
+     */
+    public HttpRequest.Builder get(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .GET();
+    }
+
+    /**
+     * Send without blocking the caller. The future completes with the response for any
+     * status code, or exceptionally with the I/O error (e.g. HttpTimeoutException).
+     */
+    public CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        return send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Send and hand the body over as a stream to parse while it arrives. The future (and
+     * the latency sample) completes with the headers; reads after the body deadline fail.
+     */
+    public CompletableFuture<HttpResponse<InputStream>> stream(HttpRequest request) {
+        return send(request, info -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(), DeadlineInputStream::new));
+    }
+
+    /**
+     * Send with a custom body handler. Handlers that complete with the headers, like
+     * ofInputStream, get no deadline on the body; use stream() for that.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        Host host = hosts.computeIfAbsent(request.uri().getHost(), Host::new);
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        host.submit(() -> {
+            long start = System.nanoTime();
+            CompletableFuture<HttpResponse<T>> sent;
+            try {
+                sent = client.sendAsync(request, handler);
+            } catch (RuntimeException e) {
+                // e.g. the client is shut down: never sent, so give the slot back here
+                host.release();
+                record(host.name, null, e, System.nanoTime() - start);
+                result.completeExceptionally(e);
+                return;
+            }
+            long deadlineMs = request.timeout().orElse(requestTimeout).toMillis() + bodyTimeoutMs;
+            AtomicBoolean timedOut = new AtomicBoolean();
+            ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+                // cancel(true) aborts the exchange, which also frees its connection
+                if (timedOut.compareAndSet(false, true)) sent.cancel(true);
+            }, deadlineMs, TimeUnit.MILLISECONDS);
+            sent.whenComplete((response, error) -> {
+                deadline.cancel(false);
+                Throwable failure = error != null && timedOut.get()
+                        ? new HttpTimeoutException("no complete response from " + host.name + " within " + deadlineMs + "ms")
+                        : error;
+                host.release();
+                record(host.name, response, failure, System.nanoTime() - start);
+                if (failure != null) result.completeExceptionally(failure);
+                else result.complete(response);
+            });
+        });
+        return result;
+    }
+
+    private void record(String host, HttpResponse<?> response, Throwable error, long nanos) {
+        MeterRegistry r = registry;
+        if (r == null) return;
+        Timer.builder("http.client.outbound")
+                .tag("host", host)
+                .tag("status", error != null ? "IO_ERROR" : String.valueOf(response.statusCode()))
+                .publishPercentileHistogram()
+                .register(r)
+                .record(Duration.ofNanos(nanos));
+    }
+
+    /**
+     * Closes itself bodyTimeoutMs after the headers, which unblocks a read waiting on a
+     * stalled upstream; from then on reads throw HttpTimeoutException.
+     */
+    private final class DeadlineInputStream extends FilterInputStream {
+        private final ScheduledFuture<?> deadline;
+        private volatile boolean expired;
+
+        DeadlineInputStream(InputStream in) {
+            super(in);
+            this.deadline = deadlines.schedule(this::expire, bodyTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void expire() {
+            expired = true;
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // nothing left to read from it either way
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                check();
+                return in.read();
+            } catch (IOException e) {
+                throw timeoutOr(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                check();
+                return in.read(b, off, len);
+            } catch (IOException e) {
+                throw timeoutOr(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            deadline.cancel(false);
+            in.close();
+        }
+
+        private void check() throws IOException {
+            if (expired) throw new IOException("closed");
+        }
+
+        private IOException timeoutOr(IOException e) {
+            return expired ? new HttpTimeoutException("body not received within " + bodyTimeoutMs + "ms") : e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.shutdownNow();
+        executor.shutdownNow();
+        deadlines.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("http.client.outbound.queued", hosts,
+                        h -> h.values().stream().mapToInt(Host::queued).sum())
+                .description("Outbound requests waiting for a per-host slot")
+                .register(registry);
+    }
+}
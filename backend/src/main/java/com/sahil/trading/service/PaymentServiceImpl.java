@@ -14,6 +14,7 @@ import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.checkout.SessionCreateParams;
+import jakarta.annotation.PostConstruct;
 import netscape.javascript.JSObject;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,6 +38,20 @@ public class PaymentServiceImpl implements PaymentService {
     @Value("${razorpay.api.secret}")
     private String apiSecretKey;
 
+    @Value("${stripe.connect-timeout-ms:3000}")
+    private int stripeConnectTimeoutMs;
+
+    @Value("${stripe.read-timeout-ms:20000}")
+    private int stripeReadTimeoutMs;
+
+    // Stripe's client is static and blocking, so bound how long a checkout can hold a request thread
+    @PostConstruct
+    public void configureStripe() {
+        Stripe.setConnectTimeout(stripeConnectTimeoutMs);
+        Stripe.setReadTimeout(stripeReadTimeoutMs);
+        Stripe.setMaxNetworkRetries(1);
+    }
+
     @Override
     public PaymentOrder createOrder(User user, Long amount, PaymentMethod paymentMethod) {
         PaymentOrder paymentOrder = new PaymentOrder();
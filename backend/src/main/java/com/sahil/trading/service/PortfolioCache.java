@@ -0,0 +1,225 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.CoinRepository;
+import com.sahil.trading.utils.AfterTransaction;
+import com.sahil.trading.utils.BoundedCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Each user's assets keyed by coin id, so trades and /api/assets read them from memory.
+ *
+ * - loaded with one findByUserId on a user's first read, then kept in a bounded LRU;
+ *   idle users expire after portfolio.cache.ttl-ms
+ * - AssetService writes through: the new row is applied once the transaction commits;
+ *   a rollback (or an unknown outcome) drops the user instead, so the next read
+ *   reloads what the database really holds
+ * - until then the writing transaction sees its own writes over the cached map, so
+ *   the second order of an OrderPipeline batch builds on the first one
+ * - only the coin id, quantity and buy price are kept; each read attaches the coin as
+ *   the latest market snapshot has it (or as stored, for coins outside the snapshot),
+ *   so prices are never older than the last poll
+ * - values are immutable maps of detached copies; callers must not modify them
+ */
+@Component
+public class PortfolioCache implements MeterBinder {
+
+    @Autowired
+    private AssetRepository assetRepository;
+
+    @Autowired
+    private CoinRepository coinRepository;
+
+    @Value("${portfolio.cache.ttl-ms:3600000}")
+    private long ttlMs = 3_600_000;
+
+    private final BoundedCache<Long, Map<String, Asset>> users;
+    // per user, bumped by every write to that user; a load that raced with one is not
+    // cached. One entry per user who has traded since startup.
+    private final Map<Long, Long> writes = new ConcurrentHashMap<>();
+    // coins of the latest market snapshot by id; shared, never modified
+    private volatile Map<String, Coin> market = Map.of();
+
+    public PortfolioCache(@Value("${portfolio.cache.max-assets:200000}") long maxAssets) {
+        this.users = new BoundedCache<>(maxAssets, (userId, assets) -> 1 + assets.size());
+    }
+
+    public Map<String, Asset> assets(Long userId) {
+        Map<String, Asset> merged = new LinkedHashMap<>(committed(userId));
+        Map<String, Asset> mine = pending(userId, false);
+        if (mine != null) {
+            mine.forEach((coinId, asset) -> {
+                if (asset == null) merged.remove(coinId);
+                else merged.put(coinId, asset);
+            });
+        }
+        Map<String, Coin> coins = coins(merged.keySet());
+        merged.replaceAll((coinId, asset) -> withCoin(asset, coins.get(coinId)));
+        return Collections.unmodifiableMap(merged);
+    }
+
+    public Asset find(Long userId, String coinId) {
+        Map<String, Asset> mine = pending(userId, false);
+        Asset asset = mine != null && mine.containsKey(coinId) ? mine.get(coinId) : committed(userId).get(coinId);
+        return asset == null ? null : withCoin(asset, coins(List.of(coinId)).get(coinId));
+    }
+
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        Map<String, Coin> byId = new HashMap<>();
+        for (Coin c : event.getSnapshot().getCoins()) byId.put(c.getId(), c);
+        market = byId;
+    }
+
+    public void saved(Asset asset) {
+        Long userId = asset.getUser().getId();
+        Asset copy = held(asset);
+        Map<String, Asset> mine = pending(userId, true);
+        if (mine != null) mine.put(copy.getCoin().getId(), copy);
+        AfterTransaction.run(() -> patch(userId, copy.getCoin().getId(), copy), () -> invalidate(userId));
+    }
+
+    public void deleted(Asset asset) {
+        Long userId = asset.getUser().getId();
+        String coinId = asset.getCoin().getId();
+        Map<String, Asset> mine = pending(userId, true);
+        if (mine != null) mine.put(coinId, null);
+        AfterTransaction.run(() -> patch(userId, coinId, null), () -> invalidate(userId));
+    }
+
+    private Map<String, Asset> committed(Long userId) {
+        Map<String, Asset> assets = users.get(userId);
+        if (assets != null) return assets;
+
+        Long seen = writes.get(userId);
+        Map<String, Asset> loaded = new LinkedHashMap<>();
+        for (Asset a : assetRepository.findByUserId(userId)) loaded.put(a.getCoin().getId(), held(a));
+        assets = Collections.unmodifiableMap(loaded);
+        synchronized (users) {
+            if (Objects.equals(writes.get(userId), seen)) users.put(userId, assets, ttlMs);
+        }
+        return assets;
+    }
+
+    public void invalidate(Long userId) {
+        synchronized (users) {
+            writes.merge(userId, 1L, Long::sum);
+            users.invalidate(userId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.cache.evict-interval-ms:60000}")
+    public void evictExpired() {
+        users.evictExpired();
+    }
+
+    private void patch(Long userId, String coinId, Asset asset) {
+        // users not loaded are left alone; they load fresh on their next read
+        synchronized (users) {
+            writes.merge(userId, 1L, Long::sum);
+            Map<String, Asset> current = users.get(userId);
+            if (current == null) return;
+            Map<String, Asset> next = new LinkedHashMap<>(current);
+            if (asset == null) next.remove(coinId);
+            else next.put(coinId, asset);
+            users.put(userId, Collections.unmodifiableMap(next), ttlMs);
+        }
+    }
+
+    /**
+     * Writes made by the current transaction, by coin id (null once deleted). Bound to
+     * the transaction on its first write and dropped when it completes; null outside
+     * a transaction or before any write when create is false.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Asset> pending(Long userId, boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return null;
+        Map<Long, Map<String, Asset>> byUser = (Map<Long, Map<String, Asset>>) TransactionSynchronizationManager.getResource(this);
+        if (byUser == null) {
+            if (!create) return null;
+            byUser = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, byUser);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PortfolioCache.this);
+                }
+            });
+        }
+        return create ? byUser.computeIfAbsent(userId, id -> new HashMap<>()) : byUser.get(userId);
+    }
+
+    // current coins by id: the snapshot's, then one query for any it does not carry
+    private Map<String, Coin> coins(Collection<String> coinIds) {
+        Map<String, Coin> snapshot = market;
+        Map<String, Coin> coins = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : coinIds) {
+            Coin c = snapshot.get(id);
+            if (c != null) coins.put(id, c);
+            else missing.add(id);
+        }
+        if (!missing.isEmpty()) {
+            for (Coin c : coinRepository.findAllById(missing)) coins.put(c.getId(), c);
+        }
+        return coins;
+    }
+
+    private static Asset withCoin(Asset a, Coin coin) {
+        if (coin == null) return a;
+        Asset c = copy(a);
+        c.setCoin(coin);
+        return c;
+    }
+
+    // what is cached: the coin by id only, so no price outlives the snapshot it came from
+    private static Asset held(Asset a) {
+        Coin coin = new Coin();
+        coin.setId(a.getCoin().getId());
+        Asset c = copy(a);
+        c.setCoin(coin);
+        return c;
+    }
+
+    static Asset copy(Asset a) {
+        Asset c = new Asset();
+        c.setId(a.getId());
+        c.setQuantity(a.getQuantity());
+        c.setBuyPrice(a.getBuyPrice());
+        c.setCoin(a.getCoin());
+        c.setUser(a.getUser());
+        return c;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("portfolio.cache.users", this, PortfolioCache::size)
+                .description("Users whose assets are cached in memory")
+                .register(registry);
+    }
+}
@@ -0,0 +1,14 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.response.PortfolioHistoryPoint;
+
+import java.util.List;
+
+public interface PortfolioHistoryService {
+
+    // one point per day for the last `days` days, oldest first, ending with a live point for today
+    List<PortfolioHistoryPoint> history(Long userId, int days);
+
+    // store the closing value of every day since the last stored one; returns rows written
+    int takeSnapshots();
+}
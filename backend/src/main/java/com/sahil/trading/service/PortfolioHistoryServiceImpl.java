@@ -0,0 +1,171 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.PortfolioValueSnapshot;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.PortfolioValueSnapshotRepository;
+import com.sahil.trading.repository.UserRepository;
+import com.sahil.trading.response.PortfolioHistoryPoint;
+import com.sahil.trading.response.PortfolioView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Daily portfolio value series, one portfolio_value_snapshots row per user and UTC day.
+ *
+ * The nightly run adds, per user, the days after that user's newest row; rows already
+ * written are never recomputed. A run that stops part-way loses nothing: the next one
+ * finds the same days missing. Users are paged by id, their newest days and assets
+ * loaded one batch at a time, so memory is bounded by the batch size. Users holding
+ * nothing get 0-value rows, so their series has no gaps.
+ * - the day that just closed is valued at the live prices (the run starts minutes after
+ *   midnight UTC)
+ * - days missed while the job was down, at most portfolio.snapshot.backfill-days, are
+ *   valued at that day's closing price from MarketChartStore. Holdings are the current
+ *   ones, since past holdings are not stored
+ */
+@Service
+public class PortfolioHistoryServiceImpl implements PortfolioHistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioHistoryServiceImpl.class);
+
+    @Autowired
+    private PortfolioValueSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private AssetRepository assetRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PortfolioValuation portfolioValuation;
+
+    @Autowired
+    private MarketChartStore marketChartStore;
+
+    @Value("${portfolio.snapshot.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${portfolio.snapshot.backfill-days:7}")
+    private int backfillDays = 7;
+
+    @Value("${portfolio.history.max-days:3650}")
+    private int maxDays = 3650;
+
+    @Override
+    public List<PortfolioHistoryPoint> history(Long userId, int days) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        int span = Math.min(Math.max(1, days), maxDays);
+        List<PortfolioHistoryPoint> points = new ArrayList<>(
+                snapshotRepository.findSeries(userId, today.minusDays(span), today.minusDays(1)));
+
+        PortfolioView now = portfolioValuation.value(userId);
+        points.add(new PortfolioHistoryPoint(today, now.getTotalValue(), now.getTotalCost()));
+        return points;
+    }
+
+    @Scheduled(cron = "${portfolio.snapshot.cron:0 5 0 * * *}", zone = "UTC")
+    public void nightly() {
+        takeSnapshots();
+    }
+
+    @Override
+    public synchronized int takeSnapshots() {
+        long started = System.nanoTime();
+        LocalDate yesterday = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+        LocalDate earliest = yesterday.minusDays(Math.max(1, backfillDays) - 1L);
+        List<LocalDate> days = earliest.datesUntil(yesterday.plusDays(1)).toList();
+        // coinId -> closing price per entry of days, filled on first use
+        Map<String, Double[]> closes = new HashMap<>();
+        int written = 0;
+        long after = 0;
+
+        while (true) {
+            List<Long> userIds = userRepository.findIdsAfter(after, Limit.of(batchSize));
+            if (userIds.isEmpty()) break;
+            after = userIds.get(userIds.size() - 1);
+
+            Map<Long, LocalDate> lastDays = new HashMap<>();
+            for (Object[] r : snapshotRepository.lastDays(userIds)) lastDays.put((Long) r[0], (LocalDate) r[1]);
+            Map<Long, List<Asset>> byUser = new HashMap<>();
+            for (Asset a : assetRepository.findByUserIdIn(userIds)) {
+                byUser.computeIfAbsent(a.getUser().getId(), id -> new ArrayList<>()).add(a);
+            }
+
+            List<PortfolioValueSnapshot> rows = new ArrayList<>();
+            for (Long userId : userIds) {
+                // a user's first row is yesterday's; after that, every day since their newest
+                LocalDate last = lastDays.get(userId);
+                LocalDate first = last == null ? yesterday : last.plusDays(1);
+                int from = first.isBefore(earliest) ? 0 : (int) (first.toEpochDay() - earliest.toEpochDay());
+
+                // no holdings: 0-value rows, so the chart has no gaps
+                List<Asset> assets = byUser.getOrDefault(userId, List.of());
+                for (int d = from; d < days.size(); d++) {
+                    double value = 0, cost = 0;
+                    for (Asset a : assets) {
+                        double price = close(closes, a.getCoin().getId(), days, d);
+                        if (Double.isNaN(price) && a.getCoin().getCurrentPrice() != null) price = a.getCoin().getCurrentPrice();
+                        if (Double.isNaN(price)) price = a.getBuyPrice();
+                        value += a.getQuantity() * price;
+                        cost += a.getQuantity() * a.getBuyPrice();
+                    }
+                    PortfolioValueSnapshot row = new PortfolioValueSnapshot();
+                    row.setUserId(userId);
+                    row.setDay(days.get(d));
+                    row.setValue(value);
+                    row.setCost(cost);
+                    rows.add(row);
+                }
+            }
+            if (rows.isEmpty()) continue;
+            try {
+                snapshotRepository.saveAll(rows);
+                written += rows.size();
+            } catch (DataIntegrityViolationException e) {
+                // another instance wrote these users first; the next batch is independent
+                log.warn("[PortfolioHistory] users {}..{} already snapshotted elsewhere: {}",
+                        userIds.get(0), after, e.getMessage());
+            }
+        }
+
+        log.info("[PortfolioHistory] snapshotted up to {}: {} rows in {} ms", yesterday, written,
+                (System.nanoTime() - started) / 1_000_000);
+        return written;
+    }
+
+    // closing price of the coin on days[d]; only backfilled days ask MarketChartStore
+    private double close(Map<String, Double[]> closes, String coinId, List<LocalDate> days, int d) {
+        Double[] prices = closes.computeIfAbsent(coinId, id -> new Double[days.size()]);
+        if (prices[d] != null) return prices[d];
+
+        double live = portfolioValuation.price(coinId);
+        double price = live;
+        if (d < days.size() - 1) {
+            long close = days.get(d).plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() - 1;
+            try {
+                price = marketChartStore.priceAt(coinId, close);
+            } catch (Exception e) {
+                log.debug("[PortfolioHistory] no price history for {}: {}", coinId, e.getMessage());
+                price = Double.NaN;
+            }
+            if (Double.isNaN(price)) price = live;
+        }
+        prices[d] = price;
+        return price;
+    }
+}
@@ -0,0 +1,136 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.response.PortfolioView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Values portfolios against the market snapshot without touching the database or
+ * CoinGecko per request.
+ *
+ * - every coin gets a fixed slot; each snapshot publishes new price and 24h-change
+ *   arrays indexed by slot (copy on write, readers never lock)
+ * - holdings are read from PortfolioCache, which already follows every committed
+ *   trade, so there is no second per-user copy to keep in step
+ * - a read walks the holdings once: O(assets), one slot lookup per asset
+ */
+@Component
+public class PortfolioValuation {
+
+    // latest known prices by slot; NaN for coins never seen in a snapshot
+    private record Prices(double[] price, double[] change24hPercent, long fetchedAt) {
+        double price(int slot) {
+            return slot < price.length ? price[slot] : Double.NaN;
+        }
+
+        double change(int slot) {
+            return slot < change24hPercent.length ? change24hPercent[slot] : Double.NaN;
+        }
+    }
+
+    @Autowired
+    private PortfolioCache portfolioCache;
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private volatile Prices prices = new Prices(new double[0], new double[0], 0);
+
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        List<Coin> coins = event.getSnapshot().getCoins();
+        for (Coin c : coins) slot(c.getId());
+
+        // a coin missing from this poll keeps its last known price
+        Prices before = prices;
+        int n = nextSlot.get();
+        double[] price = Arrays.copyOf(before.price(), n);
+        double[] change = Arrays.copyOf(before.change24hPercent(), n);
+        Arrays.fill(price, before.price().length, n, Double.NaN);
+        Arrays.fill(change, before.change24hPercent().length, n, Double.NaN);
+        for (Coin c : coins) {
+            int s = slots.get(c.getId());
+            if (c.getCurrentPrice() != null) price[s] = c.getCurrentPrice();
+            if (c.getPriceChangePercentage24h() != null) change[s] = c.getPriceChangePercentage24h();
+        }
+        prices = new Prices(price, change, event.getSnapshot().getFetchedAt());
+    }
+
+    // latest known price of the coin, NaN if no snapshot has carried it
+    public double price(String coinId) {
+        Integer slot = slots.get(coinId);
+        return slot == null ? Double.NaN : prices.price(slot);
+    }
+
+    public PortfolioView value(Long userId) {
+        Collection<Asset> assets = portfolioCache.assets(userId).values();
+        Prices p = prices;
+
+        PortfolioView view = new PortfolioView();
+        view.setPricedAt(p.fetchedAt());
+        double totalValue = 0, totalCost = 0, valueDayAgo = 0;
+        double[] values = new double[assets.size()];
+
+        int i = 0;
+        for (Asset a : assets) {
+            Coin coin = a.getCoin();
+            int slot = slot(coin.getId());
+            double price = p.price(slot);
+            if (Double.isNaN(price) && coin.getCurrentPrice() != null) price = coin.getCurrentPrice();
+            if (Double.isNaN(price)) price = a.getBuyPrice();
+            double value = a.getQuantity() * price;
+            double cost = a.getQuantity() * a.getBuyPrice();
+            double pct = p.change(slot);
+            double dayAgo = Double.isNaN(pct) ? value : value / (1 + pct / 100);
+
+            PortfolioView.Position pos = new PortfolioView.Position();
+            pos.setCoinId(coin.getId());
+            pos.setSymbol(coin.getSymbol());
+            pos.setName(coin.getName());
+            pos.setImage(coin.getImage());
+            pos.setQuantity(a.getQuantity());
+            pos.setBuyPrice(a.getBuyPrice());
+            pos.setPrice(price);
+            pos.setValue(value);
+            pos.setCost(cost);
+            pos.setUnrealizedPnl(value - cost);
+            pos.setUnrealizedPnlPercent(percent(value - cost, cost));
+            pos.setChange24h(value - dayAgo);
+            pos.setChange24hPercent(Double.isNaN(pct) ? 0 : pct);
+            view.getPositions().add(pos);
+
+            values[i++] = value;
+            totalValue += value;
+            totalCost += cost;
+            valueDayAgo += dayAgo;
+        }
+        for (int j = 0; j < values.length; j++) {
+            view.getPositions().get(j).setAllocationPercent(percent(values[j], totalValue));
+        }
+
+        view.setTotalValue(totalValue);
+        view.setTotalCost(totalCost);
+        view.setUnrealizedPnl(totalValue - totalCost);
+        view.setUnrealizedPnlPercent(percent(totalValue - totalCost, totalCost));
+        view.setChange24h(totalValue - valueDayAgo);
+        view.setChange24hPercent(percent(totalValue - valueDayAgo, valueDayAgo));
+        return view;
+    }
+
+    private int slot(String coinId) {
+        return slots.computeIfAbsent(coinId, id -> nextSlot.getAndIncrement());
+    }
+
+    private static double percent(double part, double whole) {
+        return whole == 0 ? 0 : part / whole * 100;
+    }
+}
@@ -0,0 +1,239 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.entity.Coin;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent price feed behind /coins/stream, fed by the market snapshot.
+ *
+ * - a client subscribes to a set of coin ids; its first "prices" event carries every
+ *   field of those coins
+ * - after each market poll it gets one "prices" event holding only the fields that
+ *   changed, keyed by coin id (clients merge them into what they have)
+ * - updates are conflated per client: while a slow client is still being written to,
+ *   newer deltas merge into its pending batch, so it catches up with the latest
+ *   values instead of a backlog
+ *
+ * Connections use servlet async (no request thread is held) and writes run on virtual
+ * threads, one at a time per client; heartbeat pings go through the same sender.
+ */
+@Component
+public class PriceFeed implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceFeed.class);
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Set<String> coinIds;
+        // coinId -> changed fields not yet written
+        final Map<String, Map<String, Object>> pending = new LinkedHashMap<>();
+        // a ping is due; dropped when a prices event goes out first
+        boolean pingDue;
+        final AtomicBoolean sending = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, Set<String> coinIds) {
+            this.emitter = emitter;
+            this.coinIds = coinIds;
+        }
+
+        void offer(String coinId, Map<String, Object> delta) {
+            synchronized (pending) {
+                pending.computeIfAbsent(coinId, id -> new LinkedHashMap<>()).putAll(delta);
+            }
+            if (sending.compareAndSet(false, true)) sender.execute(this::drain);
+        }
+
+        void ping() {
+            synchronized (pending) {
+                pingDue = true;
+            }
+            if (sending.compareAndSet(false, true)) sender.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                Map<String, Map<String, Object>> batch;
+                boolean ping;
+                synchronized (pending) {
+                    if (pending.isEmpty() && !pingDue) {
+                        sending.set(false);
+                        return;
+                    }
+                    batch = new LinkedHashMap<>(pending);
+                    pending.clear();
+                    ping = batch.isEmpty();
+                    pingDue = false;
+                }
+                if (!send(ping ? null : batch)) return;
+            }
+        }
+
+        // data null sends a ping comment
+        boolean send(Object data) {
+            try {
+                emitter.send(data == null
+                        ? SseEmitter.event().comment("ping")
+                        : SseEmitter.event().name("prices").data(objectMapper.writeValueAsString(data), MediaType.APPLICATION_JSON));
+                return true;
+            } catch (Exception e) {
+                // client went away
+                emitter.completeWithError(e);
+                remove(this);
+                return false;
+            }
+        }
+    }
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${market.stream.max-clients:20000}")
+    private int maxClients = 20_000;
+
+    @Value("${market.stream.max-ids:100}")
+    private int maxIds = 100;
+
+    // clients reconnect on their own (EventSource does), so connections are recycled
+    @Value("${market.stream.timeout-ms:1800000}")
+    private long timeoutMs = 1_800_000;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // taken before a subscriber is added, so the max-clients check and the add are one step
+    private final AtomicInteger slots = new AtomicInteger();
+    private final Map<String, Set<Subscriber>> byCoin = new ConcurrentHashMap<>();
+    // last published fields per coin, to compute deltas
+    private final Map<String, Map<String, Object>> last = new HashMap<>();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Open a stream for the given coin ids. Throws IllegalStateException when the
+     * server is at market.stream.max-clients.
+     */
+    public SseEmitter subscribe(Collection<String> ids) {
+        Set<String> coinIds = new LinkedHashSet<>();
+        for (String id : ids) {
+            String trimmed = id.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty() && coinIds.size() < maxIds) coinIds.add(trimmed);
+        }
+        if (coinIds.isEmpty()) throw new IllegalArgumentException("ids is required");
+        if (slots.incrementAndGet() > maxClients) {
+            slots.decrementAndGet();
+            throw new IllegalStateException("price stream is at capacity");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber sub = new Subscriber(emitter, coinIds);
+        emitter.onCompletion(() -> remove(sub));
+        emitter.onTimeout(() -> remove(sub));
+        emitter.onError(e -> remove(sub));
+
+        subscribers.add(sub);
+        // under the same lock as onSnapshot, so no delta is missed or overwritten by older values
+        synchronized (last) {
+            for (String id : coinIds) {
+                Map<String, Object> current = last.get(id);
+                if (current != null) sub.offer(id, current);
+                byCoin.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(sub);
+            }
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onSnapshot(MarketSnapshotEvent event) {
+        List<Coin> coins = event.getSnapshot().getCoins();
+        synchronized (last) {
+            for (Coin c : coins) {
+                Map<String, Object> current = fields(c);
+                Map<String, Object> delta = diff(last.put(c.getId(), current), current);
+                if (delta.isEmpty()) continue;
+
+                Set<Subscriber> subs = byCoin.get(c.getId());
+                if (subs == null) continue;
+                for (Subscriber sub : subs) sub.offer(c.getId(), delta);
+            }
+        }
+    }
+
+    // keeps idle connections from being cut by proxies and finds dead ones
+    @Scheduled(fixedDelayString = "${market.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber sub : subscribers) sub.ping();
+    }
+
+    public int clientCount() {
+        return subscribers.size();
+    }
+
+    private void remove(Subscriber sub) {
+        if (!subscribers.remove(sub)) return;
+        slots.decrementAndGet();
+        log.debug("[PriceFeed] client left, {} connected", subscribers.size());
+        for (String id : sub.coinIds) {
+            Set<Subscriber> subs = byCoin.get(id);
+            if (subs != null) subs.remove(sub);
+        }
+    }
+
+    private static Map<String, Object> fields(Coin c) {
+        Map<String, Object> f = new LinkedHashMap<>();
+        f.put("current_price", c.getCurrentPrice());
+        f.put("price_change_percentage_24h", c.getPriceChangePercentage24h());
+        f.put("high_24h", c.getHigh24h());
+        f.put("low_24h", c.getLow24h());
+        f.put("market_cap", c.getMarketCap());
+        f.put("total_volume", c.getTotalVolume());
+        f.put("last_updated", c.getLastUpdated());
+        return f;
+    }
+
+    private static Map<String, Object> diff(Map<String, Object> before, Map<String, Object> after) {
+        if (before == null) return after;
+        Map<String, Object> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : after.entrySet()) {
+            if (!Objects.equals(before.get(e.getKey()), e.getValue())) delta.put(e.getKey(), e.getValue());
+        }
+        return delta;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber sub : subscribers) sub.emitter.complete();
+        sender.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("market.stream.clients", this, PriceFeed::clientCount)
+                .description("Open /coins/stream connections")
+                .register(registry);
+    }
+}
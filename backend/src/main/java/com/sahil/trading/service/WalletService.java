@@ -3,8 +3,9 @@ package com.sahil.trading.service;
 import com.sahil.trading.entity.Order;
 import com.sahil.trading.entity.User;
 import com.sahil.trading.entity.Wallet;
-import com.sahil.trading.entity.WalletTransaction;
+import com.sahil.trading.response.WalletTransactionView;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 public interface WalletService {
@@ -13,8 +14,11 @@ public interface WalletService {
     Wallet addBalance(Wallet wallet, Long money);
 
     Wallet findWalletById(Long id) throws Exception;
-    List<WalletTransaction> getWalletTransactions(User user, int page, int size) throws Exception;
-    Wallet walletToWalletTransfer(User sender, Wallet receiverWallet,Long amount) throws Exception;
+    List<WalletTransactionView> getWalletTransactions(User user, int page, int size) throws Exception;
+
+    // newest first, starting after the cursor of the previous page (null for the first)
+    List<WalletTransactionView> getWalletTransactionsAfter(User user, String cursor, int size) throws Exception;
+    Wallet walletToWalletTransfer(User sender, Wallet receiverWallet, BigDecimal amount) throws Exception;
 
     Wallet payOrderPayment(Order order, User user) throws Exception;
 
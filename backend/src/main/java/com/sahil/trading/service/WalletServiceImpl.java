@@ -1,36 +1,99 @@
 package com.sahil.trading.service;
 
+import com.sahil.trading.domain.LedgerAccount;
 import com.sahil.trading.domain.OrderType;
+import com.sahil.trading.domain.WalletTransactionType;
 import com.sahil.trading.entity.Order;
 import com.sahil.trading.entity.User;
 import com.sahil.trading.entity.Wallet;
 import com.sahil.trading.entity.WalletTransaction;
 import com.sahil.trading.repository.WalletRepository;
 import com.sahil.trading.repository.WalletTransactionRepository;
-import jakarta.transaction.Transactional;
+import com.sahil.trading.response.WalletTransactionView;
+import com.sahil.trading.service.LedgerService.Posting;
+import com.sahil.trading.utils.StripedLock;
+import com.sahil.trading.utils.TransactionCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Balances change through single conditional UPDATE statements (WalletRepository.debit
+ * and credit): the database applies them to the current value, so there is no
+ * read-modify-write and no update to lose, and a debit that would go negative simply
+ * updates no row. On top of that:
+ * - an in-process striped lock per wallet id, so concurrent requests for one wallet
+ *   queue here instead of piling up on the same database row (a transfer takes both
+ *   stripes in a fixed order, so opposite transfers cannot deadlock in one instance).
+ *   Not taken inside a caller's transaction: that one keeps the row locks until it
+ *   commits, after the stripe would be released
+ * - the updates bump Wallet.version, so an entity-based write (saveWallet) made from
+ *   a stale copy fails instead of overwriting them
+ *
+ * A lock failure (deadlock, lock timeout, optimistic conflict) is retried up to
+ * wallet.update.max-attempts times, unless the caller's transaction is already
+ * running; then it propagates and that transaction rolls back.
+ */
 @Service
 public class WalletServiceImpl implements WalletService {
 
     private static final Logger log = LoggerFactory.getLogger(WalletServiceImpl.class);
 
+    interface WalletUpdate<T> {
+        T run() throws Exception;
+    }
+
+    // carries a checked exception out of the transaction callback, after rolling back
+    private static final class UpdateFailed extends RuntimeException {
+        UpdateFailed(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
     @Autowired
     private WalletRepository walletRepository;
 
     @Autowired
     private WalletTransactionRepository walletTransactionRepository;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${wallet.transactions.max-page-size:500}")
+    private int maxPageSize = 500;
+
+    @Value("${wallet.update.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    private final StripedLock locks;
+
+    public WalletServiceImpl(@Value("${wallet.lock.stripes:256}") int stripes) {
+        this.locks = new StripedLock(stripes);
+    }
+
     @Override
     public Wallet getUserWallet(User user) {
         Wallet wallet = walletRepository.findByUserId(user.getId());
@@ -47,25 +110,33 @@ public class WalletServiceImpl implements WalletService {
      * Add money to wallet and save a deposit transaction.
      */
     @Override
-    @Transactional
     public Wallet addBalance(Wallet wallet, Long money) {
-        if (wallet.getBalance() == null) wallet.setBalance(BigDecimal.ZERO);
+        try {
+            return update(() -> {
+                credit(wallet.getId(), BigDecimal.valueOf(money));
+                Wallet saved = current(wallet.getId());
 
-        BigDecimal newBalance = wallet.getBalance().add(BigDecimal.valueOf(money));
-        wallet.setBalance(newBalance);
-        Wallet saved = walletRepository.save(wallet);
+                ledgerService.post(WalletTransactionType.ADD_MONEY, null,
+                        Posting.wallet(wallet.getId(), BigDecimal.valueOf(money)),
+                        Posting.of(LedgerAccount.CASH, BigDecimal.valueOf(money).negate()));
 
-        // record transaction (credit)
-        WalletTransaction tx = new WalletTransaction();
-        tx.setWallet(saved);
-        tx.setAmount(money); // positive for deposit
-        tx.setType("DEPOSIT");
-        tx.setStatus("SUCCESS");
-        tx.setReference(null);
-        walletTransactionRepository.save(tx);
+                // record transaction (credit)
+                WalletTransaction tx = new WalletTransaction();
+                tx.setWallet(saved);
+                tx.setAmount(BigDecimal.valueOf(money)); // positive for deposit
+                tx.setType("DEPOSIT");
+                tx.setStatus("SUCCESS");
+                tx.setReference(null);
+                walletTransactionRepository.save(tx);
 
-        log.info("[WalletService] deposit saved tx for walletId={} amount={}", saved.getId(), tx.getAmount());
-        return saved;
+                log.info("[WalletService] deposit saved tx for walletId={} amount={}", saved.getId(), tx.getAmount());
+                return saved;
+            }, wallet.getId());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
     }
 
     @Override
@@ -87,59 +158,77 @@ public class WalletServiceImpl implements WalletService {
     }
 
     @Override
-    @Transactional
     public void debitWallet(Wallet wallet, Long amount) throws Exception {
         if (wallet == null) throw new Exception("Wallet is null");
 
-        if (wallet.getBalance() == null) wallet.setBalance(BigDecimal.ZERO);
-
-        BigDecimal amt = BigDecimal.valueOf(amount);
+        update(() -> {
+            debit(wallet.getId(), BigDecimal.valueOf(amount), "Insufficient balance");
+            return null;
+        }, wallet.getId());
+    }
 
-        if (wallet.getBalance().compareTo(amt) < 0) {
-            throw new Exception("Insufficient balance");
+    /**
+     * Return one OFFSET page of wallet transactions for the user's wallet. The database
+     * still walks every skipped row, so deep pages get slow; prefer the cursor variant.
+     */
+    @Override
+    public List<WalletTransactionView> getWalletTransactions(User user, int page, int size) throws Exception {
+        Wallet wallet = getUserWallet(user);
+        if (wallet == null) {
+            throw new Exception("Wallet not found for user");
         }
-        BigDecimal newBalance = wallet.getBalance().subtract(amt);
-        wallet.setBalance(newBalance);
-        walletRepository.save(wallet);
+        return walletTransactionRepository.findViews(wallet.getId(), PageRequest.of(Math.max(0, page), pageSize(size)));
     }
 
     /**
-     * Return paginated wallet transactions for the user's wallet.
+     * Return the wallet transactions older than the cursor, newest first. Each page is
+     * an index range scan from the cursor row, so page 10,000 costs what page 1 does.
      */
     @Override
-    public List<WalletTransaction> getWalletTransactions(User user, int page, int size) throws Exception {
+    public List<WalletTransactionView> getWalletTransactionsAfter(User user, String cursor, int size) throws Exception {
         Wallet wallet = getUserWallet(user);
         if (wallet == null) {
             throw new Exception("Wallet not found for user");
         }
-        PageRequest pageable = PageRequest.of(Math.max(0, page), Math.max(1, size), Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<WalletTransaction> pageRes = walletTransactionRepository.findByWalletId(wallet.getId(), pageable);
-        return pageRes.getContent();
+        Limit limit = Limit.of(pageSize(size));
+        if (cursor == null || cursor.isBlank()) {
+            return walletTransactionRepository.findLatestViews(wallet.getId(), limit);
+        }
+        TransactionCursor after = TransactionCursor.decode(cursor);
+        return walletTransactionRepository.findViewsBefore(wallet.getId(), after.createdAt(), after.id(), limit);
+    }
+
+    private int pageSize(int size) {
+        return Math.min(Math.max(1, size), maxPageSize);
     }
 
     /**
      * Transfer money from sender to receiver. Saves both wallet updates and transaction rows.
      */
     @Override
-    @Transactional
-    public Wallet walletToWalletTransfer(User sender, Wallet receiverWallet, Long amount) throws Exception {
-        Wallet senderWallet = getUserWallet(sender);
-        if (senderWallet.getBalance().compareTo(BigDecimal.valueOf(amount)) < 0) {
-            throw new Exception("Insufficient balance....");
+    public Wallet walletToWalletTransfer(User sender, Wallet receiver, BigDecimal amount) throws Exception {
+        if (amount == null || amount.signum() <= 0) {
+            throw new Exception("amount should be > 0");
         }
+        Long senderId = getUserWallet(sender).getId();
+        Long receiverId = receiver.getId();
+        if (senderId.equals(receiverId)) {
+            throw new Exception("cannot transfer to the same wallet");
+        }
+        return update(() -> transfer(senderId, receiverId, amount), senderId, receiverId);
+    }
 
-        // debit sender
-        BigDecimal senderBalance = senderWallet.getBalance().subtract(BigDecimal.valueOf(amount));
-        senderWallet.setBalance(senderBalance);
-
-        // credit receiver (ensure not null)
-        if (receiverWallet.getBalance() == null) receiverWallet.setBalance(BigDecimal.ZERO);
-        BigDecimal receiverBalance = receiverWallet.getBalance().add(BigDecimal.valueOf(amount));
-        receiverWallet.setBalance(receiverBalance);
+    private Wallet transfer(Long senderId, Long receiverId, BigDecimal amount) throws Exception {
+        // debit first: when the balance is short nothing has been written yet.
+        // Both run in one transaction, so they commit together
+        debit(senderId, amount, "Insufficient balance....");
+        credit(receiverId, amount);
+        ledgerService.post(WalletTransactionType.WALLET_TRANSFER, null,
+                Posting.wallet(senderId, amount.negate()),
+                Posting.wallet(receiverId, amount));
 
-        // Save both (within @Transactional so will commit together)
-        walletRepository.save(senderWallet);
-        walletRepository.save(receiverWallet);
+        Wallet senderWallet = current(senderId);
+        Wallet receiverWallet = walletRepository.getReferenceById(receiverId);
 
         // record sender tx (debit)
         WalletTransaction debitTx = new WalletTransaction();
@@ -169,42 +258,93 @@ public class WalletServiceImpl implements WalletService {
      * Pay or credit order payment and record transaction.
      */
     @Override
-    @Transactional
     public Wallet payOrderPayment(Order order, User user) throws Exception {
-        Wallet wallet = getUserWallet(user);
-        if (wallet.getBalance() == null) wallet.setBalance(BigDecimal.ZERO);
+        Long walletId = getUserWallet(user).getId();
+        return update(() -> payOrder(walletId, order, user), walletId);
+    }
+
+    private Wallet payOrder(Long walletId, Order order, User user) throws Exception {
+        Wallet wallet = walletRepository.getReferenceById(walletId);
 
         if (order.getOrdertype().equals(OrderType.BUY)) {
-            // ensure sufficient funds
-            if (wallet.getBalance().compareTo(order.getPrice()) < 0) {
-                throw new Exception("Insufficient funds for this transaction");
-            }
-            BigDecimal newBalance = wallet.getBalance().subtract(order.getPrice());
-            wallet.setBalance(newBalance);
+            // fails without touching the balance when funds are short
+            debit(walletId, order.getPrice(), "Insufficient funds for this transaction");
+            ledgerService.post(WalletTransactionType.BUY_ASSET, String.valueOf(order.getId()),
+                    Posting.wallet(walletId, order.getPrice().negate()),
+                    Posting.of(LedgerAccount.TRADING, order.getPrice()));
 
             // record order payment transaction (debit)
             WalletTransaction tx = new WalletTransaction();
             tx.setWallet(wallet);
-            tx.setAmount(order.getPrice().longValue());
+            tx.setAmount(order.getPrice());
             tx.setType("ORDER_PAYMENT");
             tx.setStatus("SUCCESS");
             tx.setReference(String.valueOf(order.getId()));
             walletTransactionRepository.save(tx);
 
         } else {
-            BigDecimal newBalance = wallet.getBalance().add(order.getPrice());
-            wallet.setBalance(newBalance);
+            credit(walletId, order.getPrice());
+            ledgerService.post(WalletTransactionType.SELL_ASSET, String.valueOf(order.getId()),
+                    Posting.wallet(walletId, order.getPrice()),
+                    Posting.of(LedgerAccount.TRADING, order.getPrice().negate()));
 
             WalletTransaction tx = new WalletTransaction();
             tx.setWallet(wallet);
-            tx.setAmount(order.getPrice().longValue());
+            tx.setAmount(order.getPrice());
             tx.setType("ORDER_CREDIT");
             tx.setStatus("SUCCESS");
             tx.setReference(String.valueOf(order.getId()));
             walletTransactionRepository.save(tx);
         }
-        walletRepository.save(wallet);
         log.info("[WalletService] order payment handled for orderId={} userId={}", order.getId(), user.getId());
+        return current(walletId);
+    }
+
+    // ================= UPDATES =================
+
+    // callers are inside update()
+    private void debit(Long walletId, BigDecimal amount, String insufficient) throws Exception {
+        if (walletRepository.debit(walletId, amount) == 0) throw new Exception(insufficient);
+    }
+
+    private void credit(Long walletId, BigDecimal amount) throws Exception {
+        if (walletRepository.credit(walletId, amount) == 0) throw new Exception("wallet not found");
+    }
+
+    // the wallet as the UPDATEs left it, not a copy cached earlier in this transaction
+    private Wallet current(Long walletId) throws Exception {
+        Wallet wallet = walletRepository.findById(walletId).orElseThrow(() -> new Exception("wallet not found"));
+        entityManager.refresh(wallet);
         return wallet;
     }
+
+    private <T> T update(WalletUpdate<T> work, Long... walletIds) throws Exception {
+        long[] ids = Arrays.stream(walletIds).mapToLong(Long::longValue).toArray();
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // part of a bigger transaction (e.g. an OrderPipeline batch): a retry here could
+            // not undo what it already wrote, so a conflict rolls the whole thing back. No
+            // stripe either: the batch holds the row lock past this call, so a request
+            // holding the stripe while it waits for that row would stall both sides
+            return work.run();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try (StripedLock.Held held = locks.lock(ids)) {
+                return new TransactionTemplate(transactionManager).execute(status -> {
+                    try {
+                        return work.run();
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new UpdateFailed(e);
+                    }
+                });
+            } catch (UpdateFailed e) {
+                throw (Exception) e.getCause();
+            } catch (OptimisticLockingFailureException | PessimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) throw e;
+                log.debug("[WalletService] lock conflict on wallets {}, retry {}", Arrays.toString(walletIds), attempt);
+                Thread.sleep(ThreadLocalRandom.current().nextLong(5L << attempt));
+            }
+        }
+    }
 }
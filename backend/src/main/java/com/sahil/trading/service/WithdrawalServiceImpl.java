@@ -1,15 +1,16 @@
 // src/main/java/com/sahil/trading/service/WithdrawalServiceImpl.java
 package com.sahil.trading.service;
 
+import com.sahil.trading.domain.LedgerAccount;
 import com.sahil.trading.domain.WithdrawalStatus;
 import com.sahil.trading.domain.WalletTransactionType;
 import com.sahil.trading.entity.User;
 import com.sahil.trading.entity.Wallet;
 import com.sahil.trading.entity.WalletTransaction;
 import com.sahil.trading.entity.Withdrawal;
-import com.sahil.trading.repository.WalletRepository;
 import com.sahil.trading.repository.WithdrawalRepository;
 import com.sahil.trading.repository.WalletTransactionRepository;
+import com.sahil.trading.service.LedgerService.Posting;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,10 +31,10 @@ public class WithdrawalServiceImpl implements WithdrawalService {
     private WalletService walletService;
 
     @Autowired
-    private WalletRepository walletRepository;
+    private WalletTransactionRepository walletTransactionRepository;
 
     @Autowired
-    private WalletTransactionRepository walletTransactionRepository;
+    private LedgerService ledgerService;
 
     @Override
     public Withdrawal requestWithdrawal(Long amount, User user) {
@@ -68,23 +69,16 @@ public class WithdrawalServiceImpl implements WithdrawalService {
                 throw new Exception("User wallet not found");
             }
 
-            // amount as BigDecimal
-            BigDecimal amt = BigDecimal.valueOf(w.getAmount());
-
-            // check balance
-            if (wallet.getBalance() == null || wallet.getBalance().compareTo(amt) < 0) {
-                throw new Exception("Insufficient wallet balance");
-            }
-
-            // debit wallet
-            BigDecimal newBalance = wallet.getBalance().subtract(amt);
-            wallet.setBalance(newBalance);
-            walletRepository.save(wallet); // if walletService.saveWallet exists you can call that
+            // checks and debits atomically, inside this transaction
+            walletService.debitWallet(wallet, w.getAmount());
+            ledgerService.post(WalletTransactionType.WITHDRAWAL, "withdrawal:" + w.getId(),
+                    Posting.wallet(wallet.getId(), BigDecimal.valueOf(w.getAmount()).negate()),
+                    Posting.of(LedgerAccount.CASH, BigDecimal.valueOf(w.getAmount())));
 
             // create wallet transaction (withdrawal)
             WalletTransaction tx = new WalletTransaction();
             tx.setWallet(wallet);
-            tx.setAmount(w.getAmount()); // keep Long as you use elsewhere
+            tx.setAmount(BigDecimal.valueOf(w.getAmount()));
             tx.setType("WITHDRAWAL");    // matches style in your service (strings used like "DEPOSIT")
             tx.setStatus("SUCCESS");
             tx.setReference("withdrawal:" + w.getId());
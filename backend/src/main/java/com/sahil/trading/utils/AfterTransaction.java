@@ -0,0 +1,33 @@
+package com.sahil.trading.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers in-memory side effects of a database write until its transaction has ended,
+ * so caches never show a write that was rolled back.
+ */
+public final class AfterTransaction {
+
+    private AfterTransaction() {
+    }
+
+    /**
+     * Runs onCommit once the current transaction commits, or onFailure when it rolls
+     * back or its outcome is unknown. Outside a transaction the write is already
+     * durable, so onCommit runs right away.
+     */
+    public static void run(Runnable onCommit, Runnable onFailure) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) onCommit.run();
+                else onFailure.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,272 @@
+package com.sahil.trading.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Size-aware LRU cache with per-entry TTL.
+ *
+ * - every entry has a weight (e.g. bytes of the cached JSON); the least recently
+ *   used entries are evicted once the total weight goes over maxWeight
+ * - an entry is fresh until its TTL, then optionally stays around as stale data
+ *   (see getEntry) until it finally expires
+ * - expired entries are dropped on read and by evictExpired(), which the owner
+ *   should call periodically so entries that are never read again still go away
+ * - hit / stale hit / miss / eviction / expiration counters for metrics
+ */
+public class BoundedCache<K, V> {
+
+    public enum Freshness {
+        FRESH,
+        // past the TTL but inside the stale-while-revalidate window
+        STALE,
+        // only good enough when the upstream is failing
+        STALE_IF_ERROR
+    }
+
+    public record Hit<V>(V value, Freshness freshness) {
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+        final long freshUntil;
+        final long staleUntil;
+        final long expiresAt;
+
+        Entry(V value, long weight, long freshUntil, long staleUntil, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean expired(long now) {
+            return now >= expiresAt;
+        }
+
+        Freshness freshness(long now) {
+            if (now < freshUntil) return Freshness.FRESH;
+            if (now < staleUntil) return Freshness.STALE;
+            return Freshness.STALE_IF_ERROR;
+        }
+    }
+
+    private final long maxWeight;
+    private final ToLongBiFunction<K, V> weigher;
+
+    // access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long totalWeight;
+
+    private long hits;
+    private long staleHits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public BoundedCache(long maxWeight, ToLongBiFunction<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Fresh value for key, or null.
+     */
+    public V get(K key) {
+        Hit<V> hit = getEntry(key);
+        return hit != null && hit.freshness() == Freshness.FRESH ? hit.value() : null;
+    }
+
+    /**
+     * Value for key together with how fresh it is, or null once it has fully expired.
+     */
+    public Hit<V> getEntry(K key) {
+        long now = now();
+        lock.lock();
+        try {
+            Entry<V> e = map.get(key);
+            if (e == null) {
+                misses++;
+                return null;
+            }
+            if (e.expired(now)) {
+                removeEntry(key, e);
+                expirations++;
+                misses++;
+                return null;
+            }
+            Freshness freshness = e.freshness(now);
+            if (freshness == Freshness.FRESH) hits++;
+            else staleHits++;
+            return new Hit<>(e.value, freshness);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fresh value for key, or null, without counting a hit or miss. For the second
+     * look a loader takes after winning the single-flight, which is not a new request.
+     */
+    public V peek(K key) {
+        long now = now();
+        lock.lock();
+        try {
+            Entry<V> e = map.get(key);
+            return e != null && e.freshness(now) == Freshness.FRESH ? e.value : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value, long ttlMs) {
+        put(key, value, ttlMs, ttlMs, ttlMs);
+    }
+
+    /**
+     * @param ttlMs        how long the value is fresh
+     * @param staleMs      how long it may be served while a refresh runs
+     * @param expireMs     how long it is kept at all (served only when a reload fails)
+     */
+    public void put(K key, V value, long ttlMs, long staleMs, long expireMs) {
+        long weight = weigher.applyAsLong(key, value);
+        long now = now();
+        lock.lock();
+        try {
+            Entry<V> old = map.remove(key);
+            if (old != null) totalWeight -= old.weight;
+
+            // a single value bigger than the whole cache is not worth keeping
+            if (weight > maxWeight) return;
+
+            map.put(key, new Entry<>(value, weight, now + ttlMs, now + Math.max(ttlMs, staleMs),
+                    now + Math.max(ttlMs, Math.max(staleMs, expireMs))));
+            totalWeight += weight;
+
+            Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+            while (totalWeight > maxWeight && it.hasNext()) {
+                Map.Entry<K, Entry<V>> eldest = it.next();
+                it.remove();
+                totalWeight -= eldest.getValue().weight;
+                evictions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Entry<V> e = map.get(key);
+            if (e != null) removeEntry(key, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop every expired entry. Returns how many were removed.
+     */
+    public int evictExpired() {
+        long now = now();
+        int removed = 0;
+        lock.lock();
+        try {
+            Iterator<Entry<V>> it = map.values().iterator();
+            while (it.hasNext()) {
+                Entry<V> e = it.next();
+                if (e.expired(now)) {
+                    it.remove();
+                    totalWeight -= e.weight;
+                    removed++;
+                }
+            }
+            expirations += removed;
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    private void removeEntry(K key, Entry<V> e) {
+        map.remove(key);
+        totalWeight -= e.weight;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    // ================= STATS =================
+
+    public int size() {
+        lock.lock();
+        try {
+            return map.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long weight() {
+        lock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long staleHitCount() {
+        lock.lock();
+        try {
+            return staleHits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long missCount() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long evictionCount() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long expirationCount() {
+        lock.lock();
+        try {
+            return expirations;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
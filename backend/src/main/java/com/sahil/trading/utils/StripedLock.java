@@ -0,0 +1,64 @@
+package com.sahil.trading.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks indexed by key hash, so per-id locking needs no map that grows
+ * with the ids. Two keys may share a stripe; that only costs some parallelism.
+ *
+ * lock(keys...) takes the stripes of several keys in ascending stripe order, so
+ * callers locking overlapping sets in any argument order cannot deadlock.
+ */
+public class StripedLock {
+
+    /**
+     * The locks taken by one lock() call; close() releases them.
+     */
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public StripedLock(int stripes) {
+        // round up to a power of two so the index is a mask
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new ReentrantLock();
+        this.mask = n - 1;
+    }
+
+    public Held lock(long... keys) {
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) order[i] = stripe(keys[i]);
+        Arrays.sort(order);
+
+        int count = 0;
+        for (int i = 0; i < order.length; i++) {
+            // the same stripe twice would only need unlocking twice
+            if (i > 0 && order[i] == order[i - 1]) continue;
+            order[count++] = order[i];
+        }
+        int[] taken = Arrays.copyOf(order, count);
+        for (int s : taken) stripes[s].lock();
+        return () -> {
+            for (int i = taken.length - 1; i >= 0; i--) stripes[taken[i]].unlock();
+        };
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    private int stripe(long key) {
+        int h = Long.hashCode(key);
+        // spread the bits, sequential ids would otherwise fill neighbouring stripes only
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sahil.trading.controller;
+
+import com.sahil.trading.response.CachedJsonResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoinControllerTest {
+
+    private final CoinController controller = new CoinController();
+    private final CachedJsonResponse res = CachedJsonResponse.of("{\"id\":\"bitcoin\"}");
+
+    private ResponseEntity<byte[]> get(String acceptEncoding, String ifNoneMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        if (acceptEncoding != null) headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        if (ifNoneMatch != null) headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return ReflectionTestUtils.invokeMethod(controller, "cachedJson", res, headers);
+    }
+
+    @Test
+    void honoursQValuesInAcceptEncoding() {
+        assertTrue(CoinController.acceptsGzip("gzip, deflate, br"));
+        assertTrue(CoinController.acceptsGzip("br;q=1.0, gzip;q=0.8"));
+        assertTrue(CoinController.acceptsGzip("*"));
+        assertFalse(CoinController.acceptsGzip("gzip;q=0"));
+        assertFalse(CoinController.acceptsGzip("deflate, gzip ; q=0.0"));
+        assertFalse(CoinController.acceptsGzip("*;q=0, identity"));
+        assertTrue(CoinController.acceptsGzip("*;q=0, gzip"));
+        assertFalse(CoinController.acceptsGzip("identity"));
+        assertFalse(CoinController.acceptsGzip(null));
+    }
+
+    @Test
+    void eachEncodingHasItsOwnTag() {
+        ResponseEntity<byte[]> plain = get(null, null);
+        ResponseEntity<byte[]> gzip = get("gzip", null);
+
+        assertArrayEquals(res.getBody(), plain.getBody());
+        assertEquals(res.getEtag(), plain.getHeaders().getETag());
+        assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(res.getGzipEtag(), gzip.getHeaders().getETag());
+        assertNotEquals(plain.getHeaders().getETag(), gzip.getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), gzip.getHeaders().getVary());
+
+        // the identity tag does not validate the gzip bytes, and the other way round
+        assertEquals(HttpStatus.OK, get("gzip", res.getEtag()).getStatusCode());
+        assertEquals(HttpStatus.OK, get(null, res.getGzipEtag()).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, get("gzip", res.getGzipEtag()).getStatusCode());
+    }
+
+    @Test
+    void ifNoneMatchTakesWeakTagsAndStar() {
+        assertEquals(HttpStatus.NOT_MODIFIED, get(null, "W/" + res.getEtag()).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, get(null, "\"other\", " + res.getEtag()).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, get("gzip", "*").getStatusCode());
+        assertEquals(HttpStatus.OK, get(null, "\"other\"").getStatusCode());
+    }
+}
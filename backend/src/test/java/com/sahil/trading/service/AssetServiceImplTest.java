@@ -0,0 +1,163 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.CoinRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Asset table as a map; counts the SELECTs a trade costs.
+ */
+class AssetServiceImplTest {
+
+    private final Map<Long, Asset> rows = new ConcurrentHashMap<>();
+    private final AssetRepository repository = mock(AssetRepository.class);
+    private AssetServiceImpl assetService;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findByUserId(anyLong())).thenAnswer(inv -> rows.values().stream()
+                .filter(a -> a.getUser().getId().equals(inv.getArgument(0)))
+                .map(PortfolioCache::copy)
+                .toList());
+        when(repository.updateHolding(anyLong(), anyDouble(), anyDouble())).thenAnswer(inv -> {
+            Asset row = rows.get((Long) inv.getArgument(0));
+            double delta = inv.getArgument(1);
+            if (row == null || row.getQuantity() + delta < 0) return 0;
+            row.setQuantity(row.getQuantity() + delta);
+            row.setBuyPrice(inv.getArgument(2));
+            return 1;
+        });
+        when(repository.deleteHolding(anyLong(), anyDouble())).thenAnswer(inv -> {
+            Asset row = rows.get((Long) inv.getArgument(0));
+            if (row == null || row.getQuantity() > (double) inv.getArgument(1)) return 0;
+            rows.remove(row.getId());
+            return 1;
+        });
+        when(repository.save(any())).thenAnswer(inv -> {
+            Asset a = inv.getArgument(0);
+            a.setId((long) rows.size() + 1);
+            rows.put(a.getId(), PortfolioCache.copy(a));
+            return a;
+        });
+
+        PortfolioCache cache = new PortfolioCache(1000);
+        ReflectionTestUtils.setField(cache, "assetRepository", repository);
+        ReflectionTestUtils.setField(cache, "coinRepository", mock(CoinRepository.class));
+        assetService = new AssetServiceImpl();
+        ReflectionTestUtils.setField(assetService, "assetRepository", repository);
+        ReflectionTestUtils.setField(assetService, "portfolioCache", cache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(1L);
+        return user;
+    }
+
+    private static Coin coin(String id) {
+        Coin c = new Coin();
+        c.setId(id);
+        c.setCurrentPrice(100.0);
+        return c;
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> syncs = new ArrayList<>(TransactionSynchronizationManager.getSynchronizations());
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization s : syncs) s.afterCompletion(status);
+    }
+
+    @Test
+    void tradesReadTheCachedAssetAndWriteWithoutSelecting() throws Exception {
+        assetService.createAsset(user(), coin("bitcoin"), 2, 100);
+
+        for (int i = 0; i < 10; i++) {
+            Asset held = assetService.findAssetByUserIdAndCoinId(1L, "bitcoin");
+            assetService.changeQuantity(held, 1, 200);
+        }
+        Asset held = assetService.findAssetByUserIdAndCoinId(1L, "bitcoin");
+        assertEquals(12, held.getQuantity(), 1e-9);
+        assertEquals((2 * 100 + 10 * 200) / 12.0, held.getBuyPrice(), 1e-9);
+        assertEquals(12, rows.get(held.getId()).getQuantity(), 1e-9);
+
+        assertNull(assetService.changeQuantity(held, -12, 0));
+        assertNull(assetService.findAssetByUserIdAndCoinId(1L, "bitcoin"));
+        assertEquals(0, rows.size());
+
+        verify(repository, times(1)).findByUserId(1L);
+        verify(repository, never()).findById(anyLong());
+        verify(repository, never()).findByUserIdAndCoinId(anyLong(), any());
+    }
+
+    @Test
+    void appliesWritesOnCommitAndReloadsOnRollback() throws Exception {
+        assetService.createAsset(user(), coin("bitcoin"), 2, 100);
+        Asset held = assetService.findAssetByUserIdAndCoinId(1L, "bitcoin");
+
+        TransactionSynchronizationManager.initSynchronization();
+        assetService.changeQuantity(held, -1, 0);
+        // the transaction reads its own write; other threads keep the committed state until the commit
+        assertEquals(1, assetService.findAssetByUserIdAndCoinId(1L, "bitcoin").getQuantity(), 1e-9);
+        CompletableFuture<Asset> elsewhere = CompletableFuture.supplyAsync(() -> assetService.findAssetByUserIdAndCoinId(1L, "bitcoin"));
+        assertEquals(2, elsewhere.get().getQuantity(), 1e-9);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(1, assetService.findAssetByUserIdAndCoinId(1L, "bitcoin").getQuantity(), 1e-9);
+        verify(repository, times(1)).findByUserId(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        assetService.changeQuantity(assetService.findAssetByUserIdAndCoinId(1L, "bitcoin"), 5, 100);
+        // the database rolls the UPDATE back
+        rows.values().forEach(a -> a.setQuantity(1));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(1, assetService.findAssetByUserIdAndCoinId(1L, "bitcoin").getQuantity(), 1e-9);
+        verify(repository, times(2)).findByUserId(1L);
+    }
+
+    @Test
+    void aSaleNeverTakesMoreThanTheRowHolds() throws Exception {
+        assetService.createAsset(user(), coin("bitcoin"), 2, 100);
+        Asset stale = assetService.findAssetByUserIdAndCoinId(1L, "bitcoin");
+        // another instance sold 1.5 behind this cache's back
+        rows.values().forEach(a -> a.setQuantity(0.5));
+
+        Exception e = assertThrows(Exception.class, () -> assetService.changeQuantity(stale, -1, 0));
+        assertEquals("Insufficient quantity to sell", e.getMessage());
+        assertEquals(0.5, rows.get(stale.getId()).getQuantity(), 1e-9);
+        // the stale entry was dropped, so the next read sees the row
+        assertEquals(0.5, assetService.findAssetByUserIdAndCoinId(1L, "bitcoin").getQuantity(), 1e-9);
+    }
+}
@@ -0,0 +1,113 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.UpstreamPriority;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the gateway against a local stub of the CoinGecko API.
+ */
+class CoinGeckoClientImplTest {
+
+    private HttpServer server;
+    private OutboundHttpClient http;
+    private CoinGeckoClientImpl client;
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private final AtomicInteger throttleNext = new AtomicInteger();
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            received.add(exchange.getRequestURI().toString());
+            if (exchange.getRequestURI().getPath().equals("/stall")) {
+                // headers and the start of a body, then nothing
+                exchange.sendResponseHeaders(200, 0);
+                exchange.getResponseBody().write("{\"ok\":".getBytes(StandardCharsets.UTF_8));
+                exchange.getResponseBody().flush();
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException ignored) {
+                    // server stopped
+                }
+            } else if (throttleNext.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        // a stalled response must not hold up the next one
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        // one request per host at a time keeps the order the stub sees deterministic
+        http = new OutboundHttpClient(1000, 5000, 500, 1);
+        client = new CoinGeckoClientImpl(http, baseUrl, 6000, 10, 3, 50, 2000, 10_000);
+        client.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        client.shutdown();
+        http.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void honorsRetryAfterOnTooManyRequests() throws Exception {
+        throttleNext.set(1);
+
+        long start = System.nanoTime();
+        assertEquals("{\"ok\":true}", client.get("/ping", UpstreamPriority.MARKET));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(List.of("/ping", "/ping"), received);
+        assertTrue(elapsedMs >= 900, "retried after " + elapsedMs + "ms");
+    }
+
+    @Test
+    void sendsQueuedCallsInPriorityOrder() throws Exception {
+        // hold the queue so everything below is waiting when it opens
+        client.pauseFor(300);
+        CompletableFuture<InputStream> chart = client.submit("/chart", UpstreamPriority.CHART);
+        CompletableFuture<InputStream> search = client.submit("/search", UpstreamPriority.SEARCH);
+        CompletableFuture<InputStream> trading = client.submit("/markets", UpstreamPriority.TRADING);
+
+        CompletableFuture.allOf(chart, search, trading).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("/markets", "/search", "/chart"), received);
+    }
+
+    @Test
+    void aStalledBodyFailsTheReadAtTheBodyDeadline() throws Exception {
+        long start = System.nanoTime();
+        assertThrows(HttpTimeoutException.class, () -> client.get("/stall", UpstreamPriority.MARKET));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs < 3_000, "gave up after " + elapsedMs + "ms");
+
+        // the host's only slot is free again
+        assertEquals("{\"ok\":true}", client.get("/ping", UpstreamPriority.MARKET));
+        assertEquals(List.of("/stall", "/ping"), received);
+    }
+}
@@ -0,0 +1,55 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.entity.Coin;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CoinMarketsReaderTest {
+
+    private static final String MARKETS = """
+            [{"id":"bitcoin","symbol":"btc","name":"Bitcoin","image":"https://img/btc.png",
+              "current_price":67012.5,"market_cap":1320000000000,"market_cap_rank":1,
+              "fully_diluted_valuation":1407000000000,"total_volume":28000000000,
+              "high_24h":67500,"low_24h":65800.25,"price_change_24h":-120.5,
+              "price_change_percentage_24h":-0.18,"market_cap_change_24h":-2.1E9,
+              "market_cap_change_percentage_24h":-0.16,"circulating_supply":19700000.0,
+              "total_supply":21000000,"max_supply":21000000,"ath":73738,
+              "ath_change_percentage":-9.1,"ath_date":"2024-03-14T07:10:36.635Z",
+              "atl":67.81,"atl_change_percentage":98700.1,"atl_date":"2013-07-06T00:00:00.000Z",
+              "roi":null,"last_updated":"2024-06-01T12:00:00.000Z"},
+             {"id":"ethereum","symbol":"eth","name":"Ethereum","image":null,
+              "current_price":3750.1,"market_cap":450000000000,"market_cap_rank":2,
+              "fully_diluted_valuation":null,"total_volume":15000000000,
+              "price_change_percentage_24h":1.25,"max_supply":null,
+              "roi":{"times":64.5,"currency":"btc","percentage":6450.2},
+              "sparkline_in_7d":{"price":[1.0,2.0,3.0]}}]
+            """;
+
+    @Test
+    void readsSameCoinsAsObjectMapperWithoutSkippedFields() throws Exception {
+        List<Coin> streamed = CoinMarketsReader.read(
+                new ByteArrayInputStream(MARKETS.getBytes(StandardCharsets.UTF_8)));
+
+        // Spring's ObjectMapper also ignores unknown fields such as roi
+        List<Coin> bound = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .readValue(MARKETS, new TypeReference<>() {});
+        for (Coin c : bound) {
+            c.setAthDate(null);
+            c.setAtlDate(null);
+        }
+
+        assertEquals(bound, streamed);
+        assertNull(streamed.get(0).getAthDate());
+        assertEquals(-2_100_000_000L, streamed.get(0).getMarketCapChange24h());
+    }
+}
@@ -0,0 +1,129 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.domain.UpstreamPriority;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class CoinServiceImplTest {
+
+    /**
+     * Counts calls per path and holds every fetch until released,
+     * so all callers are guaranteed to overlap with the first fetch.
+     */
+    static class StubCoinGeckoClient implements CoinGeckoClient {
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        static final String BODY = "{\"prices\":[[1000,1.5]],\"market_caps\":[[1000,2.5]],\"total_volumes\":[[1000,3.5]]}";
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String get(String path, UpstreamPriority priority) throws Exception {
+            calls.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return BODY;
+        }
+
+        int callsFor(String path) {
+            AtomicInteger n = calls.get(path);
+            return n == null ? 0 : n.get();
+        }
+    }
+
+    @Test
+    void concurrentChartMissesFetchOncePerKey() throws Exception {
+        StubCoinGeckoClient stub = new StubCoinGeckoClient();
+        CoinServiceImpl service = new CoinServiceImpl();
+        ReflectionTestUtils.setField(service, "coinGeckoClient", stub);
+        ReflectionTestUtils.setField(service, "cache", new CoinCache(1 << 20, 60_000, 60_000, 60_000, 60_000, 60_000, 60_000));
+        MarketChartStore store = new MarketChartStore(1 << 20);
+        ReflectionTestUtils.setField(store, "coinGeckoClient", stub);
+        ReflectionTestUtils.setField(service, "marketChartStore", store);
+
+        int callers = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        String expected = StubCoinGeckoClient.BODY;
+        try {
+            for (int i = 0; i < callers; i++) {
+                String coin = i % 2 == 0 ? "bitcoin" : "ethereum";
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return service.getMarketChart(coin, 7);
+                }));
+            }
+            start.countDown();
+            // give every caller time to reach the in-flight fetch before it completes
+            Thread.sleep(200);
+            stub.release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 7 days is sliced from the hourly (90 day) series
+        assertEquals(1, stub.callsFor("/coins/bitcoin/market_chart?vs_currency=usd&days=90"));
+        assertEquals(1, stub.callsFor("/coins/ethereum/market_chart?vs_currency=usd&days=90"));
+
+        // any other window inside the tier is served without another upstream call
+        assertEquals(expected, service.getMarketChart("bitcoin", 30));
+        assertEquals(1, stub.callsFor("/coins/bitcoin/market_chart?vs_currency=usd&days=90"));
+    }
+
+    @Test
+    void concurrentDetailsMissesFetchOncePerCoin() throws Exception {
+        StubCoinGeckoClient stub = new StubCoinGeckoClient();
+        CoinServiceImpl service = new CoinServiceImpl();
+        ReflectionTestUtils.setField(service, "coinGeckoClient", stub);
+        ReflectionTestUtils.setField(service, "cache", new CoinCache(1 << 20, 60_000, 60_000, 60_000, 60_000, 60_000, 60_000));
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "coinWriteBehindBuffer", mock(CoinWriteBehindBuffer.class));
+        ReflectionTestUtils.setField(service, "coinSearchIndex", mock(CoinSearchIndex.class));
+        ReflectionTestUtils.setField(service, "moversIndex", mock(MoversIndex.class));
+
+        int callers = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < callers; i++) {
+                String coin = i % 2 == 0 ? "bitcoin" : "ethereum";
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return service.getCoinDetails(coin);
+                }));
+            }
+            start.countDown();
+            Thread.sleep(200);
+            stub.release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals(StubCoinGeckoClient.BODY, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // the details_ entries: one upstream call per coin, however many callers missed
+        assertEquals(1, stub.callsFor("/coins/bitcoin"));
+        assertEquals(1, stub.callsFor("/coins/ethereum"));
+    }
+}
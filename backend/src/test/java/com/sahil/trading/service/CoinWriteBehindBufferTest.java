@@ -0,0 +1,75 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.repository.CoinRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * persist() stands in for the INSERT; a coin named "too long" fails it every time.
+ */
+class CoinWriteBehindBufferTest {
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private CoinWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        CoinRepository coinRepository = mock(CoinRepository.class);
+        when(coinRepository.findAllById(any())).thenReturn(List.of());
+        EntityManager entityManager = mock(EntityManager.class);
+        doAnswer(inv -> {
+            Coin c = inv.getArgument(0);
+            if ("too long".equals(c.getName())) throw new PersistenceException("Data too long for column 'name'");
+            written.add(c.getId());
+            return null;
+        }).when(entityManager).persist(any());
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        buffer = new CoinWriteBehindBuffer();
+        ReflectionTestUtils.setField(buffer, "coinRepository", coinRepository);
+        ReflectionTestUtils.setField(buffer, "entityManager", entityManager);
+        ReflectionTestUtils.setField(buffer, "transactionManager", txManager);
+        ReflectionTestUtils.setField(buffer, "maxPending", 1000);
+    }
+
+    private static Coin coin(String id, String name) {
+        Coin c = new Coin();
+        c.setId(id);
+        c.setName(name);
+        return c;
+    }
+
+    @Test
+    void aRowThatAlwaysFailsNeitherBlocksTheOthersNorStaysForever() {
+        buffer.enqueueAll(List.of(coin("bitcoin", "Bitcoin"), coin("bad", "too long"), coin("ethereum", "Ethereum")));
+        buffer.flush();
+        // the batch failed; written one by one, only the bad row is left
+        assertEquals(List.of("bitcoin", "ethereum"), written.stream().filter(id -> !id.equals("bad")).distinct().toList());
+        assertEquals(1, buffer.pendingCount());
+
+        buffer.enqueue(coin("solana", "Solana"));
+        buffer.flush();
+        assertEquals(1, buffer.pendingCount());
+        assertEquals(3, written.stream().distinct().count());
+
+        // third failure in a row: dropped
+        buffer.flush();
+        assertEquals(0, buffer.pendingCount());
+    }
+}
@@ -0,0 +1,166 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.CostBasisMethod;
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.CostBasisLot;
+import com.sahil.trading.entity.CostBasisPosition;
+import com.sahil.trading.entity.RealizedPnl;
+import com.sahil.trading.repository.CostBasisLotRepository;
+import com.sahil.trading.repository.CostBasisPositionRepository;
+import com.sahil.trading.repository.RealizedPnlRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lots, positions and daily rows in maps; counts the lots each sell reads.
+ */
+class CostBasisServiceImplTest {
+
+    private static final double EPS = 1e-6;
+
+    private final Map<Long, CostBasisLot> lots = new TreeMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger lotsRead = new AtomicInteger();
+    private CostBasisPosition position;
+    private RealizedPnl daily;
+    private CostBasisServiceImpl costBasis;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        CostBasisLotRepository lotRepository = mock(CostBasisLotRepository.class);
+        when(lotRepository.save(any())).thenAnswer(inv -> {
+            CostBasisLot lot = inv.getArgument(0);
+            if (lot.getId() == null) lot.setId(ids.incrementAndGet());
+            lots.put(lot.getId(), lot);
+            return lot;
+        });
+        when(lotRepository.saveAll(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(lotRepository.findByUserIdAndCoinIdAndClosedFalseAndIdGreaterThanOrderByIdAsc(anyLong(), anyString(), anyLong(), any()))
+                .thenAnswer(inv -> {
+                    List<CostBasisLot> page = lots.values().stream()
+                            .filter(l -> !l.isClosed() && l.getId() > (Long) inv.getArgument(2))
+                            .limit(((Limit) inv.getArgument(3)).max())
+                            .toList();
+                    lotsRead.addAndGet(page.size());
+                    return page;
+                });
+
+        CostBasisPositionRepository positionRepository = mock(CostBasisPositionRepository.class);
+        when(positionRepository.findByUserIdAndCoinId(anyLong(), anyString())).thenAnswer(inv -> Optional.ofNullable(position));
+        when(positionRepository.save(any())).thenAnswer(inv -> position = inv.getArgument(0));
+
+        RealizedPnlRepository realizedPnlRepository = mock(RealizedPnlRepository.class);
+        when(realizedPnlRepository.findByUserIdAndDayAndCoinId(anyLong(), any(), anyString())).thenAnswer(inv -> Optional.ofNullable(daily));
+        when(realizedPnlRepository.save(any())).thenAnswer(inv -> daily = inv.getArgument(0));
+
+        costBasis = new CostBasisServiceImpl();
+        ReflectionTestUtils.setField(costBasis, "lotRepository", lotRepository);
+        ReflectionTestUtils.setField(costBasis, "positionRepository", positionRepository);
+        ReflectionTestUtils.setField(costBasis, "realizedPnlRepository", realizedPnlRepository);
+        ReflectionTestUtils.setField(costBasis, "lotPageSize", 50);
+    }
+
+    private static Asset held(double quantity, double buyPrice) {
+        Asset asset = new Asset();
+        asset.setQuantity(quantity);
+        asset.setBuyPrice(buyPrice);
+        return asset;
+    }
+
+    @Test
+    void fifoUsesTheOldestLotsFirst() {
+        costBasis.recordBuy(1L, "bitcoin", 1L, 1, 100, null);
+        costBasis.recordBuy(1L, "bitcoin", 2L, 1, 200, held(1, 100));
+
+        // half of the 100 lot, then the rest of it and half of the 200 lot
+        assertEquals(150 - 50, costBasis.recordSell(1L, "bitcoin", 3L, 0.5, 300, 0.5, held(2, 150)), EPS);
+        assertEquals(300 - 150, costBasis.recordSell(1L, "bitcoin", 4L, 1, 300, 1, held(1.5, 150)), EPS);
+
+        assertTrue(lots.get(1L).isClosed());
+        assertEquals(0.5, lots.get(2L).getRemaining(), EPS);
+        assertEquals(0.5, position.getQuantity(), EPS);
+        assertEquals(100, position.getCost(), EPS);
+        assertEquals(250, daily.getRealized(), EPS);
+        assertEquals(2, daily.getSells());
+    }
+
+    @Test
+    void averageCostUsesThePositionAverage() {
+        ReflectionTestUtils.setField(costBasis, "method", CostBasisMethod.AVERAGE);
+        costBasis.recordBuy(1L, "bitcoin", 1L, 1, 100, null);
+        costBasis.recordBuy(1L, "bitcoin", 2L, 1, 200, held(1, 100));
+
+        assertEquals(300 - 150, costBasis.recordSell(1L, "bitcoin", 3L, 1, 300, 1, held(2, 150)), EPS);
+        assertEquals(1, position.getQuantity(), EPS);
+        assertEquals(150, position.getCost(), EPS);
+    }
+
+    @Test
+    void coinsHeldBeforeLotsBecomeTheOldestLot() {
+        // 2 held at an average of 50 before lots were tracked
+        costBasis.recordBuy(1L, "bitcoin", 1L, 1, 100, held(2, 50));
+
+        assertNull(lots.get(1L).getOrderId());
+        assertEquals(600 - 2 * 50, costBasis.recordSell(1L, "bitcoin", 2L, 2, 300, 2, held(3, 200 / 3.0)), EPS);
+        assertTrue(lots.get(1L).isClosed());
+        assertEquals(1, lots.get(2L).getRemaining(), EPS);
+        assertEquals(1, position.getQuantity(), EPS);
+        assertEquals(100, position.getCost(), EPS);
+    }
+
+    @Test
+    void quantityNoLotCoversIsSoldFirst() {
+        // a position opened before opening lots were seeded: 2 of the 3 held are in no lot
+        costBasis.recordBuy(1L, "bitcoin", 1L, 1, 100, null);
+
+        assertEquals(600 - 2 * 80, costBasis.recordSell(1L, "bitcoin", 2L, 2, 300, 2, held(3, 80)), EPS);
+        assertEquals(1, lots.get(1L).getRemaining(), EPS);
+        assertEquals(1, position.getQuantity(), EPS);
+    }
+
+    @Test
+    void aDustRemainderSoldWithTheHoldingClosesItsLots() {
+        costBasis.recordBuy(1L, "bitcoin", 1L, 1, 100, null);
+
+        // 0.999 sold; the 0.001 left is dust and leaves the holding with it
+        assertEquals(0.999 * 300 - 100, costBasis.recordSell(1L, "bitcoin", 2L, 0.999, 300, 1, held(1, 100)), EPS);
+        assertTrue(lots.get(1L).isClosed());
+        assertEquals(0, position.getQuantity(), EPS);
+        assertEquals(0, position.getCost(), EPS);
+    }
+
+    @Test
+    void aSellReadsOnlyTheLotsItUses() {
+        for (int i = 0; i < 5_000; i++) costBasis.recordBuy(1L, "bitcoin", (long) i, 0.01, 100 + i % 10, null);
+
+        double realized = 0;
+        for (int i = 0; i < 4_000; i++) {
+            realized += costBasis.recordSell(1L, "bitcoin", 10_000L + i, 0.005, 200, 0.005, null);
+        }
+
+        // 4000 half-lot sells use up 2000 lots; each reads one small page from the open end
+        assertEquals(2_000, lots.values().stream().filter(CostBasisLot::isClosed).count());
+        assertTrue(lotsRead.get() <= 4_000 * 4, "read " + lotsRead.get());
+        assertEquals(daily.getRealized(), realized, EPS);
+        assertEquals(50 - 20, position.getQuantity(), EPS);
+    }
+}
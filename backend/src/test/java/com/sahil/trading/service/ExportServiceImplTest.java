@@ -0,0 +1,146 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sahil.trading.domain.ExportFormat;
+import com.sahil.trading.repository.OrderRepository;
+import com.sahil.trading.repository.WalletTransactionRepository;
+import com.sahil.trading.response.WalletTransactionExportRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExportServiceImplTest {
+
+    private static final Instant T = Instant.parse("2026-04-01T10:00:00Z");
+
+    private final WalletTransactionRepository transactions = mock(WalletTransactionRepository.class);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private ExportServiceImpl exportService;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        exportService = new ExportServiceImpl(1);
+        ReflectionTestUtils.setField(exportService, "walletTransactionRepository", transactions);
+        ReflectionTestUtils.setField(exportService, "orderRepository", mock(OrderRepository.class));
+        ReflectionTestUtils.setField(exportService, "transactionManager", txManager);
+        ReflectionTestUtils.setField(exportService, "objectMapper", new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+    }
+
+    private static WalletTransactionExportRow row(long id, String notes) {
+        return new WalletTransactionExportRow(id, 7L, null, new BigDecimal("1E+2"), "DEPOSIT", "SUCCESS", null, notes, T);
+    }
+
+    @Test
+    void writesQuotedCsv() throws Exception {
+        when(transactions.streamForUser(eq(3L), any(), any()))
+                .thenReturn(Stream.of(row(1, "plain"), row(2, "a, \"quoted\"\nnote")).onClose(() -> closed.set(true)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, exportService.exportWalletTransactions(3L, Instant.EPOCH, T, ExportFormat.CSV, out));
+
+        assertEquals("id,walletId,counterpartyWalletId,amount,type,status,reference,notes,createdAt\r\n"
+                        + "1,7,,100,DEPOSIT,SUCCESS,,plain,2026-04-01T10:00:00Z\r\n"
+                        + "2,7,,100,DEPOSIT,SUCCESS,,\"a, \"\"quoted\"\"\nnote\",2026-04-01T10:00:00Z\r\n",
+                out.toString(StandardCharsets.UTF_8));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void writesOneJsonObjectPerLine() throws Exception {
+        when(transactions.streamBetween(any(), any())).thenReturn(Stream.of(row(1, null)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.exportWalletTransactions(null, Instant.EPOCH, T, ExportFormat.NDJSON, out);
+
+        String line = out.toString(StandardCharsets.UTF_8);
+        assertTrue(line.startsWith("{\"id\":1,\"walletId\":7,"), line);
+        assertTrue(line.contains("\"createdAt\":\"2026-04-01T10:00:00Z\""), line);
+        assertTrue(line.endsWith("}\n"));
+    }
+
+    @Test
+    void stopsReadingWhenTheClientGoesAway() {
+        AtomicLong read = new AtomicLong();
+        when(transactions.streamBetween(any(), any())).thenReturn(LongStream.range(0, 1_000_000)
+                .peek(i -> read.incrementAndGet())
+                .mapToObj(i -> row(i, "x"))
+                .onClose(() -> closed.set(true)));
+
+        OutputStream broken = new OutputStream() {
+            private long written;
+
+            @Override
+            public void write(int b) throws IOException {
+                if (++written > 64 * 1024) throw new IOException("Broken pipe");
+            }
+        };
+
+        assertThrows(IOException.class,
+                () -> exportService.exportWalletTransactions(null, Instant.EPOCH, T, ExportFormat.CSV, broken));
+        assertTrue(read.get() < 10_000, "read " + read.get() + " rows");
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void refusesAnExportWhileTheLimitIsRunning() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transactions.streamForUser(eq(3L), any(), any())).thenReturn(Stream.of(1L, 2L)
+                .map(i -> {
+                    reading.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return row(i, "slow");
+                }));
+        when(transactions.streamForUser(eq(4L), any(), any())).thenAnswer(inv -> Stream.of(row(3, "fast")));
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Long> slow = pool.submit(() -> exportService.exportWalletTransactions(3L, Instant.EPOCH, T, ExportFormat.CSV, new ByteArrayOutputStream()));
+        reading.await();
+
+        // the one slot is taken: refused before a connection is borrowed
+        assertThrows(ExportService.TooManyExports.class,
+                () -> exportService.exportWalletTransactions(4L, Instant.EPOCH, T, ExportFormat.CSV, new ByteArrayOutputStream()));
+        release.countDown();
+        assertEquals(2, slow.get(5, TimeUnit.SECONDS));
+
+        assertEquals(1, exportService.exportWalletTransactions(4L, Instant.EPOCH, T, ExportFormat.CSV, new ByteArrayOutputStream()));
+        pool.shutdown();
+    }
+}
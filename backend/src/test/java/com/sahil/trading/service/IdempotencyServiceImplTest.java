@@ -0,0 +1,227 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.entity.IdempotencyRecord;
+import com.sahil.trading.repository.IdempotencyRecordRepository;
+import com.sahil.trading.utils.BoundedCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceImplTest {
+
+    private final Map<String, IdempotencyRecord> table = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger runs = new AtomicInteger();
+    private final IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+    private IdempotencyServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findByUserIdAndScopeAndIdempotencyKey(anyLong(), anyString(), anyString()))
+                .thenAnswer(inv -> Optional.ofNullable(table.get(rowKey(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2)))));
+        when(repository.save(any())).thenAnswer(inv -> store(inv.getArgument(0)));
+        when(repository.saveAndFlush(any())).thenAnswer(inv -> store(inv.getArgument(0)));
+        // UPDATE ... WHERE id = ? AND status_code = 0 AND created_at < ?
+        when(repository.takeOver(anyLong(), anyString(), any(), any())).thenAnswer(inv -> {
+            synchronized (table) {
+                IdempotencyRecord r = table.values().stream().filter(x -> x.getId().equals(inv.getArgument(0))).findFirst().orElse(null);
+                if (r == null || r.getStatusCode() != 0 || !r.getCreatedAt().isBefore(inv.getArgument(3))) return 0;
+                r.setRequestHash(inv.getArgument(1));
+                r.setCreatedAt(inv.getArgument(2));
+                return 1;
+            }
+        });
+        doAnswer(inv -> {
+            IdempotencyRecord r = inv.getArgument(0);
+            table.remove(rowKey(r.getUserId(), r.getScope(), r.getIdempotencyKey()));
+            return null;
+        }).when(repository).delete(any());
+
+        service = instance();
+    }
+
+    // another application instance: shares the table, not the in-memory state
+    private IdempotencyServiceImpl instance() {
+        IdempotencyServiceImpl instance = new IdempotencyServiceImpl(1 << 20);
+        ReflectionTestUtils.setField(instance, "idempotencyRecordRepository", repository);
+        ReflectionTestUtils.setField(instance, "objectMapper", new ObjectMapper());
+        return instance;
+    }
+
+    private IdempotencyRecord store(IdempotencyRecord r) {
+        if (r.getId() == null) r.setId(ids.incrementAndGet());
+        table.put(rowKey(r.getUserId(), r.getScope(), r.getIdempotencyKey()), r);
+        return r;
+    }
+
+    private static String rowKey(Long userId, String scope, String key) {
+        return userId + ":" + scope + ":" + key;
+    }
+
+    private ResponseEntity<?> transfer(String key, long amount) throws Exception {
+        return service.execute(1L, "wallet.transfer", key, Map.of("amount", amount), () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("balance", 100 - amount));
+        });
+    }
+
+    @Test
+    void replaysTheFirstResponseForTheSameKey() throws Exception {
+        assertEquals(HttpStatus.ACCEPTED, transfer("k1", 10).getStatusCode());
+
+        ResponseEntity<?> replay = transfer("k1", 10);
+        assertEquals(HttpStatus.ACCEPTED, replay.getStatusCode());
+        assertEquals("{\"balance\":90}", replay.getBody());
+        assertEquals("true", replay.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals(1, runs.get());
+
+        // from the table, as another instance would see it
+        ReflectionTestUtils.setField(service, "cache",
+                new BoundedCache<String, IdempotencyRecord>(1 << 20, (k, v) -> 1));
+        assertEquals("{\"balance\":90}", transfer("k1", 10).getBody());
+        assertEquals(1, runs.get());
+
+        transfer(null, 10);
+        transfer("k2", 10);
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void refusesAKeyReusedForAnotherRequest() throws Exception {
+        transfer("k1", 10);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, transfer("k1", 20).getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void answersConflictWhileTheFirstRequestIsRunning() throws Exception {
+        IdempotencyRecord pending = new IdempotencyRecord();
+        pending.setUserId(1L);
+        pending.setScope("wallet.transfer");
+        pending.setIdempotencyKey("k1");
+        pending.setStatusCode(0);
+        pending.setCreatedAt(Instant.now());
+        pending.setRequestHash("whatever");
+        store(pending);
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, transfer("k1", 10).getStatusCode());
+        pending.setRequestHash((String) ReflectionTestUtils.invokeMethod(service, "hash", "wallet.transfer", Map.of("amount", 10L)));
+        assertEquals(HttpStatus.CONFLICT, transfer("k1", 10).getStatusCode());
+        assertEquals(0, runs.get());
+
+        // a request that died long ago no longer blocks the key
+        pending.setCreatedAt(Instant.now().minusSeconds(3600));
+        assertEquals(HttpStatus.ACCEPTED, transfer("k1", 10).getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void failedAttemptsCanBeRetried() throws Exception {
+        assertThrows(Exception.class, () -> service.execute(1L, "wallet.transfer", "k1", Map.of("amount", 10L), () -> {
+            throw new Exception("Insufficient balance");
+        }));
+        assertEquals(HttpStatus.ACCEPTED, transfer("k1", 10).getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void onlyOneRequestTakesOverAnAbandonedKey() throws Exception {
+        IdempotencyRecord abandoned = new IdempotencyRecord();
+        abandoned.setUserId(1L);
+        abandoned.setScope("wallet.transfer");
+        abandoned.setIdempotencyKey("k1");
+        abandoned.setCreatedAt(Instant.now().minusSeconds(3600));
+        abandoned.setRequestHash("whatever");
+        store(abandoned);
+        // both instances read the abandoned row before either has claimed it
+        IdempotencyRecord seen = copy(abandoned);
+        when(repository.findByUserIdAndScopeAndIdempotencyKey(anyLong(), anyString(), anyString()))
+                .thenReturn(Optional.of(seen), Optional.of(copy(abandoned)))
+                .thenAnswer(inv -> Optional.ofNullable(table.get(rowKey(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2)))));
+
+        CountDownLatch firstRunning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<ResponseEntity<?>> first = pool.submit(() -> service.execute(1L, "wallet.transfer", "k1", Map.of("amount", 10L), () -> {
+            runs.incrementAndGet();
+            firstRunning.countDown();
+            release.await();
+            return ResponseEntity.ok("done");
+        }));
+        firstRunning.await();
+
+        // the second instance loses the conditional UPDATE and sees the key held
+        ResponseEntity<?> second = instance().execute(1L, "wallet.transfer", "k1", Map.of("amount", 10L), () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.ok("again");
+        });
+        assertEquals(HttpStatus.CONFLICT, second.getStatusCode());
+        release.countDown();
+        assertEquals(HttpStatus.OK, first.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(1, runs.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void coalescedRetriesAreMarkedAsReplaysAndOtherBodiesRefused() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<ResponseEntity<?>> leader = pool.submit(() -> service.execute(1L, "wallet.transfer", "k1", Map.of("amount", 10L), () -> {
+            runs.incrementAndGet();
+            running.countDown();
+            release.await();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("balance", 90));
+        }));
+        running.await();
+        Future<ResponseEntity<?>> follower = pool.submit(() -> transfer("k1", 10));
+        Thread.sleep(50);
+
+        // same key, another body: not coalesced with the leader, refused
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, transfer("k1", 20).getStatusCode());
+        release.countDown();
+
+        assertEquals(null, leader.get(5, TimeUnit.SECONDS).getHeaders().getFirst("Idempotent-Replayed"));
+        ResponseEntity<?> replay = follower.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.ACCEPTED, replay.getStatusCode());
+        assertEquals("true", replay.getHeaders().getFirst("Idempotent-Replayed"));
+        assertEquals(1, runs.get());
+        pool.shutdown();
+    }
+
+    private static IdempotencyRecord copy(IdempotencyRecord r) {
+        IdempotencyRecord c = new IdempotencyRecord();
+        c.setId(r.getId());
+        c.setUserId(r.getUserId());
+        c.setScope(r.getScope());
+        c.setIdempotencyKey(r.getIdempotencyKey());
+        c.setRequestHash(r.getRequestHash());
+        c.setStatusCode(r.getStatusCode());
+        c.setCreatedAt(r.getCreatedAt());
+        return c;
+    }
+}
@@ -0,0 +1,197 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.LedgerAccount;
+import com.sahil.trading.domain.WalletTransactionType;
+import com.sahil.trading.entity.BalanceSnapshot;
+import com.sahil.trading.entity.LedgerEntry;
+import com.sahil.trading.entity.Wallet;
+import com.sahil.trading.repository.BalanceSnapshotRepository;
+import com.sahil.trading.repository.LedgerEntryRepository;
+import com.sahil.trading.repository.WalletRepository;
+import com.sahil.trading.service.LedgerService.Posting;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Backs the repositories with lists and answers the sum queries the way the JPQL does.
+ */
+class LedgerServiceImplTest {
+
+    private final List<LedgerEntry> entries = new CopyOnWriteArrayList<>();
+    private final List<BalanceSnapshot> snapshots = new CopyOnWriteArrayList<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, Wallet> wallets = new TreeMap<>();
+    private final WalletRepository walletRepository = mock(WalletRepository.class);
+    private LedgerServiceImpl ledger;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        LedgerEntryRepository entryRepository = mock(LedgerEntryRepository.class);
+        when(entryRepository.saveAll(any())).thenAnswer(inv -> {
+            for (LedgerEntry e : (Iterable<LedgerEntry>) inv.getArgument(0)) {
+                e.setId(ids.incrementAndGet());
+                entries.add(e);
+            }
+            return inv.getArgument(0);
+        });
+        when(entryRepository.sumForWallet(anyLong(), anyLong(), any())).thenAnswer(inv -> sum(
+                inv.getArgument(0), inv.getArgument(1), Long.MAX_VALUE, inv.getArgument(2)));
+        when(entryRepository.sumForWalletBetween(anyLong(), anyLong(), anyLong())).thenAnswer(inv -> sum(
+                inv.getArgument(0), inv.getArgument(1), inv.getArgument(2), Instant.MAX));
+        when(entryRepository.lastIdBefore(any())).thenAnswer(inv -> entries.stream()
+                .filter(e -> !e.getCreatedAt().isAfter(inv.getArgument(0)))
+                .mapToLong(LedgerEntry::getId).max().orElse(0));
+        when(entryRepository.walletsWithEntriesBetween(anyLong(), anyLong())).thenAnswer(inv -> entries.stream()
+                .filter(e -> e.getWalletId() != null && e.getId() > (long) inv.getArgument(0) && e.getId() <= (long) inv.getArgument(1))
+                .map(LedgerEntry::getWalletId).distinct().toList());
+
+        BalanceSnapshotRepository snapshotRepository = mock(BalanceSnapshotRepository.class);
+        when(snapshotRepository.save(any())).thenAnswer(inv -> {
+            snapshots.add(inv.getArgument(0));
+            return inv.getArgument(0);
+        });
+        when(snapshotRepository.lastSnapshotEntryId()).thenAnswer(inv ->
+                snapshots.stream().mapToLong(BalanceSnapshot::getLastEntryId).max().orElse(0));
+        when(snapshotRepository.findFirstByWalletIdOrderByLastEntryIdDesc(anyLong())).thenAnswer(inv -> snapshots.stream()
+                .filter(s -> s.getWalletId().equals(inv.getArgument(0)))
+                .max(Comparator.comparing(BalanceSnapshot::getLastEntryId)));
+        when(snapshotRepository.findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(anyLong(), any())).thenAnswer(inv -> snapshots.stream()
+                .filter(s -> s.getWalletId().equals(inv.getArgument(0)) && !s.getTakenAt().isAfter(inv.getArgument(1)))
+                .max(Comparator.comparing(BalanceSnapshot::getTakenAt)));
+
+        when(entryRepository.existsByWalletIdAndType(anyLong(), any())).thenAnswer(inv -> entries.stream()
+                .anyMatch(e -> Objects.equals(e.getWalletId(), inv.getArgument(0)) && e.getType() == inv.getArgument(1)));
+        when(walletRepository.lockById(anyLong())).thenAnswer(inv -> Optional.ofNullable(wallets.get((Long) inv.getArgument(0))));
+        when(walletRepository.findIdsWithoutEntryAfter(anyLong(), any(), any())).thenAnswer(inv -> wallets.keySet().stream()
+                .filter(id -> id > (long) inv.getArgument(0)
+                        && !entryRepository.existsByWalletIdAndType(id, inv.getArgument(1)))
+                .sorted()
+                .limit(((Limit) inv.getArgument(2)).max())
+                .toList());
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        ledger = new LedgerServiceImpl();
+        ReflectionTestUtils.setField(ledger, "ledgerEntryRepository", entryRepository);
+        ReflectionTestUtils.setField(ledger, "walletRepository", walletRepository);
+        ReflectionTestUtils.setField(ledger, "transactionManager", txManager);
+        ReflectionTestUtils.setField(ledger, "openingBatchSize", 2);
+        ReflectionTestUtils.setField(ledger, "balanceSnapshotRepository", snapshotRepository);
+        ReflectionTestUtils.setField(ledger, "snapshotLagMs", 0L);
+    }
+
+    private BigDecimal sum(Long walletId, long afterId, long upToId, Instant at) {
+        return entries.stream()
+                .filter(e -> Objects.equals(e.getWalletId(), walletId) && e.getId() > afterId && e.getId() <= upToId
+                        && !e.getCreatedAt().isAfter(at))
+                .map(LedgerEntry::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private void deposit(long walletId, String amount) {
+        ledger.post(WalletTransactionType.ADD_MONEY, null,
+                Posting.wallet(walletId, new BigDecimal(amount)),
+                Posting.of(LedgerAccount.CASH, new BigDecimal(amount).negate()));
+    }
+
+    @Test
+    void rejectsUnbalancedJournals() {
+        assertThrows(IllegalArgumentException.class, () -> ledger.post(WalletTransactionType.BUY_ASSET, "1",
+                Posting.wallet(1L, new BigDecimal("-10.5")),
+                Posting.of(LedgerAccount.TRADING, new BigDecimal("10.4"))));
+        assertThrows(IllegalArgumentException.class, () -> ledger.post(WalletTransactionType.ADD_MONEY, null,
+                Posting.wallet(1L, BigDecimal.TEN)));
+        assertEquals(0, entries.size());
+    }
+
+    @Test
+    void keepsExactDecimalAmounts() {
+        deposit(1, "100");
+        ledger.post(WalletTransactionType.BUY_ASSET, "7",
+                Posting.wallet(1L, new BigDecimal("-33.33333333")),
+                Posting.of(LedgerAccount.TRADING, new BigDecimal("33.33333333")));
+
+        assertEquals(new BigDecimal("66.66666667"), ledger.balance(1L));
+        assertEquals(2, entries.stream().map(LedgerEntry::getJournalId).distinct().count());
+    }
+
+    @Test
+    void balanceAtReplaysOnlyPostingsAfterTheSnapshot() throws Exception {
+        deposit(1, "50");
+        deposit(2, "5");
+        Thread.sleep(5);
+        Instant before = Instant.now();
+        Thread.sleep(5);
+
+        ledger.takeSnapshots();
+        assertEquals(2, snapshots.size());
+        assertEquals(0, new BigDecimal("50").compareTo(snapshots.get(0).getBalance()));
+
+        deposit(1, "25");
+        ledger.post(WalletTransactionType.WALLET_TRANSFER, null,
+                Posting.wallet(1L, new BigDecimal("-10")),
+                Posting.wallet(2L, new BigDecimal("10")));
+
+        // the postings before the snapshot no longer count, only the snapshot does
+        entries.removeIf(e -> e.getId() <= snapshots.get(0).getLastEntryId());
+        assertEquals(0, new BigDecimal("65").compareTo(ledger.balance(1L)));
+        assertEquals(0, new BigDecimal("15").compareTo(ledger.balance(2L)));
+        // nothing was snapshotted before this point
+        assertEquals(0, BigDecimal.ZERO.compareTo(ledger.balanceAt(1L, before)));
+
+        Thread.sleep(5);
+        ledger.takeSnapshots();
+        assertEquals(4, snapshots.size());
+        assertEquals(0, new BigDecimal("65").compareTo(ledger.balance(1L)));
+    }
+
+    @Test
+    void opensEachWalletOnceWithTheBalanceTheLedgerDoesNotExplain() {
+        // wallets 1-3 predate the ledger; 1 has had one deposit posted since, 4 is new
+        for (long id = 1; id <= 4; id++) {
+            Wallet wallet = new Wallet();
+            wallet.setId(id);
+            wallet.setBalance(new BigDecimal(id == 4 ? "0" : "1000.5"));
+            wallets.put(id, wallet);
+        }
+        deposit(1, "200");
+        wallets.get(1L).setBalance(new BigDecimal("1200.5"));
+
+        ledger.openWallets();
+
+        for (long id = 1; id <= 4; id++) {
+            assertEquals(0, wallets.get(id).getBalance().compareTo(ledger.balance(id)));
+        }
+        long journals = entries.stream().filter(e -> e.getType() == WalletTransactionType.OPENING)
+                .map(LedgerEntry::getJournalId).distinct().count();
+        assertEquals(4, journals);
+
+        // a restart finds nothing left to open
+        int before = entries.size();
+        ledger.openWallets();
+        assertEquals(before, entries.size());
+    }
+}
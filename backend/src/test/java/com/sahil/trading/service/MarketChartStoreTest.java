@@ -0,0 +1,144 @@
+package com.sahil.trading.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sahil.trading.domain.UpstreamPriority;
+import com.sahil.trading.response.CachedJsonResponse;
+import com.sahil.trading.utils.BoundedCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serves each tier from a generated series: one point per hour (or day) up to END.
+ */
+class MarketChartStoreTest {
+
+    private static final long HOUR_MS = 60L * 60 * 1000;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long END = 1_700_000_000_000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private volatile String errorBody;
+    private MarketChartStore store;
+
+    @BeforeEach
+    void setUp() {
+        CoinGeckoClient client = (String path, UpstreamPriority priority) -> {
+            calls.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+            if (errorBody != null) return errorBody;
+            int days = Integer.parseInt(path.substring(path.indexOf("days=") + 5));
+            return series(days == 365 ? DAY_MS : HOUR_MS, days);
+        };
+        store = new MarketChartStore(1 << 22);
+        ReflectionTestUtils.setField(store, "coinGeckoClient", client);
+    }
+
+    private static String series(long step, int days) {
+        StringBuilder prices = new StringBuilder();
+        for (long t = END - days * DAY_MS; t <= END; t += step) {
+            if (prices.length() > 0) prices.append(',');
+            prices.append('[').append(t).append(',').append(t / HOUR_MS % 100).append(']');
+        }
+        return "{\"prices\":[" + prices + "],\"market_caps\":[],\"total_volumes\":[]}";
+    }
+
+    private int callsFor(int tierDays) {
+        AtomicInteger n = calls.get("/coins/bitcoin/market_chart?vs_currency=usd&days=" + tierDays);
+        return n == null ? 0 : n.get();
+    }
+
+    private JsonNode prices(CachedJsonResponse response) throws Exception {
+        return objectMapper.readTree(response.getBody()).path("prices");
+    }
+
+    @Test
+    void eachWindowIsSlicedFromTheTierThatCoversIt() throws Exception {
+        assertEquals(MarketChartStore.Tier.INTRADAY, MarketChartStore.Tier.covering(1));
+        assertEquals(MarketChartStore.Tier.HOURLY, MarketChartStore.Tier.covering(2));
+        assertEquals(MarketChartStore.Tier.HOURLY, MarketChartStore.Tier.covering(90));
+        assertEquals(MarketChartStore.Tier.DAILY, MarketChartStore.Tier.covering(91));
+        assertEquals(null, MarketChartStore.Tier.covering(366));
+
+        JsonNode week = prices(store.chart("bitcoin", 7, 0));
+        JsonNode month = prices(store.chart("bitcoin", 30, 0));
+        assertEquals(7 * 24 + 1, week.size());
+        assertEquals(END - 7 * DAY_MS, week.get(0).get(0).asLong());
+        assertEquals(END, week.get(week.size() - 1).get(0).asLong());
+        assertEquals(30 * 24 + 1, month.size());
+        assertEquals(1, callsFor(90));
+
+        assertEquals(181, prices(store.chart("bitcoin", 180, 0)).size());
+        assertEquals(1, callsFor(365));
+        assertEquals(0, callsFor(1));
+    }
+
+    @Test
+    void aRenderedWindowIsReusedUntilItsSeriesIsReloaded() throws Exception {
+        CachedJsonResponse first = store.chart("bitcoin", 7, 100);
+        assertSame(first, store.chart("bitcoin", 7, 100));
+        assertNotSame(first, store.chart("bitcoin", 7, 0));
+        assertEquals(100, prices(first).size());
+
+        // the hourly series is fetched again, e.g. after its TTL
+        @SuppressWarnings("unchecked")
+        BoundedCache<String, ?> series = (BoundedCache<String, ?>) ReflectionTestUtils.getField(store, "series");
+        series.invalidate("bitcoin|HOURLY");
+        CachedJsonResponse reloaded = store.chart("bitcoin", 7, 100);
+        assertNotSame(first, reloaded);
+        assertEquals(first.getEtag(), reloaded.getEtag());
+        assertEquals(2, callsFor(90));
+    }
+
+    @Test
+    void anErrorBodyIsNotCached() throws Exception {
+        errorBody = "{\"status\":{\"error_code\":429,\"error_message\":\"rate limited\"}}";
+        assertSame(CachedJsonResponse.EMPTY_OBJECT, store.chart("bitcoin", 7, 0));
+        assertSame(CachedJsonResponse.EMPTY_OBJECT, store.chart("bitcoin", 7, 0));
+        assertEquals(2, callsFor(90));
+
+        errorBody = null;
+        assertEquals(7 * 24 + 1, prices(store.chart("bitcoin", 7, 0)).size());
+        assertEquals(3, callsFor(90));
+    }
+
+    @Test
+    void lttbKeepsTheEndsAndThePeaks() {
+        int n = 1_000;
+        long[] x = new long[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = 10;
+        }
+        y[333] = 500;
+        y[777] = -500;
+
+        int[] idx = MarketChartStore.lttb(x, y, 100, n, 50);
+        assertEquals(50, idx.length);
+        assertEquals(100, idx[0]);
+        assertEquals(n - 1, idx[idx.length - 1]);
+        for (int i = 1; i < idx.length; i++) assertTrue(idx[i] > idx[i - 1]);
+        assertTrue(contains(idx, 333));
+        assertTrue(contains(idx, 777));
+
+        // nothing to drop: the window as is
+        assertArrayEquals(new int[]{5, 6, 7}, MarketChartStore.lttb(x, y, 5, 8, 10));
+    }
+
+    private static boolean contains(int[] idx, int i) {
+        for (int j : idx) if (j == i) return true;
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.OrderExecution;
+import com.sahil.trading.domain.OrderStatus;
+import com.sahil.trading.domain.OrderType;
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.Order;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.entity.Wallet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderBookTest {
+
+    private OrderPipelineTest.InMemoryOrderService orderService;
+    private OrderPipeline pipeline;
+    private OrderBook book;
+    private final Coin coin = new Coin();
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        coin.setId("bitcoin");
+        coin.setCurrentPrice(10.0);
+        user.setId(1L);
+
+        orderService = new OrderPipelineTest.InMemoryOrderService();
+        WalletService walletService = mock(WalletService.class);
+        when(walletService.getUserWallet(any())).thenAnswer(inv -> {
+            Wallet wallet = new Wallet();
+            wallet.setBalance(BigDecimal.valueOf(1_000));
+            return wallet;
+        });
+        AssetService assetService = mock(AssetService.class);
+        when(assetService.findAssetByUserIdAndCoinId(anyLong(), anyString())).thenAnswer(inv -> {
+            Asset asset = new Asset();
+            asset.setQuantity(10);
+            return asset;
+        });
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        pipeline = new OrderPipeline(2);
+        ReflectionTestUtils.setField(pipeline, "orderService", orderService);
+        ReflectionTestUtils.setField(pipeline, "walletService", walletService);
+        ReflectionTestUtils.setField(pipeline, "assetService", assetService);
+        ReflectionTestUtils.setField(pipeline, "transactionManager", txManager);
+
+        book = new OrderBook();
+        ReflectionTestUtils.setField(book, "orderService", orderService);
+        ReflectionTestUtils.setField(book, "orderPipeline", pipeline);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void triggersEachSideOnlyWhenThePriceCrossesIt() throws Exception {
+        OrderPipeline.Ticket buyLimit = book.place(coin, 1, OrderType.BUY, user, OrderExecution.LIMIT, 9.0);
+        OrderPipeline.Ticket sellStop = book.place(coin, 1, OrderType.SELL, user, OrderExecution.STOP, 8.0);
+        OrderPipeline.Ticket buyStop = book.place(coin, 1, OrderType.BUY, user, OrderExecution.STOP, 11.0);
+        OrderPipeline.Ticket sellLimit = book.place(coin, 1, OrderType.SELL, user, OrderExecution.LIMIT, 12.0);
+        assertEquals(OrderStatus.OPEN, buyLimit.pending().getOrderStatus());
+        assertEquals(4, book.restingCount());
+
+        assertTrue(book.onPrice("bitcoin", 10.0).isEmpty());
+
+        assertEquals(List.of(buyLimit.pending()), book.onPrice("bitcoin", 8.5));
+        Order filled = buyLimit.settled().get(5, TimeUnit.SECONDS);
+        assertEquals(OrderStatus.SUCCESS, filled.getOrderStatus());
+        // fills at the tick's price, not the limit
+        assertEquals(0, BigDecimal.valueOf(8.5).compareTo(filled.getPrice()));
+
+        assertEquals(List.of(sellStop.pending()), book.onPrice("bitcoin", 7.9));
+        assertEquals(List.of(buyStop.pending()), book.onPrice("bitcoin", 11.5));
+        assertEquals(List.of(sellLimit.pending()), book.onPrice("bitcoin", 13.0));
+        assertEquals(0, book.restingCount());
+        assertEquals(OrderStatus.SUCCESS, sellLimit.settled().get(5, TimeUnit.SECONDS).getOrderStatus());
+    }
+
+    @Test
+    void cancelledOrdersNeverTrigger() throws Exception {
+        OrderPipeline.Ticket ticket = book.place(coin, 1, OrderType.BUY, user, OrderExecution.LIMIT, 9.0);
+
+        assertEquals(OrderStatus.CANCELLED, book.cancel(ticket.pending().getId()).getOrderStatus());
+        assertEquals(OrderStatus.CANCELLED, ticket.settled().get(1, TimeUnit.SECONDS).getOrderStatus());
+        assertTrue(book.onPrice("bitcoin", 1.0).isEmpty());
+        assertThrows(Exception.class, () -> book.cancel(ticket.pending().getId()));
+    }
+
+    @Test
+    void failsTriggeredOrdersTheWalletCannotCover() throws Exception {
+        // 1,000 in the wallet, 200 coins at 9 would cost 1,800
+        OrderPipeline.Ticket ticket = book.place(coin, 200, OrderType.BUY, user, OrderExecution.LIMIT, 9.0);
+
+        book.onPrice("bitcoin", 9.0);
+        Order order = ticket.settled().get(5, TimeUnit.SECONDS);
+        assertEquals(OrderStatus.FAILED, order.getOrderStatus());
+        assertEquals("Insufficient funds for this transaction", order.getFailureReason());
+    }
+
+    @Test
+    void recoversOpenOrdersOnStartup() throws Exception {
+        orderService.acceptOrder(coin, 1, OrderType.SELL, user, OrderExecution.LIMIT, 12.0);
+        orderService.acceptOrder(coin, 1, OrderType.BUY, user, OrderExecution.MARKET, null);
+
+        book.recover();
+        assertEquals(1, book.restingCount());
+        assertEquals(1, book.onPrice("bitcoin", 12.0).size());
+    }
+}
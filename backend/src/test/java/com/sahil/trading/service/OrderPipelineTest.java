@@ -0,0 +1,244 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.OrderExecution;
+import com.sahil.trading.domain.OrderStatus;
+import com.sahil.trading.domain.OrderType;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.Order;
+import com.sahil.trading.entity.OrderItem;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.entity.Wallet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the pipeline with an in-memory OrderService.
+ */
+class OrderPipelineTest {
+
+    /**
+     * Settles instantly (plus a simulated round trip) and records the settle order per user.
+     */
+    static class InMemoryOrderService implements OrderService {
+        final AtomicLong ids = new AtomicLong();
+        final Map<Long, Order> orders = new ConcurrentHashMap<>();
+        final Map<Long, List<Long>> settledByUser = new ConcurrentHashMap<>();
+        volatile CountDownLatch hold = new CountDownLatch(0);
+
+        @Override
+        public Order acceptOrder(Coin coin, double quantity, OrderType orderType, User user) {
+            OrderItem item = new OrderItem();
+            item.setCoin(coin);
+            item.setQuantity(quantity);
+            Order order = new Order();
+            order.setId(ids.incrementAndGet());
+            order.setUser(user);
+            order.setOrderItem(item);
+            order.setOrdertype(orderType);
+            order.setPrice(BigDecimal.valueOf(coin.getCurrentPrice() * quantity));
+            order.setOrderStatus(OrderStatus.PENDING);
+            orders.put(order.getId(), order);
+            return order;
+        }
+
+        @Override
+        public Order acceptOrder(Coin coin, double quantity, OrderType orderType, User user,
+                                 OrderExecution execution, Double triggerPrice) {
+            Order order = acceptOrder(coin, quantity, orderType, user);
+            if (execution != OrderExecution.MARKET) {
+                order.setExecution(execution);
+                order.setTriggerPrice(BigDecimal.valueOf(triggerPrice));
+                order.setPrice(BigDecimal.valueOf(triggerPrice * quantity));
+                order.setOrderStatus(OrderStatus.OPEN);
+            }
+            return order;
+        }
+
+        @Override
+        public Order triggerOrder(Long orderId, double price) {
+            Order order = orders.get(orderId);
+            if (order.getOrderStatus() == OrderStatus.OPEN) {
+                order.setPrice(BigDecimal.valueOf(price * order.getOrderItem().getQuantity()));
+                order.setOrderStatus(OrderStatus.PENDING);
+            }
+            return order;
+        }
+
+        @Override
+        public Order cancelOrder(Long orderId) {
+            Order order = orders.get(orderId);
+            order.setOrderStatus(OrderStatus.CANCELLED);
+            return order;
+        }
+
+        @Override
+        public List<Order> getOpenOrders() {
+            return orders.values().stream().filter(o -> o.getOrderStatus() == OrderStatus.OPEN).toList();
+        }
+
+        @Override
+        public List<Order> getPendingOrders() {
+            return orders.values().stream().filter(o -> o.getOrderStatus() == OrderStatus.PENDING).toList();
+        }
+
+        @Override
+        public Order executeOrder(Long orderId) throws Exception {
+            hold.await(5, TimeUnit.SECONDS);
+            Thread.sleep(0, 200_000);
+            Order order = orders.get(orderId);
+            if (order.getOrderStatus() != OrderStatus.PENDING) return order;
+            settledByUser.computeIfAbsent(order.getUser().getId(), id -> new CopyOnWriteArrayList<>()).add(orderId);
+            order.setOrderStatus(OrderStatus.SUCCESS);
+            return order;
+        }
+
+        @Override
+        public Order failOrder(Long orderId, String reason) {
+            Order order = orders.get(orderId);
+            order.setOrderStatus(OrderStatus.FAILED);
+            order.setFailureReason(reason);
+            return order;
+        }
+
+        @Override
+        public Order createOrder(User user, OrderItem orderItem, OrderType orderType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Order getOrderById(Long orderId) {
+            return orders.get(orderId);
+        }
+
+        @Override
+        public List<Order> getAllOrdersOfUser(Long userId, OrderType orderType, String assetSymbol) {
+            return List.of();
+        }
+
+        @Override
+        public Order processOrder(Coin coin, double quantity, OrderType orderType, User user) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private InMemoryOrderService orderService;
+    private OrderPipeline pipeline;
+    private final Coin coin = new Coin();
+
+    @BeforeEach
+    void setUp() {
+        coin.setId("bitcoin");
+        coin.setCurrentPrice(10.0);
+
+        orderService = new InMemoryOrderService();
+        WalletService walletService = mock(WalletService.class);
+        when(walletService.getUserWallet(any())).thenAnswer(inv -> {
+            Wallet wallet = new Wallet();
+            wallet.setBalance(BigDecimal.valueOf(1_000_000));
+            return wallet;
+        });
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        pipeline = new OrderPipeline(4);
+        ReflectionTestUtils.setField(pipeline, "orderService", orderService);
+        ReflectionTestUtils.setField(pipeline, "walletService", walletService);
+        ReflectionTestUtils.setField(pipeline, "assetService", mock(AssetService.class));
+        ReflectionTestUtils.setField(pipeline, "transactionManager", txManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void settlesEachUsersOrdersInSubmitOrder() throws Exception {
+        int users = 16;
+        int perUser = 250;
+        ExecutorService clients = Executors.newFixedThreadPool(users);
+        List<Future<List<OrderPipeline.Ticket>>> submitted = new ArrayList<>();
+
+        for (int u = 1; u <= users; u++) {
+            User user = new User();
+            user.setId((long) u);
+            submitted.add(clients.submit(() -> {
+                List<OrderPipeline.Ticket> tickets = new ArrayList<>();
+                for (int i = 0; i < perUser; i++) {
+                    tickets.add(pipeline.submit(coin, 1, OrderType.BUY, user));
+                }
+                return tickets;
+            }));
+        }
+
+        for (Future<List<OrderPipeline.Ticket>> f : submitted) {
+            List<Long> expected = new ArrayList<>();
+            for (OrderPipeline.Ticket t : f.get(30, TimeUnit.SECONDS)) {
+                assertEquals(OrderStatus.SUCCESS, t.settled().get(30, TimeUnit.SECONDS).getOrderStatus());
+                expected.add(t.pending().getId());
+            }
+            Long userId = orderService.orders.get(expected.get(0)).getUser().getId();
+            assertEquals(expected, orderService.settledByUser.get(userId));
+        }
+        clients.shutdown();
+
+        assertEquals(0, pipeline.queuedCount());
+    }
+
+    @Test
+    void rejectsOrdersBeyondProjectedCash() throws Exception {
+        User user = new User();
+        user.setId(99L);
+
+        // keep the first order unsettled so the second one is checked against the reservation
+        orderService.hold = new CountDownLatch(1);
+
+        // 1,000,000 of cash at 10 per coin: the reservation stops the burst at 100,000 coins
+        OrderPipeline.Ticket first = pipeline.submit(coin, 60_000, OrderType.BUY, user);
+        Exception e = assertThrows(Exception.class, () -> pipeline.submit(coin, 50_000, OrderType.BUY, user));
+        assertEquals("Insufficient funds for this transaction", e.getMessage());
+
+        orderService.hold.countDown();
+        assertEquals(OrderStatus.SUCCESS, first.settled().get(5, TimeUnit.SECONDS).getOrderStatus());
+    }
+
+    @Test
+    void requeuesOrdersLeftPendingByARestart() throws Exception {
+        User user = new User();
+        user.setId(7L);
+        // accepted before the restart; their lane went down with the old instance
+        Order first = orderService.acceptOrder(coin, 60_000, OrderType.BUY, user);
+        Order second = orderService.acceptOrder(coin, 50_000, OrderType.BUY, user);
+
+        pipeline.recover();
+
+        for (int i = 0; i < 250 && first.getOrderStatus() == OrderStatus.PENDING; i++) Thread.sleep(20);
+        assertEquals(OrderStatus.SUCCESS, first.getOrderStatus());
+        // 1,000,000 of cash covers only the first one
+        assertEquals(OrderStatus.FAILED, second.getOrderStatus());
+        assertEquals(List.of(first.getId()), orderService.settledByUser.get(7L));
+    }
+}
@@ -0,0 +1,152 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.domain.OrderStatus;
+import com.sahil.trading.domain.OrderType;
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.Order;
+import com.sahil.trading.entity.OrderItem;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.CoinRepository;
+import com.sahil.trading.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Several orders of one user settled in one transaction, the way OrderPipeline
+ * batches them: each must build on the writes of the ones before it.
+ */
+class OrderServiceImplTest {
+
+    private final Map<Long, Asset> assetRows = new ConcurrentHashMap<>();
+    private final Map<Long, Order> orders = new ConcurrentHashMap<>();
+    private final AssetRepository assetRepository = mock(AssetRepository.class);
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+    private OrderServiceImpl orderService;
+
+    @BeforeEach
+    void setUp() {
+        when(assetRepository.findByUserId(anyLong())).thenAnswer(inv -> assetRows.values().stream()
+                .filter(a -> a.getUser().getId().equals(inv.getArgument(0)))
+                .map(PortfolioCache::copy)
+                .toList());
+        when(assetRepository.save(any())).thenAnswer(inv -> {
+            Asset a = inv.getArgument(0);
+            a.setId((long) assetRows.size() + 1);
+            assetRows.put(a.getId(), PortfolioCache.copy(a));
+            return a;
+        });
+        when(assetRepository.updateHolding(anyLong(), anyDouble(), anyDouble())).thenAnswer(inv -> {
+            Asset row = assetRows.get((Long) inv.getArgument(0));
+            double delta = inv.getArgument(1);
+            if (row == null || row.getQuantity() + delta < 0) return 0;
+            row.setQuantity(row.getQuantity() + delta);
+            row.setBuyPrice(inv.getArgument(2));
+            return 1;
+        });
+        when(orderRepository.findById(anyLong())).thenAnswer(inv -> Optional.ofNullable(orders.get((Long) inv.getArgument(0))));
+        when(orderRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        PortfolioCache cache = new PortfolioCache(1000);
+        ReflectionTestUtils.setField(cache, "assetRepository", assetRepository);
+        ReflectionTestUtils.setField(cache, "coinRepository", mock(CoinRepository.class));
+        AssetServiceImpl assetService = new AssetServiceImpl();
+        ReflectionTestUtils.setField(assetService, "assetRepository", assetRepository);
+        ReflectionTestUtils.setField(assetService, "portfolioCache", cache);
+
+        orderService = new OrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderService, "walletService", mock(WalletService.class));
+        ReflectionTestUtils.setField(orderService, "assetService", assetService);
+        ReflectionTestUtils.setField(orderService, "costBasisService", mock(CostBasisService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Order order(OrderType type, double quantity, double price) {
+        User user = new User();
+        user.setId(1L);
+        Coin coin = new Coin();
+        coin.setId("bitcoin");
+        coin.setCurrentPrice(price);
+
+        OrderItem item = new OrderItem();
+        item.setCoin(coin);
+        item.setQuantity(quantity);
+        if (type == OrderType.BUY) item.setBuyPrice(price);
+        else item.setSellPrice(price);
+
+        Order order = new Order();
+        order.setId((long) orders.size() + 1);
+        order.setUser(user);
+        order.setOrdertype(type);
+        order.setOrderItem(item);
+        order.setOrderStatus(OrderStatus.PENDING);
+        orders.put(order.getId(), order);
+        return order;
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> syncs = new ArrayList<>(TransactionSynchronizationManager.getSynchronizations());
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization s : syncs) s.afterCompletion(status);
+    }
+
+    @Test
+    void twoBuysOfANewCoinInOneBatchShareOneAsset() throws Exception {
+        Order first = order(OrderType.BUY, 1, 100);
+        Order second = order(OrderType.BUY, 2, 200);
+
+        TransactionSynchronizationManager.initSynchronization();
+        orderService.executeOrder(first.getId());
+        orderService.executeOrder(second.getId());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(1, assetRows.size());
+        Asset row = assetRows.values().iterator().next();
+        assertEquals(3, row.getQuantity(), 1e-9);
+        assertEquals((100 + 2 * 200) / 3.0, row.getBuyPrice(), 1e-9);
+    }
+
+    @Test
+    void twoSalesInOneBatchBothComeOffTheHolding() throws Exception {
+        orderService.executeOrder(order(OrderType.BUY, 3, 100).getId());
+        Order first = order(OrderType.SELL, 1, 100);
+        Order second = order(OrderType.SELL, 1, 100);
+        Order third = order(OrderType.SELL, 2, 100);
+
+        TransactionSynchronizationManager.initSynchronization();
+        orderService.executeOrder(first.getId());
+        orderService.executeOrder(second.getId());
+        // only 1 left within this transaction, although the cache still says 3
+        Exception e = assertThrows(Exception.class, () -> orderService.executeOrder(third.getId()));
+        assertEquals("Insufficient quantity to sell", e.getMessage());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(1, assetRows.values().iterator().next().getQuantity(), 1e-9);
+    }
+}
@@ -0,0 +1,97 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.CoinRepository;
+import com.sahil.trading.response.CachedJsonResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PortfolioCacheTest {
+
+    private final AssetRepository assetRepository = mock(AssetRepository.class);
+    private final CoinRepository coinRepository = mock(CoinRepository.class);
+    // runs inside the next findByUserId, i.e. while that load is reading
+    private final AtomicReference<Runnable> duringLoad = new AtomicReference<>();
+    private PortfolioCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(assetRepository.findByUserId(anyLong())).thenAnswer(inv -> {
+            Runnable r = duringLoad.getAndSet(null);
+            if (r != null) r.run();
+            List<Asset> rows = new ArrayList<>();
+            rows.add(asset(inv.getArgument(0), "bitcoin", 1));
+            rows.add(asset(inv.getArgument(0), "obscure", 1));
+            return rows;
+        });
+        cache = new PortfolioCache(1000);
+        ReflectionTestUtils.setField(cache, "assetRepository", assetRepository);
+        ReflectionTestUtils.setField(cache, "coinRepository", coinRepository);
+    }
+
+    private static Coin coin(String id, Double price) {
+        Coin coin = new Coin();
+        coin.setId(id);
+        coin.setCurrentPrice(price);
+        return coin;
+    }
+
+    private static Asset asset(Long userId, String coinId, double quantity) {
+        User user = new User();
+        user.setId(userId);
+        // as loaded with the row, priced when it was last written
+        Coin coin = coin(coinId, 1.0);
+        Asset a = new Asset();
+        a.setId(userId * 100);
+        a.setUser(user);
+        a.setCoin(coin);
+        a.setQuantity(quantity);
+        a.setBuyPrice(10);
+        return a;
+    }
+
+    @Test
+    void anotherUsersTradeDuringALoadDoesNotStopItBeingCached() {
+        duringLoad.set(() -> cache.saved(asset(2L, "ethereum", 5)));
+        cache.assets(1L);
+        cache.assets(1L);
+        verify(assetRepository, times(1)).findByUserId(1L);
+    }
+
+    @Test
+    void aTradeOfTheSameUserDuringALoadIsNotCachedOver() {
+        duringLoad.set(() -> cache.invalidate(1L));
+        cache.assets(1L);
+        cache.assets(1L);
+        verify(assetRepository, times(2)).findByUserId(1L);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void readsCarryTheCurrentCoinNotTheOneLoadedWithTheRow() {
+        when(coinRepository.findAllById(any())).thenReturn(List.of(coin("obscure", 3.0)));
+        cache.onSnapshot(new MarketSnapshotEvent(new MarketSnapshot(List.of(coin("bitcoin", 100.0)), CachedJsonResponse.of("[]"), 1)));
+        assertEquals(100.0, cache.assets(1L).get("bitcoin").getCoin().getCurrentPrice());
+        assertEquals(3.0, cache.find(1L, "obscure").getCoin().getCurrentPrice());
+
+        cache.onSnapshot(new MarketSnapshotEvent(new MarketSnapshot(List.of(coin("bitcoin", 120.0)), CachedJsonResponse.of("[]"), 2)));
+        assertEquals(120.0, cache.find(1L, "bitcoin").getCoin().getCurrentPrice());
+        verify(assetRepository, times(1)).findByUserId(1L);
+    }
+}
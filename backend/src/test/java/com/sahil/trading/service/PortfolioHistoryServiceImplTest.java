@@ -0,0 +1,147 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.PortfolioValueSnapshot;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.PortfolioValueSnapshotRepository;
+import com.sahil.trading.repository.UserRepository;
+import com.sahil.trading.response.PortfolioView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PortfolioHistoryServiceImplTest {
+
+    private static final LocalDate YESTERDAY = LocalDate.now(ZoneOffset.UTC).minusDays(1);
+
+    private final List<Asset> assets = new ArrayList<>();
+    private final List<PortfolioValueSnapshot> rows = new ArrayList<>();
+    private int savesBeforeFailure = Integer.MAX_VALUE;
+    private PortfolioHistoryServiceImpl history;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        // users 1-6; 6 holds nothing
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findIdsAfter(anyLong(), any())).thenAnswer(inv -> LongStream.rangeClosed(1, 6).boxed()
+                .filter(id -> id > (Long) inv.getArgument(0))
+                .limit(((Limit) inv.getArgument(1)).max())
+                .toList());
+        AssetRepository assetRepository = mock(AssetRepository.class);
+        when(assetRepository.findByUserIdIn(any())).thenAnswer(inv -> assets.stream()
+                .filter(a -> ((Collection<Long>) inv.getArgument(0)).contains(a.getUser().getId()))
+                .toList());
+
+        PortfolioValueSnapshotRepository snapshotRepository = mock(PortfolioValueSnapshotRepository.class);
+        when(snapshotRepository.saveAll(any())).thenAnswer(inv -> {
+            if (savesBeforeFailure-- <= 0) throw new QueryTimeoutException("lock wait timeout");
+            ((Iterable<PortfolioValueSnapshot>) inv.getArgument(0)).forEach(rows::add);
+            return inv.getArgument(0);
+        });
+        when(snapshotRepository.lastDays(any())).thenAnswer(inv -> rows.stream()
+                .filter(r -> ((Collection<Long>) inv.getArgument(0)).contains(r.getUserId()))
+                .collect(Collectors.toMap(PortfolioValueSnapshot::getUserId, PortfolioValueSnapshot::getDay,
+                        BinaryOperator.maxBy(Comparator.naturalOrder())))
+                .entrySet().stream()
+                .map(e -> new Object[]{e.getKey(), e.getValue()})
+                .toList());
+
+        PortfolioValuation valuation = mock(PortfolioValuation.class);
+        when(valuation.price("bitcoin")).thenReturn(200.0);
+        when(valuation.value(anyLong())).thenReturn(new PortfolioView());
+        MarketChartStore charts = mock(MarketChartStore.class);
+        when(charts.priceAt(anyString(), anyLong())).thenReturn(150.0);
+
+        history = new PortfolioHistoryServiceImpl();
+        ReflectionTestUtils.setField(history, "assetRepository", assetRepository);
+        ReflectionTestUtils.setField(history, "userRepository", userRepository);
+        ReflectionTestUtils.setField(history, "snapshotRepository", snapshotRepository);
+        ReflectionTestUtils.setField(history, "portfolioValuation", valuation);
+        ReflectionTestUtils.setField(history, "marketChartStore", charts);
+        ReflectionTestUtils.setField(history, "batchSize", 2);
+
+        for (long userId = 1; userId <= 5; userId++) assets.add(asset(userId, userId, 100));
+    }
+
+    private static Asset asset(long userId, double qty, double buyPrice) {
+        User user = new User();
+        user.setId(userId);
+        Coin coin = new Coin();
+        coin.setId("bitcoin");
+        Asset a = new Asset();
+        a.setUser(user);
+        a.setCoin(coin);
+        a.setQuantity(qty);
+        a.setBuyPrice(buyPrice);
+        return a;
+    }
+
+    @Test
+    void writesOnlyTheDaysNotStoredYet() {
+        assertEquals(6, history.takeSnapshots());
+        assertEquals(0, history.takeSnapshots());
+
+        PortfolioValueSnapshot user3 = rows.stream().filter(r -> r.getUserId() == 3).findFirst().orElseThrow();
+        assertEquals(YESTERDAY, user3.getDay());
+        assertEquals(600, user3.getValue(), 1e-9);
+        assertEquals(300, user3.getCost(), 1e-9);
+
+        // nothing held is still a point on the chart
+        PortfolioValueSnapshot user6 = rows.stream().filter(r -> r.getUserId() == 6).findFirst().orElseThrow();
+        assertEquals(0, user6.getValue(), 1e-9);
+    }
+
+    @Test
+    void aRunThatFailsPartWayLeavesTheRestForTheNext() {
+        // batches of 2 users: the second batch times out
+        savesBeforeFailure = 1;
+        assertThrows(QueryTimeoutException.class, () -> history.takeSnapshots());
+        assertEquals(2, rows.size());
+
+        // users 3-6 were not reached, so the next run still finds their day missing
+        savesBeforeFailure = Integer.MAX_VALUE;
+        assertEquals(4, history.takeSnapshots());
+        assertEquals(6, rows.stream().map(PortfolioValueSnapshot::getUserId).distinct().count());
+        assertEquals(6, rows.size());
+    }
+
+    @Test
+    void backfillsMissedDaysFromPriceHistory() {
+        PortfolioValueSnapshot old = new PortfolioValueSnapshot();
+        old.setUserId(1L);
+        old.setDay(YESTERDAY.minusDays(3));
+        rows.add(old);
+
+        // user 1 from the day after its newest row, everyone else only yesterday
+        assertEquals(3 + 5, history.takeSnapshots());
+        List<PortfolioValueSnapshot> user1 = rows.stream().filter(r -> r.getUserId() == 1 && r != old).toList();
+        assertEquals(List.of(YESTERDAY.minusDays(2), YESTERDAY.minusDays(1), YESTERDAY),
+                user1.stream().map(PortfolioValueSnapshot::getDay).toList());
+        // older days at the day's close from the chart, the last one at the live price
+        assertEquals(150, user1.get(0).getValue(), 1e-9);
+        assertEquals(200, user1.get(2).getValue(), 1e-9);
+    }
+}
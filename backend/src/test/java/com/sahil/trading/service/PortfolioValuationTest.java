@@ -0,0 +1,128 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.Asset;
+import com.sahil.trading.entity.Coin;
+import com.sahil.trading.entity.User;
+import com.sahil.trading.repository.AssetRepository;
+import com.sahil.trading.repository.CoinRepository;
+import com.sahil.trading.response.CachedJsonResponse;
+import com.sahil.trading.response.PortfolioView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PortfolioValuationTest {
+
+    private static final double EPS = 1e-9;
+
+    private final List<Asset> rows = new ArrayList<>();
+    private final AssetRepository assetRepository = mock(AssetRepository.class);
+    private PortfolioCache cache;
+    private PortfolioValuation valuation;
+
+    @BeforeEach
+    void setUp() {
+        when(assetRepository.findByUserId(anyLong())).thenAnswer(inv -> new ArrayList<>(rows));
+        cache = new PortfolioCache(1000);
+        ReflectionTestUtils.setField(cache, "assetRepository", assetRepository);
+        ReflectionTestUtils.setField(cache, "coinRepository", mock(CoinRepository.class));
+        valuation = new PortfolioValuation();
+        ReflectionTestUtils.setField(valuation, "portfolioCache", cache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Coin coin(String id, Double price, Double change24h) {
+        Coin c = new Coin();
+        c.setId(id);
+        c.setSymbol(id.substring(0, 3));
+        c.setCurrentPrice(price);
+        c.setPriceChangePercentage24h(change24h);
+        return c;
+    }
+
+    private static Asset asset(String coinId, double qty, double buyPrice) {
+        User user = new User();
+        user.setId(1L);
+        Asset a = new Asset();
+        a.setUser(user);
+        a.setCoin(coin(coinId, 1.0, null));
+        a.setQuantity(qty);
+        a.setBuyPrice(buyPrice);
+        return a;
+    }
+
+    private void tick(Coin... coins) {
+        valuation.onSnapshot(new MarketSnapshotEvent(new MarketSnapshot(List.of(coins), CachedJsonResponse.of("[]"), 42)));
+    }
+
+    @Test
+    void valuesHoldingsAtTheLatestSnapshot() {
+        rows.add(asset("bitcoin", 2, 100));
+        rows.add(asset("ethereum", 10, 10));
+        tick(coin("bitcoin", 150.0, 50.0), coin("ethereum", 5.0, 0.0));
+
+        PortfolioView view = valuation.value(1L);
+        assertEquals(350, view.getTotalValue(), EPS);
+        assertEquals(300, view.getTotalCost(), EPS);
+        assertEquals(50, view.getUnrealizedPnl(), EPS);
+        // bitcoin was 100 a day ago: 250 -> 350
+        assertEquals(100, view.getChange24h(), EPS);
+        assertEquals(40, view.getChange24hPercent(), EPS);
+        assertEquals(300.0 / 350 * 100, view.getPositions().get(0).getAllocationPercent(), EPS);
+        assertEquals(42, view.getPricedAt());
+
+        // ticks are picked up without reloading the holdings
+        tick(coin("bitcoin", 200.0, 0.0));
+        assertEquals(450, valuation.value(1L).getTotalValue(), EPS);
+        verify(assetRepository, times(1)).findByUserId(1L);
+    }
+
+    @Test
+    void appliesTradesOnlyAfterCommit() {
+        rows.add(asset("bitcoin", 1, 100));
+        tick(coin("bitcoin", 100.0, 0.0), coin("solana", 10.0, 0.0));
+        valuation.value(1L);
+
+        // rolled back: nothing is applied, PortfolioCache reloads the rows
+        trade(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertEquals(100, valuation.value(1L).getTotalValue(), EPS);
+        verify(assetRepository, times(2)).findByUserId(1L);
+
+        // committed: valued from the patched PortfolioCache entry, no reload
+        trade(TransactionSynchronization.STATUS_COMMITTED);
+        PortfolioView view = valuation.value(1L);
+        assertEquals(30, view.getTotalValue(), EPS);
+        assertEquals(1, view.getPositions().size());
+        assertEquals("solana", view.getPositions().get(0).getCoinId());
+        verify(assetRepository, times(2)).findByUserId(1L);
+    }
+
+    // buys solana and sells all the bitcoin in one transaction that ends with status
+    private void trade(int status) {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.saved(asset("solana", 3, 10));
+        cache.deleted(asset("bitcoin", 1, 100));
+        List<TransactionSynchronization> syncs = new ArrayList<>(TransactionSynchronizationManager.getSynchronizations());
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization s : syncs) s.afterCompletion(status);
+    }
+}
@@ -0,0 +1,261 @@
+package com.sahil.trading.service;
+
+import com.sahil.trading.entity.User;
+import com.sahil.trading.entity.Wallet;
+import com.sahil.trading.repository.WalletRepository;
+import com.sahil.trading.repository.WalletTransactionRepository;
+import com.sahil.trading.response.WalletTransactionView;
+import com.sahil.trading.utils.StripedLock;
+import com.sahil.trading.utils.TransactionCursor;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the wallet service against an in-memory table: every read is a copy, the
+ * conditional debit/credit updates are atomic per row, and saving a stale copy fails
+ * on Wallet.version like Hibernate does.
+ */
+class WalletServiceImplTest {
+
+    private static final int WRITERS = 64;
+
+    private final Map<Long, Wallet> rows = new ConcurrentHashMap<>();
+    private final AtomicInteger conflictsToInject = new AtomicInteger();
+    private final WalletTransactionRepository transactions = mock(WalletTransactionRepository.class);
+    private final WalletRepository repository = mock(WalletRepository.class);
+    private WalletServiceImpl walletService;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.debit(anyLong(), any())).thenAnswer(inv -> add(inv.getArgument(0), ((BigDecimal) inv.getArgument(1)).negate()));
+        when(repository.credit(anyLong(), any())).thenAnswer(inv -> add(inv.getArgument(0), inv.getArgument(1)));
+        when(repository.getReferenceById(anyLong())).thenAnswer(inv -> read(inv.getArgument(0)));
+        when(repository.findById(anyLong())).thenAnswer(inv -> Optional.ofNullable(read(inv.getArgument(0))));
+        when(repository.findByUserId(anyLong())).thenAnswer(inv -> read(inv.getArgument(0)));
+        when(repository.save(any())).thenAnswer(inv -> write(inv.getArgument(0)));
+
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        walletService = new WalletServiceImpl(256);
+        ReflectionTestUtils.setField(walletService, "walletRepository", repository);
+        ReflectionTestUtils.setField(walletService, "walletTransactionRepository", transactions);
+        ReflectionTestUtils.setField(walletService, "transactionManager", txManager);
+        ReflectionTestUtils.setField(walletService, "entityManager", mock(EntityManager.class));
+        ReflectionTestUtils.setField(walletService, "ledgerService", mock(LedgerService.class));
+
+        // wallet id == user id
+        for (long id = 1; id <= 4; id++) {
+            Wallet wallet = new Wallet();
+            wallet.setId(id);
+            wallet.setUser(user(id));
+            wallet.setBalance(BigDecimal.valueOf(10_000));
+            rows.put(id, wallet);
+        }
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private Wallet read(Long id) {
+        Wallet row = rows.get(id);
+        if (row == null) return null;
+        synchronized (row) {
+            Wallet copy = new Wallet();
+            copy.setId(row.getId());
+            copy.setUser(row.getUser());
+            copy.setBalance(row.getBalance());
+            copy.setVersion(row.getVersion());
+            return copy;
+        }
+    }
+
+    // UPDATE wallet SET balance = balance + :delta ... WHERE id = :id AND balance + :delta >= 0
+    private int add(Long id, BigDecimal delta) {
+        if (conflictsToInject.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            throw new CannotAcquireLockException("lock wait timeout");
+        }
+        Wallet row = rows.get(id);
+        if (row == null) return 0;
+        synchronized (row) {
+            BigDecimal balance = row.getBalance().add(delta);
+            if (balance.signum() < 0) return 0;
+            row.setBalance(balance);
+            row.setVersion(row.getVersion() + 1);
+            return 1;
+        }
+    }
+
+    private Wallet write(Wallet wallet) {
+        Wallet row = rows.get(wallet.getId());
+        synchronized (row) {
+            if (!row.getVersion().equals(wallet.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Wallet.class, wallet.getId());
+            }
+            row.setBalance(wallet.getBalance());
+            row.setVersion(row.getVersion() + 1);
+            wallet.setVersion(row.getVersion());
+            return wallet;
+        }
+    }
+
+    private List<Future<?>> runWriters(Runnable writer) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                writer.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        return futures;
+    }
+
+    @Test
+    void balancesChangeThroughTheConditionalUpdateNotTheCallersCopy() throws Exception {
+        // loaded before another request spent most of the balance
+        Wallet stale = read(1L);
+        walletService.debitWallet(read(1L), 9_000L);
+
+        walletService.addBalance(stale, 1L);
+        assertEquals(0, BigDecimal.valueOf(1_001).compareTo(rows.get(1L).getBalance()));
+
+        // the copy still shows 10000, but the row decides: the UPDATE matches nothing
+        Exception e = assertThrows(Exception.class, () -> walletService.debitWallet(stale, 5_000L));
+        assertEquals("Insufficient balance", e.getMessage());
+        assertEquals(0, BigDecimal.valueOf(1_001).compareTo(rows.get(1L).getBalance()));
+
+        verify(repository).credit(1L, BigDecimal.valueOf(1L));
+        verify(repository).debit(1L, BigDecimal.valueOf(5_000L));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void insideACallersTransactionTheStripeIsNotTaken() throws Exception {
+        StripedLock locks = (StripedLock) ReflectionTestUtils.getField(walletService, "locks");
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // another request holds wallet 1's stripe while it waits for the row the batch has locked
+        Thread other = new Thread(() -> {
+            try (StripedLock.Held h = locks.lock(1L)) {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        other.start();
+        held.await();
+
+        ExecutorService batch = Executors.newSingleThreadExecutor();
+        try {
+            Future<Wallet> credited = batch.submit(() -> {
+                TransactionSynchronizationManager.setActualTransactionActive(true);
+                try {
+                    return walletService.addBalance(read(1L), 5L);
+                } finally {
+                    TransactionSynchronizationManager.setActualTransactionActive(false);
+                }
+            });
+            credited.get(5, TimeUnit.SECONDS);
+            assertEquals(0, BigDecimal.valueOf(10_005).compareTo(rows.get(1L).getBalance()));
+        } finally {
+            release.countDown();
+            batch.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentTransfersConserveMoneyWithoutDeadlock() throws Exception {
+        AtomicInteger refused = new AtomicInteger();
+
+        runWriters(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 200; i++) {
+                long from = random.nextLong(1, 5);
+                long to = from % 4 + 1;
+                try {
+                    walletService.walletToWalletTransfer(user(from), read(to), BigDecimal.valueOf(random.nextLong(1, 500)));
+                } catch (Exception e) {
+                    if (!e.getMessage().startsWith("Insufficient")) throw new IllegalStateException(e);
+                    refused.incrementAndGet();
+                }
+            }
+        });
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Wallet row : rows.values()) {
+            assertTrue(row.getBalance().signum() >= 0);
+            total = total.add(row.getBalance());
+        }
+        assertEquals(0, BigDecimal.valueOf(40_000).compareTo(total));
+        assertTrue(refused.get() < WRITERS * 200);
+    }
+
+    @Test
+    void retriesLockFailures() throws Exception {
+        conflictsToInject.set(2);
+        walletService.debitWallet(read(2L), 100L);
+
+        assertEquals(0, BigDecimal.valueOf(9_900).compareTo(rows.get(2L).getBalance()));
+        assertEquals(0, conflictsToInject.get());
+    }
+
+    @Test
+    void pagesHistoryFromTheCursorRow() throws Exception {
+        Instant at = Instant.parse("2026-01-02T03:04:05.123456Z");
+        WalletTransactionView last = new WalletTransactionView(42L, BigDecimal.TEN, "DEPOSIT", "SUCCESS", null, null, at, null);
+        when(transactions.findLatestViews(eq(1L), any())).thenReturn(List.of(last));
+
+        assertEquals(List.of(last), walletService.getWalletTransactionsAfter(user(1), null, 1_000));
+        verify(transactions).findLatestViews(1L, Limit.of(500));
+
+        String cursor = new TransactionCursor(last.getCreatedAt(), last.getId()).encode();
+        walletService.getWalletTransactionsAfter(user(1), cursor, 20);
+        // ties on createdAt are broken by id, so the row itself is not repeated
+        verify(transactions).findViewsBefore(1L, at, 42L, Limit.of(20));
+
+        assertThrows(IllegalArgumentException.class, () -> walletService.getWalletTransactionsAfter(user(1), "not-a-cursor", 20));
+    }
+}
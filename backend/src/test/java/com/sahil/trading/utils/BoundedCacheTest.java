@@ -0,0 +1,92 @@
+package com.sahil.trading.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Values are strings weighed by their length; TTLs are tens of milliseconds.
+ */
+class BoundedCacheTest {
+
+    private final BoundedCache<String, String> cache = new BoundedCache<>(10, (k, v) -> v.length());
+
+    @Test
+    void evictsTheLeastRecentlyUsedOnceOverWeight() {
+        cache.put("a", "aaaa", 60_000);
+        cache.put("b", "bbbb", 60_000);
+        assertEquals("aaaa", cache.get("a"));
+
+        // 12 > 10: b was used least recently
+        cache.put("c", "cccc", 60_000);
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.weight());
+        assertEquals(1, cache.evictionCount());
+
+        // replacing a value swaps its weight instead of adding to it
+        cache.put("a", "aa", 60_000);
+        assertEquals(6, cache.weight());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void aValueHeavierThanTheCacheIsNotKept() {
+        cache.put("a", "aaaa", 60_000);
+        cache.put("big", "bigger than ten", 60_000);
+        assertNull(cache.get("big"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals(4, cache.weight());
+    }
+
+    @Test
+    void goesFromFreshToStaleToExpired() throws Exception {
+        cache.put("a", "aaaa", 40, 120, 200);
+        assertEquals(BoundedCache.Freshness.FRESH, cache.getEntry("a").freshness());
+
+        Thread.sleep(60);
+        assertEquals(BoundedCache.Freshness.STALE, cache.getEntry("a").freshness());
+        assertNull(cache.get("a"));
+
+        Thread.sleep(80);
+        assertEquals(BoundedCache.Freshness.STALE_IF_ERROR, cache.getEntry("a").freshness());
+        assertEquals("aaaa", cache.getEntry("a").value());
+
+        Thread.sleep(80);
+        assertNull(cache.getEntry("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertEquals(1, cache.expirationCount());
+    }
+
+    @Test
+    void evictExpiredDropsEntriesNobodyReads() throws Exception {
+        cache.put("a", "aa", 20);
+        cache.put("b", "bb", 60_000);
+        Thread.sleep(40);
+
+        assertEquals(1, cache.evictExpired());
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.weight());
+    }
+
+    @Test
+    void countsHitsAndMissesButNotPeeks() throws Exception {
+        cache.put("a", "aa", 20, 60_000, 60_000);
+        assertEquals("aa", cache.get("a"));
+        assertNull(cache.get("missing"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        assertEquals("aa", cache.peek("a"));
+        assertNull(cache.peek("missing"));
+        Thread.sleep(40);
+        // a stale value is not fresh enough for a loader to reuse
+        assertNull(cache.peek("a"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(0, cache.staleHitCount());
+    }
+}
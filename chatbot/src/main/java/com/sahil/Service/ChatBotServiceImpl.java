@@ -6,10 +6,13 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -20,7 +23,24 @@ public class ChatBotServiceImpl implements ChatBotService {
     @Value("${gemini.api.key}")
     private String GEMINI_API_KEY;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Point this at the trading backend (http://<host>/coins/details/) so coin lookups
+    // share its CoinGecko rate limit and cache instead of calling CoinGecko directly
+    @Value("${coin.details.url:https://api.coingecko.com/api/v3/coins/}")
+    private String coinDetailsUrl;
+
+    private final RestTemplate restTemplate;
+
+    // Pooled HTTP/2 client with timeouts, so a slow Gemini or CoinGecko call cannot hold a request thread forever
+    public ChatBotServiceImpl(@Value("${http.client.connect-timeout-ms:3000}") long connectTimeoutMs,
+                              @Value("${http.client.read-timeout-ms:20000}") long readTimeoutMs) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        this.restTemplate = new RestTemplate(factory);
+    }
 
     // Cache to reduce Gemini calls
     private final Map<String, JSONObject> intentCache = new ConcurrentHashMap<>();
@@ -129,7 +149,7 @@ public class ChatBotServiceImpl implements ChatBotService {
 
     private CoinDto fetchCoinData(String coinId) {
 
-        String url = "https://api.coingecko.com/api/v3/coins/" + coinId;
+        String url = coinDetailsUrl + coinId;
         ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
 
         Map<String, Object> body = response.getBody();